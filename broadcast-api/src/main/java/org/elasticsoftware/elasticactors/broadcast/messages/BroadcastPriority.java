@@ -0,0 +1,20 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+/**
+ * The priority of a broadcast message, see {@link Priority}. Declared from the highest to the
+ * lowest priority.
+ */
+public enum BroadcastPriority {
+
+    /**
+     * Throttled broadcasts with this priority pause the delivery of throttled broadcasts with a
+     * lower priority until they have been delivered
+     */
+    URGENT,
+
+    HIGH,
+
+    NORMAL,
+
+    LOW
+}
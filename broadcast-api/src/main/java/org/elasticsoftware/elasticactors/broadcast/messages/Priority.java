@@ -0,0 +1,36 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to tell the broadcaster how to schedule messages of a given class. Messages without
+ * this annotation have {@link BroadcastPriority#NORMAL} priority and don't expire.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Priority {
+
+    /**
+     * The priority of the message. The throttled broadcasts of a tree are delivered in order of
+     * priority.
+     *
+     * @return the priority of the message
+     */
+    BroadcastPriority value() default BroadcastPriority.NORMAL;
+
+    /**
+     * The time after which a broadcast of the message is no longer delivered to the members it
+     * didn't reach yet, counted from the moment it was sent to the broadcaster.
+     * <br>
+     * <strong>Using a value {@code <=} 0 means the message never expires.</strong>
+     *
+     * @return the time to live in milliseconds
+     */
+    long timeToLiveMillis() default 0L;
+
+}
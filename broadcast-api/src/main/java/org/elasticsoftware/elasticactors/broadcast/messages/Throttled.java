@@ -24,4 +24,26 @@ public @interface Throttled {
      */
     String maxPerSecond();
 
+    /**
+     * The lowest number of messages per second when the rate is adaptive, in the same format as
+     * {@link #maxPerSecond()}. The rate is adaptive when this is lower than {@code maxPerSecond} and
+     * a {@link #targetLatencyMillis()} is set: it starts at this value and is raised towards
+     * {@code maxPerSecond} while the leaf nodes receive the messages within the target latency,
+     * and halved when they don't.
+     *
+     * @return the minimum number of messages per second, empty if the rate is fixed
+     */
+    String minPerSecond() default "";
+
+    /**
+     * The time within which the leaf nodes should receive the messages of an adaptive rate, in the
+     * same format as {@link #maxPerSecond()}. This is the round trip between the moment the rate
+     * limiter sends a message to a leaf node and the moment it receives the feedback of the leaf
+     * node, both measured on the clock of the rate limiter. It grows when the leaf nodes (or the
+     * members sharing their threads) fall behind.
+     *
+     * @return the target latency in milliseconds, empty if the rate is fixed
+     */
+    String targetLatencyMillis() default "";
+
 }
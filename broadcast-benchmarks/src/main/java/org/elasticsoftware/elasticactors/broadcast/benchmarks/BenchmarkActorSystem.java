@@ -0,0 +1,108 @@
+package org.elasticsoftware.elasticactors.broadcast.benchmarks;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.ActorSystem;
+import org.elasticsoftware.elasticactors.base.actors.ActorDelegate;
+import org.elasticsoftware.elasticactors.base.actors.ReplyActor;
+import org.elasticsoftware.elasticactors.broadcast.Broadcaster;
+import org.elasticsoftware.elasticactors.broadcast.messages.SizeRequest;
+import org.elasticsoftware.elasticactors.broadcast.messages.SizeResponse;
+import org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState;
+import org.elasticsoftware.elasticactors.test.TestActorSystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * The in-process actor system shared by the benchmarks of a trial
+ */
+final class BenchmarkActorSystem {
+
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private final TestActorSystem testActorSystem;
+    private final ActorSystem actorSystem;
+    private final ActorRef replyActor;
+    private volatile CountDownLatch replies = new CountDownLatch(0);
+    private int broadcasters;
+
+    BenchmarkActorSystem() throws Exception {
+        testActorSystem = new TestActorSystem(BroadcastBenchmarkConfiguration.class);
+        testActorSystem.initialize();
+        actorSystem = testActorSystem.getActorSystem();
+        replyActor = actorSystem.tempActorOf(
+                ReplyActor.class,
+                ActorDelegate.builder()
+                        .deleteAfterReceive(false)
+                        .onReceive(SizeResponse.class, () -> replies.countDown())
+                        .build());
+    }
+
+    ActorSystem getActorSystem() {
+        return actorSystem;
+    }
+
+    /**
+     * Creates the given number of {@link BenchmarkMember} actors
+     */
+    List<ActorRef> createMembers(int members) throws Exception {
+        List<ActorRef> refs = new ArrayList<>(members);
+        for (int i = 0; i < members; i++) {
+            refs.add(actorSystem.actorOf(format("member-%d", i), BenchmarkMember.class));
+        }
+        return refs;
+    }
+
+    /**
+     * References to members that don't exist, for benchmarks that never send them anything
+     */
+    List<ActorRef> memberRefs(int members) {
+        List<ActorRef> refs = new ArrayList<>(members);
+        for (int i = 0; i < members; i++) {
+            refs.add(actorSystem.actorFor(format("member-%d", i)));
+        }
+        return refs;
+    }
+
+    /**
+     * Creates a broadcaster with a unique id, and waits until it handled its creation
+     */
+    ActorRef createBroadcaster(BroadcasterState state) throws Exception {
+        ActorRef broadcaster = actorSystem.actorOf(format("broadcaster-%d", broadcasters++), Broadcaster.class, state);
+        awaitIdle(broadcaster);
+        return broadcaster;
+    }
+
+    /**
+     * Waits until the broadcaster handled all messages sent to it before
+     */
+    void awaitIdle(ActorRef broadcaster) throws InterruptedException {
+        replies = new CountDownLatch(1);
+        broadcaster.tell(new SizeRequest(), replyActor);
+        await(replies);
+    }
+
+    /**
+     * Sends the message to the broadcaster, and waits until all members received it
+     */
+    void broadcast(ActorRef broadcaster, Object message, int members) throws InterruptedException {
+        CountDownLatch deliveries = new CountDownLatch(members);
+        BenchmarkMember.deliveries = deliveries;
+        broadcaster.tell(message);
+        await(deliveries);
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Timed out waiting for the actor system");
+        }
+    }
+
+    void destroy() {
+        testActorSystem.destroy();
+    }
+}
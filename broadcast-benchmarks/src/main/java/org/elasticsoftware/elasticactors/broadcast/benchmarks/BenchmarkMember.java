@@ -0,0 +1,33 @@
+package org.elasticsoftware.elasticactors.broadcast.benchmarks;
+
+import org.elasticsoftware.elasticactors.Actor;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.TypedActor;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A member of the broadcasters under benchmark. Counts down {@link #deliveries} for every message
+ * it receives, so a benchmark can wait until a broadcast reached all members without replies
+ * going back through the actor system.
+ */
+@Actor(serializationFramework = JacksonSerializationFramework.class)
+public class BenchmarkMember extends TypedActor<Object> {
+
+    private final static Logger staticLogger = LoggerFactory.getLogger(BenchmarkMember.class);
+
+    static volatile CountDownLatch deliveries = new CountDownLatch(0);
+
+    @Override
+    public void onReceive(ActorRef sender, Object message) throws Exception {
+        deliveries.countDown();
+    }
+
+    @Override
+    protected Logger initLogger() {
+        return staticLogger;
+    }
+}
@@ -0,0 +1,26 @@
+package org.elasticsoftware.elasticactors.broadcast.benchmarks;
+
+import org.elasticsoftware.elasticactors.test.configuration.TestConfiguration;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Configures the in-process actor system the benchmarks run on, and gives the benchmarks access
+ * to its beans
+ */
+@Import(TestConfiguration.class)
+public class BroadcastBenchmarkConfiguration implements ApplicationContextAware {
+
+    private static volatile ApplicationContext applicationContext;
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        BroadcastBenchmarkConfiguration.applicationContext = applicationContext;
+    }
+
+    static <T> T getBean(Class<T> beanClass) {
+        return applicationContext.getBean(beanClass);
+    }
+}
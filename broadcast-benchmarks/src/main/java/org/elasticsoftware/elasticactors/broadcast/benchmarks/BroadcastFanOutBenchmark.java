@@ -0,0 +1,64 @@
+package org.elasticsoftware.elasticactors.broadcast.benchmarks;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time it takes a broadcast to reach all members, from a single leaf node (a
+ * {@code bucketSize} of at least {@code members}) or through a tree of leaf nodes with
+ * {@code bucketSize} members each
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastFanOutBenchmark {
+
+    @Param({"1000", "10000"})
+    private int members;
+
+    @Param({"1000000", "256", "32"})
+    private int bucketSize;
+
+    @Param({"false", "true"})
+    private boolean preSerializeBroadcasts;
+
+    private BenchmarkActorSystem actorSystem;
+    private ActorRef broadcaster;
+
+    @Setup
+    public void setUp() throws Exception {
+        actorSystem = new BenchmarkActorSystem();
+        List<ActorRef> refs = actorSystem.createMembers(members);
+        BroadcasterState state = new BroadcasterState(8, bucketSize, refs);
+        state.setPreSerializeBroadcasts(preSerializeBroadcasts);
+        broadcaster = actorSystem.createBroadcaster(state);
+    }
+
+    @TearDown
+    public void tearDown() {
+        actorSystem.destroy();
+    }
+
+    @Benchmark
+    public void broadcast() throws Exception {
+        actorSystem.broadcast(broadcaster, new Ping(System.nanoTime()), members);
+    }
+}
@@ -0,0 +1,72 @@
+package org.elasticsoftware.elasticactors.broadcast.benchmarks;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creating a broadcaster with all of its members at once, which splits the root into
+ * children the same way a rehash does. Every invocation builds a new tree, which is stopped
+ * again afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class BroadcasterSplitBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int members;
+
+    @Param({"8"})
+    private int bucketsPerNode;
+
+    @Param({"32", "256"})
+    private int bucketSize;
+
+    private BenchmarkActorSystem actorSystem;
+    private List<ActorRef> refs;
+    private ActorRef broadcaster;
+
+    @Setup
+    public void setUp() throws Exception {
+        actorSystem = new BenchmarkActorSystem();
+        refs = actorSystem.memberRefs(members);
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopBroadcaster() throws Exception {
+        if (broadcaster != null) {
+            actorSystem.getActorSystem().stop(broadcaster);
+            broadcaster = null;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        actorSystem.destroy();
+    }
+
+    @Benchmark
+    public ActorRef split() throws Exception {
+        broadcaster = actorSystem.createBroadcaster(new BroadcasterState(bucketsPerNode, bucketSize, refs));
+        return broadcaster;
+    }
+}
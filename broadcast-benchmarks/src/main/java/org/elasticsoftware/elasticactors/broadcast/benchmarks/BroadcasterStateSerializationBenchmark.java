@@ -0,0 +1,77 @@
+package org.elasticsoftware.elasticactors.broadcast.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Jackson round trip of the state of a leaf node, using the object mapper of the
+ * actor system. Run {@link #main} to get the allocation rate per operation next to the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcasterStateSerializationBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int members;
+
+    private BenchmarkActorSystem actorSystem;
+    private ObjectMapper objectMapper;
+    private BroadcasterState state;
+    private byte[] serializedState;
+
+    @Setup
+    public void setUp() throws Exception {
+        actorSystem = new BenchmarkActorSystem();
+        objectMapper = BroadcastBenchmarkConfiguration.getBean(JacksonSerializationFramework.class).getObjectMapper();
+        // a bucket size of at least the number of members keeps all of them in the leaf node
+        state = new BroadcasterState(8, members, actorSystem.memberRefs(members));
+        serializedState = objectMapper.writeValueAsBytes(state);
+    }
+
+    @TearDown
+    public void tearDown() {
+        actorSystem.destroy();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return objectMapper.writeValueAsBytes(state);
+    }
+
+    @Benchmark
+    public BroadcasterState deserialize() throws Exception {
+        return objectMapper.readValue(serializedState, BroadcasterState.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(BroadcasterStateSerializationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
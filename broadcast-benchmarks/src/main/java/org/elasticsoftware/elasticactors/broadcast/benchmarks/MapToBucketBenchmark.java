@@ -0,0 +1,87 @@
+package org.elasticsoftware.elasticactors.broadcast.benchmarks;
+
+import com.google.common.hash.Hashing;
+import org.elasticsoftware.elasticactors.broadcast.state.BucketPlacement;
+import org.elasticsoftware.elasticactors.broadcast.state.MemberHasher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * Compares the original bucket selection of the broadcaster (formatting {@code "<nodeId>:<member>"}
+ * and hashing it with a new murmur3 hasher) with the {@link MemberHasher}. Run {@link #main} to
+ * get the allocation rate per operation ({@code gc.alloc.rate.norm}) next to the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapToBucketBenchmark {
+
+    private static final String NODE_ID = "sessionList/3";
+    private static final int BUCKETS = 8;
+
+    private String[] members;
+    private MemberHasher memberHasher;
+
+    @Setup
+    public void setUp() {
+        members = new String[1024];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = format("actor://broadcast-cluster/broadcast/shards/%d/session-%d", i % 64, i);
+        }
+        memberHasher = MemberHasher.forNode(NODE_ID);
+    }
+
+    @Benchmark
+    public void formatAndHash(Blackhole blackhole) {
+        for (String member : members) {
+            int hash = Hashing.murmur3_32()
+                    .hashString(format("%s:%s", NODE_ID, member), StandardCharsets.UTF_8)
+                    .asInt();
+            blackhole.consume(BucketPlacement.MODULO.bucket(hash, BUCKETS));
+        }
+    }
+
+    @Benchmark
+    public void memberHasher(Blackhole blackhole) {
+        for (String member : members) {
+            blackhole.consume(BucketPlacement.MODULO.bucket(memberHasher.hash(member), BUCKETS));
+        }
+    }
+
+    @Benchmark
+    public void memberHasherJumpConsistentHash(Blackhole blackhole) {
+        for (String member : members) {
+            blackhole.consume(BucketPlacement.JUMP_CONSISTENT_HASH.bucket(memberHasher.hash(member), BUCKETS));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(MapToBucketBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
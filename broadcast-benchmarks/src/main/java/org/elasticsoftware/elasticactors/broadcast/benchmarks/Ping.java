@@ -0,0 +1,21 @@
+package org.elasticsoftware.elasticactors.broadcast.benchmarks;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = false, immutable = true)
+public final class Ping {
+
+    private final long sentAt;
+
+    @JsonCreator
+    public Ping(@JsonProperty("sentAt") long sentAt) {
+        this.sentAt = sentAt;
+    }
+
+    public long getSentAt() {
+        return sentAt;
+    }
+}
@@ -0,0 +1,59 @@
+package org.elasticsoftware.elasticactors.broadcast.benchmarks;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures throttled broadcasts at a rate that doesn't limit them, so the results are dominated
+ * by setting up the throttled broadcast session: collecting the leaf nodes of the tree, or
+ * taking them from the leaf node cache of the root when {@code leafNodeTracking} is enabled
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThrottledBroadcastBenchmark {
+
+    @Param({"1000", "10000"})
+    private int members;
+
+    @Param({"false", "true"})
+    private boolean leafNodeTracking;
+
+    private BenchmarkActorSystem actorSystem;
+    private ActorRef broadcaster;
+
+    @Setup
+    public void setUp() throws Exception {
+        actorSystem = new BenchmarkActorSystem();
+        BroadcasterState state = new BroadcasterState(8, 32, actorSystem.createMembers(members));
+        state.setLeafNodeTracking(leafNodeTracking);
+        broadcaster = actorSystem.createBroadcaster(state);
+    }
+
+    @TearDown
+    public void tearDown() {
+        actorSystem.destroy();
+    }
+
+    @Benchmark
+    public void throttledBroadcast() throws Exception {
+        actorSystem.broadcast(broadcaster, new ThrottledPing(System.nanoTime()), members);
+    }
+}
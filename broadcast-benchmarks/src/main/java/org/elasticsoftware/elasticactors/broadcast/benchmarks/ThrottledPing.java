@@ -0,0 +1,27 @@
+package org.elasticsoftware.elasticactors.broadcast.benchmarks;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.broadcast.messages.Throttled;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+/**
+ * A {@link Ping} that is throttled at a rate high enough not to limit the benchmarks, so they
+ * measure the collection of the leaf nodes rather than the rate limit
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = false, immutable = true)
+@Throttled(maxPerSecond = "10000000")
+public final class ThrottledPing {
+
+    private final long sentAt;
+
+    @JsonCreator
+    public ThrottledPing(@JsonProperty("sentAt") long sentAt) {
+        this.sentAt = sentAt;
+    }
+
+    public long getSentAt() {
+        return sentAt;
+    }
+}
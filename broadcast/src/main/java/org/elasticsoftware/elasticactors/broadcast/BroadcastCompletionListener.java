@@ -0,0 +1,59 @@
+package org.elasticsoftware.elasticactors.broadcast;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.ActorState;
+import org.elasticsoftware.elasticactors.TempActor;
+import org.elasticsoftware.elasticactors.UntypedActor;
+import org.elasticsoftware.elasticactors.broadcast.messages.BroadcastCompleted;
+import org.elasticsoftware.elasticactors.serialization.NoopSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.SerializationFramework;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Receives the {@link BroadcastCompleted} messages of the broadcasts of a
+ * {@link BroadcastSubscriber}. Other messages, such as replies of the members, are ignored.
+ */
+@TempActor(stateClass = BroadcastCompletionListener.State.class)
+public final class BroadcastCompletionListener extends UntypedActor {
+
+    private final static Logger staticLogger = LoggerFactory.getLogger(BroadcastCompletionListener.class);
+
+    @Override
+    public void onReceive(ActorRef sender, Object message) throws Exception {
+        if (message instanceof BroadcastCompleted) {
+            getState(State.class).getSubscriber().handleCompleted((BroadcastCompleted) message);
+        }
+    }
+
+    @Override
+    protected Logger initLogger() {
+        return staticLogger;
+    }
+
+    /**
+     * The state of a temp actor is never serialized, so it can refer to the subscriber
+     */
+    public static final class State implements ActorState<State> {
+
+        private final BroadcastSubscriber subscriber;
+
+        State(BroadcastSubscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        BroadcastSubscriber getSubscriber() {
+            return subscriber;
+        }
+
+        @Override
+        public State getBody() {
+            return this;
+        }
+
+        @Override
+        public Class<? extends SerializationFramework> getSerializationFramework() {
+            return NoopSerializationFramework.class;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.elasticsoftware.elasticactors.broadcast;
+
+import org.elasticsoftware.elasticactors.Actor;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.MessageHandler;
+import org.elasticsoftware.elasticactors.MethodActor;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.broadcast.messages.BroadcastPriority;
+import org.elasticsoftware.elasticactors.broadcast.messages.RateLimiterTick;
+import org.elasticsoftware.elasticactors.broadcast.messages.ThrottledBroadcast;
+import org.elasticsoftware.elasticactors.broadcast.messages.ThrottledDeliveryFeedback;
+import org.elasticsoftware.elasticactors.broadcast.messages.ThrottledMessage;
+import org.elasticsoftware.elasticactors.broadcast.state.AdaptiveRate;
+import org.elasticsoftware.elasticactors.broadcast.state.PendingThrottledBroadcast;
+import org.elasticsoftware.elasticactors.broadcast.state.RateLimiterState;
+import org.elasticsoftware.elasticactors.broadcast.state.TokenBucket;
+import org.elasticsoftware.elasticactors.state.ActorLifecycleStep;
+import org.elasticsoftware.elasticactors.state.PersistenceAdvisor;
+import org.elasticsoftware.elasticactors.state.PersistenceConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsoftware.elasticactors.state.ActorLifecycleStep.CREATE;
+
+/**
+ * Delivers the throttled broadcasts of a {@link Broadcaster} tree to its leaf nodes. The budget of
+ * a message class is enforced with a {@link TokenBucket} that is shared by all broadcasts of that
+ * class, so concurrent broadcasts don't exceed it together. Deliveries are queued per class and
+ * drained on a single tick that only runs while there is something left to deliver.
+ * <br>
+ * The queues are drained in order of {@link BroadcastPriority}, and while {@link
+ * BroadcastPriority#URGENT} messages are being delivered the deliveries of other messages are
+ * paused. Messages that expired are dropped before they are sent to the next leaf node.
+ * <br>
+ * The budget of a message class with an adaptive rate follows its {@link AdaptiveRate}. Once per
+ * tick, a message of the class asks its leaf node for feedback, and the time until that feedback
+ * arrives is the latency the rate adapts to. Both ends of it are measured on the clock of the rate
+ * limiter.
+ */
+@Actor(stateClass = RateLimiterState.class, serializationFramework = JacksonSerializationFramework.class)
+@PersistenceConfig(
+        persistOnMessages = false,
+        included = {ThrottledBroadcast.class, RateLimiterTick.class},
+        persistOn = {CREATE})
+@Configurable
+public final class BroadcastRateLimiter extends MethodActor implements PersistenceAdvisor {
+
+    private BroadcasterMetrics metrics = BroadcasterMetrics.NOOP;
+    private final PersistenceConfig persistenceConfig = getClass().getAnnotation(PersistenceConfig.class);
+
+    @Autowired(required = false)
+    public void setMetrics(BroadcasterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Follows the {@link PersistenceConfig} of this class, except for the ticks that don't complete
+     * a queued broadcast (see {@link RateLimiterState#shouldPersistTick()})
+     */
+    @Override
+    public boolean shouldUpdateState(Object message) {
+        RateLimiterState state = getState(RateLimiterState.class);
+        if (message instanceof ThrottledBroadcast) {
+            state.markPersisted();
+            return true;
+        }
+        return message instanceof RateLimiterTick && state.shouldPersistTick();
+    }
+
+    @Override
+    public boolean shouldUpdateState(ActorLifecycleStep lifecycleStep) {
+        return Arrays.asList(persistenceConfig.persistOn()).contains(lifecycleStep);
+    }
+
+    @Override
+    public void postActivate(String previousVersion) throws Exception {
+        RateLimiterState state = getState(RateLimiterState.class);
+        // not every tick is persisted, so the one that was scheduled may have been handled already
+        state.setTickScheduled(false);
+        drain(state, System.currentTimeMillis());
+    }
+
+    @MessageHandler
+    public void handleThrottledBroadcast(ThrottledBroadcast broadcast, RateLimiterState state) {
+        if (broadcast.getLeafNodes().isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int perSecond = state.rateFor(
+                broadcast.getMessage().getMessageClass(),
+                broadcast.getMaxPerSecond(),
+                broadcast.getMinPerSecond(),
+                broadcast.getTargetLatencyMillis(),
+                now);
+        TokenBucket bucket = state.bucketFor(
+                broadcast.getMessage().getMessageClass(),
+                perSecond,
+                broadcast.getPriority(),
+                now);
+        bucket.getQueue().add(new PendingThrottledBroadcast(
+                broadcast.getMessage(),
+                broadcast.getMessagesPerLeafNode(),
+                new LinkedList<>(broadcast.getLeafNodes())));
+        logger.debug(
+                "Rate limiter [{}]: queued message of type [{}] for {} leaf nodes at {} messages/sec",
+                getSelf().getActorId(),
+                broadcast.getMessage().getMessageClass(),
+                broadcast.getLeafNodes().size(),
+                perSecond);
+        drain(state, now);
+    }
+
+    @MessageHandler
+    public void handleThrottledDeliveryFeedback(ThrottledDeliveryFeedback feedback, RateLimiterState state) {
+        AdaptiveRate rate = state.getAdaptiveRates().get(feedback.getMessageClass());
+        if (rate == null) {
+            return;
+        }
+        int previous = rate.getCurrentPerSecond();
+        long now = System.currentTimeMillis();
+        long latencyMillis = Math.max(0L, now - feedback.getSentAt());
+        rate.update(latencyMillis, now);
+        if (rate.getCurrentPerSecond() < previous) {
+            logger.debug(
+                    "Rate limiter [{}]: lowering the rate of message type [{}] to {} messages/sec, a leaf node received it after {} ms",
+                    getSelf().getActorId(),
+                    feedback.getMessageClass(),
+                    rate.getCurrentPerSecond(),
+                    latencyMillis);
+        }
+        TokenBucket bucket = state.getBuckets().get(feedback.getMessageClass());
+        if (bucket != null) {
+            bucket.setMaxPerSecond(rate.getCurrentPerSecond());
+        }
+    }
+
+    @MessageHandler
+    public void handleTick(RateLimiterTick tick, RateLimiterState state) {
+        state.setTickScheduled(false);
+        drain(state, System.currentTimeMillis());
+    }
+
+    private void drain(RateLimiterState state, long now) {
+        ActorRef self = getSelf();
+        List<TokenBucket> buckets = new ArrayList<>(state.getBuckets().values());
+        buckets.sort(Comparator.comparing(TokenBucket::getPriority));
+        boolean urgentPending = false;
+        for (TokenBucket bucket : buckets) {
+            bucket.refill(now, state.getTickMillis());
+            if (urgentPending && bucket.getPriority() != BroadcastPriority.URGENT) {
+                // paused until the urgent messages have been delivered
+                continue;
+            }
+            PendingThrottledBroadcast pending;
+            while ((pending = bucket.getQueue().peek()) != null) {
+                if (pending.getMessage().isExpired(now)) {
+                    logger.debug(
+                            "Rate limiter [{}]: dropping expired message of type [{}] for {} leaf nodes",
+                            self.getActorId(),
+                            pending.getMessage().getMessageClass(),
+                            pending.getLeafNodes().size());
+                    bucket.getQueue().poll();
+                    state.setPersistenceRequested(true);
+                    continue;
+                }
+                if (!bucket.tryAcquire(pending.getCost())) {
+                    break;
+                }
+                ActorRef leafNode = pending.getLeafNodes().poll();
+                if (leafNode != null) {
+                    logger.trace(
+                            "Rate limiter [{}]: sending throttled message of type [{}] to leaf node [{}]",
+                            self.getActorId(),
+                            pending.getMessage().getMessageClass(),
+                            leafNode.getActorId());
+                    ThrottledMessage message = pending.getMessage();
+                    AdaptiveRate rate = state.getAdaptiveRates().get(message.getMessageClass());
+                    if (rate != null && rate.shouldSample(now, state.getTickMillis())) {
+                        // the leaf node echoes the time back, a sample per tick is enough for the rate
+                        message = message.withSentAt(now);
+                    }
+                    leafNode.tell(message, self);
+                }
+                if (pending.getLeafNodes().isEmpty()) {
+                    bucket.getQueue().poll();
+                    state.setPersistenceRequested(true);
+                }
+            }
+            if (bucket.getQueue().isEmpty()) {
+                state.getBuckets().values().remove(bucket);
+            } else if (bucket.getPriority() == BroadcastPriority.URGENT) {
+                urgentPending = true;
+            }
+        }
+        if (!state.getBuckets().isEmpty() && !state.isTickScheduled()) {
+            getSystem().getScheduler().scheduleOnce(new RateLimiterTick(), self, state.getTickMillis(), TimeUnit.MILLISECONDS);
+            state.setTickScheduled(true);
+        }
+        if (metrics != BroadcasterMetrics.NOOP) {
+            metrics.throttleBacklog(state.getPendingDeliveries());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.elasticsoftware.elasticactors.broadcast;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.ActorSystem;
+import org.elasticsoftware.elasticactors.broadcast.messages.BroadcastCompleted;
+import org.elasticsoftware.elasticactors.broadcast.messages.TrackedBroadcast;
+import org.elasticsoftware.elasticactors.serialization.SerializationFramework;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Broadcasts the messages of a {@link org.reactivestreams.Publisher} through a {@link Broadcaster}
+ * tree, requesting the next message only when a previous one has reached the leaf nodes. Every
+ * message is sent as a {@link TrackedBroadcast}, of which at most {@code maxInFlight} are in
+ * progress at the same time, so a producer can't broadcast faster than the tree delivers.
+ * <br>
+ * A tracked broadcast also completes when its deadline passes (see
+ * {@link org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState#setTrackedBroadcastTimeoutMillis(long)}),
+ * so a slow or unresponsive subtree holds up the publisher for that long at most. The messages are
+ * delivered to all members of the tree.
+ * <br>
+ * The messages are serialized with the given serialization framework, which must be the one
+ * declared in their {@link org.elasticsoftware.elasticactors.serialization.Message} annotation.
+ * Messages that can't be serialized are skipped.
+ */
+public final class BroadcastSubscriber implements Subscriber<Object> {
+
+    private static final Logger logger = LoggerFactory.getLogger(BroadcastSubscriber.class);
+
+    private final ActorSystem actorSystem;
+    private final ActorRef broadcaster;
+    private final int maxInFlight;
+    private final SerializationFramework serializationFramework;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile Subscription subscription;
+    private volatile ActorRef completionListener;
+    private volatile boolean done;
+
+    public BroadcastSubscriber(
+            ActorSystem actorSystem,
+            ActorRef broadcaster,
+            int maxInFlight,
+            SerializationFramework serializationFramework) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.actorSystem = actorSystem;
+        this.broadcaster = broadcaster;
+        this.maxInFlight = maxInFlight;
+        this.serializationFramework = serializationFramework;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        if (subscription == null) {
+            throw new NullPointerException("subscription");
+        }
+        if (this.subscription != null) {
+            // a subscriber can only be subscribed once
+            subscription.cancel();
+            return;
+        }
+        try {
+            completionListener = actorSystem.tempActorOf(
+                    BroadcastCompletionListener.class,
+                    new BroadcastCompletionListener.State(this));
+        } catch (Exception e) {
+            logger.error("Unexpected Exception creating the completion listener for broadcaster [{}]", broadcaster, e);
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        request(maxInFlight);
+    }
+
+    @Override
+    public void onNext(Object message) {
+        if (message == null) {
+            throw new NullPointerException("message");
+        }
+        TrackedBroadcast trackedBroadcast;
+        try {
+            trackedBroadcast = TrackedBroadcast.of(UUID.randomUUID().toString(), message, serializationFramework);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Unexpected Exception serializing message of type [{}] for broadcaster [{}]", message.getClass().getName(), broadcaster, e);
+            // request another message in place of the skipped one
+            if (!done) {
+                request(1);
+            }
+            return;
+        }
+        inFlight.incrementAndGet();
+        broadcaster.tell(trackedBroadcast, completionListener);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        logger.error("Publisher of broadcaster [{}] failed, {} broadcasts are in progress", broadcaster, inFlight.get(), throwable);
+        terminate();
+    }
+
+    @Override
+    public void onComplete() {
+        logger.debug("Publisher of broadcaster [{}] completed, {} broadcasts are in progress", broadcaster, inFlight.get());
+        terminate();
+    }
+
+    /**
+     * Stops requesting messages from the publisher. The broadcasts that are in progress are
+     * completed.
+     */
+    public void cancel() {
+        Subscription current = subscription;
+        if (current != null && !done) {
+            current.cancel();
+            terminate();
+        }
+    }
+
+    /**
+     * The number of broadcasts that didn't complete yet
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    void handleCompleted(BroadcastCompleted completed) {
+        if (!completed.isComplete()) {
+            logger.warn(
+                    "Broadcast [{}] of broadcaster [{}] expired after reaching {} members",
+                    completed.getBroadcastId(),
+                    broadcaster,
+                    completed.getMembers());
+        }
+        int remaining = inFlight.decrementAndGet();
+        if (!done) {
+            request(1);
+        } else if (remaining == 0) {
+            stopCompletionListener();
+        }
+    }
+
+    private synchronized void request(long n) {
+        // the calls on a subscription must not be concurrent
+        subscription.request(n);
+    }
+
+    private void terminate() {
+        done = true;
+        if (inFlight.get() == 0) {
+            stopCompletionListener();
+        }
+    }
+
+    private synchronized void stopCompletionListener() {
+        if (completionListener != null) {
+            try {
+                actorSystem.stop(completionListener);
+            } catch (Exception e) {
+                logger.warn("Unexpected Exception stopping the completion listener of broadcaster [{}]", broadcaster, e);
+            }
+            completionListener = null;
+        }
+    }
+}
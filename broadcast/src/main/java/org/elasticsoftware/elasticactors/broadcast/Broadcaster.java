@@ -2,7 +2,6 @@ package org.elasticsoftware.elasticactors.broadcast;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
-import com.google.common.hash.Hashing;
 import org.elasticsoftware.elasticactors.Actor;
 import org.elasticsoftware.elasticactors.ActorRef;
 import org.elasticsoftware.elasticactors.ActorSystem;
@@ -12,25 +11,63 @@ import org.elasticsoftware.elasticactors.MethodActor;
 import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
 import org.elasticsoftware.elasticactors.broadcast.handlers.RehashHandlers;
 import org.elasticsoftware.elasticactors.broadcast.messages.Add;
+import org.elasticsoftware.elasticactors.broadcast.messages.BroadcastAck;
+import org.elasticsoftware.elasticactors.broadcast.messages.BroadcastCompleted;
+import org.elasticsoftware.elasticactors.broadcast.messages.BroadcastEnvelope;
+import org.elasticsoftware.elasticactors.broadcast.messages.Checkpoint;
+import org.elasticsoftware.elasticactors.broadcast.messages.ContinueLeafDelivery;
+import org.elasticsoftware.elasticactors.broadcast.messages.FilteredBroadcast;
+import org.elasticsoftware.elasticactors.broadcast.messages.FlushMembers;
+import org.elasticsoftware.elasticactors.broadcast.messages.LeafNodesChanged;
 import org.elasticsoftware.elasticactors.broadcast.messages.LeafNodesRequest;
 import org.elasticsoftware.elasticactors.broadcast.messages.LeafNodesResponse;
+import org.elasticsoftware.elasticactors.broadcast.messages.MemberUndeliverable;
 import org.elasticsoftware.elasticactors.broadcast.messages.Remove;
+import org.elasticsoftware.elasticactors.broadcast.messages.ReportSize;
+import org.elasticsoftware.elasticactors.broadcast.messages.SizeReport;
+import org.elasticsoftware.elasticactors.broadcast.messages.SizeRequest;
+import org.elasticsoftware.elasticactors.broadcast.messages.SizeResponse;
 import org.elasticsoftware.elasticactors.broadcast.messages.Throttled;
+import org.elasticsoftware.elasticactors.broadcast.messages.ThrottledBroadcast;
+import org.elasticsoftware.elasticactors.broadcast.messages.ThrottledBroadcastTimeout;
+import org.elasticsoftware.elasticactors.broadcast.messages.ThrottledDeliveryFeedback;
 import org.elasticsoftware.elasticactors.broadcast.messages.ThrottledMessage;
+import org.elasticsoftware.elasticactors.broadcast.messages.TrackedBroadcast;
+import org.elasticsoftware.elasticactors.broadcast.messages.TrackedBroadcastTimeout;
+import org.elasticsoftware.elasticactors.broadcast.messages.TrackedDelivery;
 import org.elasticsoftware.elasticactors.broadcast.messages.UpdateThrottleConfig;
+import org.elasticsoftware.elasticactors.broadcast.messages.rehash.MergeRequest;
+import org.elasticsoftware.elasticactors.broadcast.messages.rehash.MigrateRequest;
+import org.elasticsoftware.elasticactors.broadcast.messages.rehash.MigrateResponse;
+import org.elasticsoftware.elasticactors.broadcast.messages.rehash.ResizeRequest;
+import org.elasticsoftware.elasticactors.broadcast.serialization.CompactActorRefSetSerializer;
+import org.elasticsoftware.elasticactors.broadcast.state.BroadcastTracker;
 import org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState;
+import org.elasticsoftware.elasticactors.broadcast.state.BucketPlacement;
+import org.elasticsoftware.elasticactors.broadcast.state.LeafDelivery;
+import org.elasticsoftware.elasticactors.broadcast.state.MemberHasher;
+import org.elasticsoftware.elasticactors.broadcast.state.RateLimiterState;
 import org.elasticsoftware.elasticactors.broadcast.state.ThrottleConfig;
 import org.elasticsoftware.elasticactors.broadcast.state.ThrottledBroadcastSession;
+import org.elasticsoftware.elasticactors.broadcast.state.ThrottledBroadcastTimeoutPolicy;
+import org.elasticsoftware.elasticactors.state.ActorLifecycleStep;
+import org.elasticsoftware.elasticactors.state.PersistenceAdvisor;
 import org.elasticsoftware.elasticactors.state.PersistenceConfig;
+import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
 import org.springframework.core.env.Environment;
 
-import java.nio.charset.StandardCharsets;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
@@ -39,35 +76,58 @@ import java.util.regex.Pattern;
 import static com.google.common.collect.Sets.newHashSet;
 import static org.elasticsoftware.elasticactors.state.ActorLifecycleStep.CREATE;
 
-import static java.lang.String.format;
-
 /**
  * @author Joost van de Wijgerd
  */
 @Actor(stateClass = BroadcasterState.class, serializationFramework = JacksonSerializationFramework.class)
-@PersistenceConfig(persistOnMessages = false, included = {Add.class, Remove.class, UpdateThrottleConfig.class}, persistOn = {CREATE})
+@PersistenceConfig(
+        persistOnMessages = false,
+        included = {
+                Add.class,
+                Remove.class,
+                FlushMembers.class,
+                UpdateThrottleConfig.class,
+                ResizeRequest.class,
+                MigrateRequest.class,
+                MigrateResponse.class,
+                MergeRequest.class,
+                Checkpoint.class},
+        persistOn = {CREATE})
 @MessageHandlers(RehashHandlers.class)
 @Configurable
-public final class Broadcaster extends MethodActor {
+public final class Broadcaster extends MethodActor implements PersistenceAdvisor {
 
     private static final Pattern EXPRESSION_PATTERN = Pattern.compile(
             "^\\$\\{([^:]+)(?::([^:]+))?}$");
+    private static final int MAX_THROTTLED_BROADCAST_RETRIES = 2;
     private JacksonSerializationFramework serializationFramework;
     private Environment environment;
+    private MessageCodec messageCodec;
+    private BroadcasterMetrics metrics = BroadcasterMetrics.NOOP;
     private final Map<Class<?>, ThrottleConfig> throttleConfigCache = new ConcurrentHashMap<>();
+    private final Map<Class<?>, PriorityConfig> priorityConfigCache = new ConcurrentHashMap<>();
+    private final PersistenceConfig persistenceConfig = getClass().getAnnotation(PersistenceConfig.class);
+    private final Set<Class<?>> persistedMessages = new HashSet<>(Arrays.asList(persistenceConfig.included()));
+    private final Set<Class<?>> checkpointedMessages = new HashSet<>(Arrays.asList(
+            Add.class,
+            Remove.class,
+            FlushMembers.class));
 
     @Override
     public void postCreate(ActorRef creator) throws Exception {
         BroadcasterState state = getState(BroadcasterState.class);
         // see if we need to scale out
-        if(state.getLeaves().size() > state.getBucketSize()) {
+        if(state.shouldSplit()) {
             rehash(state);
         }
     }
 
     @Override
     public void postActivate(String previousVersion) throws Exception {
-
+        BroadcasterState state = getState(BroadcasterState.class);
+        // size reports are not persisted, so the one that was scheduled may have been handled already
+        state.setSizeReportScheduled(false);
+        scheduleSizeReport(state);
     }
 
     @Override
@@ -81,14 +141,68 @@ public final class Broadcaster extends MethodActor {
                 getSystem().stop(actorRef);
             }
         }
+
+        if (state.getRateLimiter() != null) {
+            getSystem().stop(state.getRateLimiter());
+        }
+
+        stopDeadMemberDetector(state);
+    }
+
+    @Override
+    public void prePassivate() throws Exception {
+        stopDeadMemberDetector(getState(BroadcasterState.class));
+    }
+
+    /**
+     * Follows the {@link PersistenceConfig} of this class, except for the membership changes of
+     * nodes that use checkpoints (see {@link BroadcasterState#setCheckpointIntervalMillis(long)})
+     */
+    @Override
+    public boolean shouldUpdateState(Object message) {
+        return shouldUpdateState(getState(BroadcasterState.class), message);
+    }
+
+    boolean shouldUpdateState(BroadcasterState state, Object message) {
+        if (state.isPersistenceRequested()) {
+            state.setPersistenceRequested(false);
+            return true;
+        }
+        if (!persistedMessages.contains(message.getClass())) {
+            return false;
+        }
+        if (state.isCheckpointing() && checkpointedMessages.contains(message.getClass())) {
+            if (state.getCheckpointMaxChanges() > 0
+                    && state.getUncheckpointedChanges() >= state.getCheckpointMaxChanges()) {
+                state.resetUncheckpointedChanges();
+                return true;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean shouldUpdateState(ActorLifecycleStep lifecycleStep) {
+        return Arrays.asList(persistenceConfig.persistOn()).contains(lifecycleStep);
     }
 
     private ThrottleConfig getThrottleConfig(Object message) {
         return throttleConfigCache.computeIfAbsent(message.getClass(), this::resolveThrottleConfig);
     }
 
+    private PriorityConfig getPriorityConfig(Object message) {
+        return priorityConfigCache.computeIfAbsent(message.getClass(), PriorityConfig::forClass);
+    }
+
     private ThrottleConfig resolveThrottleConfig(Class<?> messageClass) {
-        ThrottleConfig throttleConfig = new ThrottleConfig(getMaxMessagesPerSecond(messageClass));
+        Throttled throttled = messageClass.getAnnotation(Throttled.class);
+        ThrottleConfig throttleConfig = throttled != null
+                ? new ThrottleConfig(
+                        resolveThrottleValue(messageClass, throttled.maxPerSecond()),
+                        resolveThrottleValue(messageClass, throttled.minPerSecond()),
+                        resolveThrottleValue(messageClass, throttled.targetLatencyMillis()))
+                : new ThrottleConfig(0);
         logger.debug(
                 "Resolved broadcast throttling config {} for class {}",
                 throttleConfig,
@@ -96,30 +210,30 @@ public final class Broadcaster extends MethodActor {
         return throttleConfig;
     }
 
-    private int getMaxMessagesPerSecond(Class<?> messageClass) {
-        Throttled throttled = messageClass.getAnnotation(Throttled.class);
-        if (throttled != null) {
-            try {
-                Matcher m = EXPRESSION_PATTERN.matcher(throttled.maxPerSecond());
-                if (m.matches()) {
-                    try {
-                        return environment.getRequiredProperty(m.group(1), Integer.class);
-                    } catch (IllegalStateException e) {
-                        String defaultValue = m.group(2);
-                        if (defaultValue != null) {
-                            return Integer.parseInt(defaultValue);
-                        } else {
-                            throw e;
-                        }
+    private int resolveThrottleValue(Class<?> messageClass, String value) {
+        if (value.isEmpty()) {
+            return 0;
+        }
+        try {
+            Matcher m = EXPRESSION_PATTERN.matcher(value);
+            if (m.matches()) {
+                try {
+                    return environment.getRequiredProperty(m.group(1), Integer.class);
+                } catch (IllegalStateException e) {
+                    String defaultValue = m.group(2);
+                    if (defaultValue != null) {
+                        return Integer.parseInt(defaultValue);
+                    } else {
+                        throw e;
                     }
                 }
-                return Integer.parseInt(throttled.maxPerSecond());
-            } catch (Exception e) {
-                logger.error(
-                        "Could not parse throttling configuration for message class {}",
-                        messageClass.getName(),
-                        e);
             }
+            return Integer.parseInt(value);
+        } catch (Exception e) {
+            logger.error(
+                    "Could not parse throttling configuration for message class {}",
+                    messageClass.getName(),
+                    e);
         }
         return 0;
     }
@@ -129,67 +243,273 @@ public final class Broadcaster extends MethodActor {
         this.environment = environment;
     }
 
+    /**
+     * Applies the {@value CompactActorRefSetSerializer#COMPACT_FORMAT_PROPERTY} property of the
+     * actor system to the serialization framework that persists the nodes
+     */
+    @Autowired
+    public void configureCompactFormat(JacksonSerializationFramework serializationFramework, Environment environment) {
+        CompactActorRefSetSerializer.setCompactFormat(
+                serializationFramework.getObjectMapper(),
+                environment.getProperty(CompactActorRefSetSerializer.COMPACT_FORMAT_PROPERTY, Boolean.class, false));
+    }
+
+    @Autowired
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.messageCodec = new MessageCodec(beanFactory);
+    }
+
     @Autowired
     public void setSerializationFramework(JacksonSerializationFramework serializationFramework) {
         this.serializationFramework = serializationFramework;
     }
 
+    @Autowired(required = false)
+    public void setMetrics(BroadcasterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     @MessageHandler
     public void handleRemove(Remove remove,BroadcasterState state) {
-        if (state.getCurrentlyRehashing()) {
-            if (state.getRehashRoot()) {
-                logger.info("Received remove request, but broadcaster [{}] is currently rehashing. Saving message for when rehashing will be done", getSelf().getActorId());
-                state.getReceivedDuringRehashing().add(remove);
-            } else {
-                logger.error("Received remove request, but broadcaster [{}] is currently rehashing and is not the root!. This should not happen, ignoring remove request.", getSelf().getActorId());
-            }
-
+        if (state.getCurrentlyRehashing() && state.getRehashRoot()) {
+            logger.info("Received remove request, but broadcaster [{}] is currently rehashing. Saving message for when rehashing will be done", getSelf().getActorId());
+            state.getReceivedDuringRehashing().add(remove);
             return;
         }
 
         if(state.isLeafNode()) {
-            state.getLeaves().removeAll(remove.getMembers());
+            int removed = 0;
+            for (ActorRef member : remove.getMembers()) {
+                if (state.getLeaves().remove(member)) {
+                    removed++;
+                }
+            }
+            state.removeTags(remove.getMembers());
+            state.removeWeights(remove.getMembers());
+            state.resetUndeliverableCounts(remove.getMembers());
+            if (removed > 0) {
+                scheduleSizeReport(state);
+            }
+            scheduleCheckpoint(state);
         } else {
             // hash and send to other nodes
             Multimap<ActorRef, ActorRef> sendMap = mapToBucket(remove.getMembers(), state);
-            // now send em all a message
-            for (ActorRef actorRef : sendMap.keys()) {
-                actorRef.tell(new Remove(sendMap.get(actorRef)),getSelf());
+            if (state.isCoalescing()) {
+                for (ActorRef actorRef : sendMap.keySet()) {
+                    state.pendingMembersFor(actorRef).remove(sendMap.get(actorRef));
+                }
+                scheduleFlush(state);
+            } else {
+                // now send em all a message
+                for (ActorRef actorRef : sendMap.keySet()) {
+                    actorRef.tell(new Remove(sendMap.get(actorRef)),getSelf());
+                }
+                metrics.membershipChangesForwarded(sendMap.keySet().size());
+            }
+            scheduleCheckpoint(state);
+            if (!state.isExactSize()) {
+                // this is an approximation
+                state.decrementSize(remove.getMembers().size());
             }
-            // this is an approximation
-            state.decrementSize(remove.getMembers().size());
         }
     }
 
     @MessageHandler
     public void handleAdd(Add add,BroadcasterState state) throws Exception {
-        if (state.getCurrentlyRehashing()) {
-            if (state.getRehashRoot()) {
-                logger.info("Received add request, but broadcaster [{}] is currently rehashing. Saving message for when rehashing will be done", getSelf().getActorId());
-                state.getReceivedDuringRehashing().add(add);
-            } else {
-                logger.error("Received add request, but broadcaster [{}] is currently rehashing and is not the root!. This should not happen, ignoring add request.", getSelf().getActorId());
-            }
-
+        // nodes below the root of a rehash keep serving broadcasts until they are replaced, so
+        // they keep applying the changes they receive
+        if (state.getCurrentlyRehashing() && state.getRehashRoot()) {
+            logger.info("Received add request, but broadcaster [{}] is currently rehashing. Saving message for when rehashing will be done", getSelf().getActorId());
+            state.getReceivedDuringRehashing().add(add);
             return;
         }
 
         if(state.isLeafNode()) {
             // add to leaves
-            state.getLeaves().addAll(add.getMembers());
+            int weight = state.getWeight();
+            int added = 0;
+            for (ActorRef member : add.getMembers()) {
+                if (state.getLeaves().add(member)) {
+                    added++;
+                }
+            }
+            state.setTags(add.getMembers(), add.getTags());
+            state.setWeights(add.getMembers(), add.getWeight());
+            state.resetUndeliverableCounts(add.getMembers());
+            if (added > 0 || state.getWeight() != weight) {
+                scheduleSizeReport(state);
+            }
+            scheduleCheckpoint(state);
             // see if we need to scale out
-            if(state.getLeaves().size() > state.getBucketSize()) {
+            if(state.shouldSplit()) {
                 rehash(state);
             }
         } else {
             // hash and send to other nodes
             Multimap<ActorRef, ActorRef> sendMap = mapToBucket(add.getMembers(), state);
-            // now send em all a message
-            for (ActorRef actorRef : sendMap.asMap().keySet()) {
-                actorRef.tell(new Add(sendMap.get(actorRef)),getSelf());
+            for (ActorRef actorRef : sendMap.keySet()) {
+                // filtered broadcasts are sent to the children that may have members with their tags
+                state.addChildTags(actorRef.getActorId(), add.getTags());
+            }
+            if (state.isCoalescing()) {
+                for (ActorRef actorRef : sendMap.keySet()) {
+                    state.pendingMembersFor(actorRef).add(sendMap.get(actorRef), add.getTags(), add.getWeight());
+                }
+                scheduleFlush(state);
+            } else {
+                // now send em all a message
+                for (ActorRef actorRef : sendMap.keySet()) {
+                    actorRef.tell(new Add(sendMap.get(actorRef), add.getTags(), add.getWeight()),getSelf());
+                }
+                metrics.membershipChangesForwarded(sendMap.keySet().size());
+            }
+            scheduleCheckpoint(state);
+            if (!state.isExactSize()) {
+                // this is an approximation!
+                state.incrementSize(add.getMembers().size());
             }
-            // this is an approximation!
-            state.incrementSize(add.getMembers().size());
+        }
+    }
+
+    @MessageHandler
+    public void handleFlushMembers(FlushMembers flushMembers, BroadcasterState state) {
+        state.setFlushScheduled(false);
+        if (!state.getPendingMembers().isEmpty()) {
+            logger.debug(
+                    "Node [{}]: forwarding {} coalesced membership changes",
+                    getSelf().getActorId(),
+                    state.getPendingMembersCount());
+            metrics.membershipChangesForwarded(BroadcasterTree.flushPendingMembers(state, getSelf()));
+        }
+        // the cleared flag and pending members are persisted with the next checkpoint
+        scheduleCheckpoint(state);
+    }
+
+    private void scheduleFlush(BroadcasterState state) {
+        if (state.getCoalesceMaxMembers() > 0 && state.getPendingMembersCount() >= state.getCoalesceMaxMembers()) {
+            // don't wait for the window to expire, the scheduled flush will find nothing to do
+            metrics.membershipChangesForwarded(BroadcasterTree.flushPendingMembers(state, getSelf()));
+        } else if (!state.isFlushScheduled()) {
+            getSystem().getScheduler().scheduleOnce(
+                    new FlushMembers(),
+                    getSelf(),
+                    state.getCoalesceWindowMillis(),
+                    TimeUnit.MILLISECONDS);
+            state.setFlushScheduled(true);
+        }
+    }
+
+    @MessageHandler
+    public void handleCheckpoint(Checkpoint checkpoint, BroadcasterState state) {
+        // the state is persisted after this message has been handled
+        logger.debug(
+                "Node [{}]: persisting checkpoint with {} membership changes",
+                getSelf().getActorId(),
+                state.getUncheckpointedChanges());
+        state.setCheckpointScheduled(false);
+        state.resetUncheckpointedChanges();
+    }
+
+    private void scheduleCheckpoint(BroadcasterState state) {
+        if (!state.isCheckpointing()) {
+            return;
+        }
+        state.incrementUncheckpointedChanges();
+        scheduleCheckpoint(state, state.getCheckpointIntervalMillis());
+    }
+
+    private void scheduleCheckpoint(BroadcasterState state, long delayMillis) {
+        if (!state.isCheckpointScheduled()) {
+            getSystem().getScheduler().scheduleOnce(
+                    new Checkpoint(),
+                    getSelf(),
+                    delayMillis,
+                    TimeUnit.MILLISECONDS);
+            state.setCheckpointScheduled(true);
+        }
+    }
+
+    /**
+     * Persists the sizes reported by the children with the next checkpoint, or at most once per
+     * size report interval for nodes that don't use checkpoints
+     */
+    private void scheduleSizeCheckpoint(BroadcasterState state) {
+        if (state.isCheckpointing()) {
+            scheduleCheckpoint(state);
+        } else if (state.getSizeReportIntervalMillis() > 0) {
+            scheduleCheckpoint(state, state.getSizeReportIntervalMillis());
+        } else {
+            state.setPersistenceRequested(true);
+        }
+    }
+
+    @MessageHandler
+    public void handleSizeReport(SizeReport sizeReport, BroadcasterState state, ActorRef child) {
+        int size = state.getSize();
+        int weight = state.getWeight();
+        if (state.isLeafNode() || !state.updateChildSize(child.getActorId(), sizeReport.getSize(), sizeReport.getWeight())) {
+            // the tree has changed since the report was sent
+            logger.debug(
+                    "Node [{}]: ignoring size report from node [{}] that is not a child",
+                    getSelf().getActorId(),
+                    child.getActorId());
+            return;
+        }
+        if (state.getSize() == size && state.getWeight() == weight) {
+            return;
+        }
+        scheduleSizeReport(state);
+        scheduleSizeCheckpoint(state);
+        if (state.shouldMerge()) {
+            logger.debug(
+                    "Node [{}]: subtree contains {} members, merging it into a leaf node",
+                    getSelf().getActorId(),
+                    state.getSize());
+            getSelf().tell(new MergeRequest(), getSelf());
+        }
+    }
+
+    @MessageHandler
+    public void handleReportSize(ReportSize reportSize, BroadcasterState state) {
+        state.setSizeReportScheduled(false);
+        reportSize(state);
+    }
+
+    @MessageHandler
+    public void handleSizeRequest(SizeRequest sizeRequest, BroadcasterState state, ActorRef sender) {
+        sender.tell(new SizeResponse(state.getSize(), state.isExactSize()), getSelf());
+    }
+
+    private void scheduleSizeReport(BroadcasterState state) {
+        if (state.getParent() == null || state.isSizeReportScheduled()) {
+            return;
+        }
+        if (state.getSizeReportIntervalMillis() > 0) {
+            getSystem().getScheduler().scheduleOnce(
+                    new ReportSize(),
+                    getSelf(),
+                    state.getSizeReportIntervalMillis(),
+                    TimeUnit.MILLISECONDS);
+            state.setSizeReportScheduled(true);
+        } else {
+            reportSize(state);
+        }
+    }
+
+    private void reportSize(BroadcasterState state) {
+        int size = state.getSize();
+        int weight = state.getWeight();
+        // changes that cancel each other out within the interval don't need to be reported
+        if (state.getParent() != null && (size != state.getReportedSize() || weight != state.getReportedWeight())) {
+            logger.trace(
+                    "Node [{}]: reporting size {} and weight {} to the parent [{}]",
+                    getSelf().getActorId(),
+                    size,
+                    weight,
+                    state.getParent().getActorId());
+            state.getParent().tell(new SizeReport(size, weight), getSelf());
+            state.setReportedSize(size);
+            state.setReportedWeight(weight);
         }
     }
 
@@ -206,70 +526,164 @@ public final class Broadcaster extends MethodActor {
     @MessageHandler
     public void handleLeafNodesRequest(LeafNodesRequest request,BroadcasterState state, ActorRef parent) {
         ActorRef self = getSelf();
-        if(state.isLeafNode()) {
+        if(state.isLeafNode() && request.getTags() != null && state.getMatchingLeaves(request.getTags()).isEmpty()) {
+            // none of the members of this leaf node match the filter
+            parent.tell(new LeafNodesResponse(request.getBroadcastId(), new HashSet<>()), self);
+        } else if(state.isLeafNode()) {
             // return ourselves
             logger.debug(
                     "Node[{}]: broadcast [{}] reached leaf, sending myself to the parent [{}]",
                     self.getActorId(),
                     request.getBroadcastId(),
                     parent.getActorId());
-            parent.tell(new LeafNodesResponse(request.getBroadcastId(), newHashSet(self)));
+            parent.tell(new LeafNodesResponse(request.getBroadcastId(), newHashSet(self)), self);
         } else {
             // start a session (so we know when to return the response to the parent node)
             logger.debug(
                     "Node [{}]: broadcast [{}] reached node, forwarding the request to children nodes",
                     self.getActorId(),
                     request.getBroadcastId());
-            state.addThrottledBroadcastSession(new ThrottledBroadcastSession(request.getBroadcastId(),parent));
-            // forward the request to the other nodes
-            for (ActorRef actorRef : state.getNodes()) {
-                logger.trace(
-                        "Node [{}]: forwarding broadcast [{}] to children node [{}]",
-                        self.getActorId(),
-                        request.getBroadcastId(),
-                        actorRef.getActorId());
-                actorRef.tell(request, self);
-            }
+            ThrottledBroadcastSession session = new ThrottledBroadcastSession(request.getBroadcastId(), parent);
+            session.setTags(request.getTags());
+            startThrottledBroadcastSession(session, request.getTimeoutMillis(), state);
+        }
+    }
+
+    private void startThrottledBroadcastSession(
+            ThrottledBroadcastSession session,
+            long timeoutMillis,
+            BroadcasterState state) {
+        session.expect(state.getMatchingNodes(session.getTags()));
+        ThrottledBroadcastSession evicted = state.addThrottledBroadcastSession(session);
+        if (evicted != null) {
+            logger.warn(
+                    "Node [{}]: too many throttled broadcast sessions, expiring session [{}] that is still waiting for {} nodes",
+                    getSelf().getActorId(),
+                    evicted.getId(),
+                    evicted.getPendingNodes().size());
+            expire(evicted, state, false);
+        }
+        if (session.isReady()) {
+            // none of the children can have members that match the filter
+            state.removeThrottledBroadcastSession(session.getId());
+            completeThrottledBroadcastSession(session, state);
+        } else {
+            requestLeafNodes(session, session.getPendingNodes(), timeoutMillis);
+        }
+        metrics.throttledBroadcastSessions(state.getThrottledBroadcastSessionCount());
+    }
+
+    private void requestLeafNodes(ThrottledBroadcastSession session, Collection<ActorRef> nodes, long timeoutMillis) {
+        ActorRef self = getSelf();
+        // the children get half of the time, so their leaf nodes arrive before this node gives up
+        LeafNodesRequest request = new LeafNodesRequest(session.getId(), timeoutMillis / 2, session.getTags());
+        for (ActorRef actorRef : nodes) {
+            logger.trace(
+                    "Node [{}]: sending leaf node request for broadcast [{}] to [{}]",
+                    self.getActorId(),
+                    request.getBroadcastId(),
+                    actorRef.getActorId());
+            actorRef.tell(request, self);
+        }
+        if (timeoutMillis > 0) {
+            getSystem().getScheduler().scheduleOnce(
+                    new ThrottledBroadcastTimeout(session.getId(), session.getAttempt()),
+                    self,
+                    timeoutMillis,
+                    TimeUnit.MILLISECONDS);
         }
     }
 
     @MessageHandler
-    public void handleLeafNodesResponse(LeafNodesResponse response, BroadcasterState state, ActorSystem actorSystem, ActorRef child) {
+    public void handleThrottledBroadcastTimeout(ThrottledBroadcastTimeout timeout, BroadcasterState state) {
+        ThrottledBroadcastSession session = state.getThrottledBroadcastSession(timeout.getBroadcastId());
+        // the session completed or was retried in the meantime
+        if (session != null && session.getAttempt() == timeout.getAttempt()) {
+            logger.warn(
+                    "Node [{}]: deadline of broadcast session [{}] expired, still waiting for {} nodes",
+                    getSelf().getActorId(),
+                    session.getId(),
+                    session.getPendingNodes().size());
+            state.removeThrottledBroadcastSession(session.getId());
+            expire(session, state, true);
+            metrics.throttledBroadcastSessions(state.getThrottledBroadcastSessionCount());
+        }
+    }
+
+    /**
+     * Handles a session that didn't receive the leaf nodes of all children in time. The session
+     * must have been removed from the state already.
+     */
+    private void expire(ThrottledBroadcastSession session, BroadcasterState state, boolean canRetry) {
+        if (session.getParent() != null) {
+            // return what we have, the policy is applied by the root
+            session.getParent().tell(new LeafNodesResponse(session.getId(), session.getLeafNodes()), getSelf());
+            return;
+        }
+        ThrottledBroadcastTimeoutPolicy policy = state.getThrottledBroadcastTimeoutPolicy();
+        if (policy == ThrottledBroadcastTimeoutPolicy.RETRY
+                && canRetry
+                && session.getAttempt() < MAX_THROTTLED_BROADCAST_RETRIES) {
+            session.nextAttempt();
+            logger.info(
+                    "Node [{}]: retrying {} nodes of broadcast session [{}], attempt {}",
+                    getSelf().getActorId(),
+                    session.getPendingNodes().size(),
+                    session.getId(),
+                    session.getAttempt());
+            state.addThrottledBroadcastSession(session);
+            requestLeafNodes(session, session.getPendingNodes(), state.getThrottledBroadcastTimeoutMillis());
+        } else if (policy == ThrottledBroadcastTimeoutPolicy.FAIL) {
+            state.incrementFailedThrottledBroadcasts();
+            metrics.throttledBroadcastFailed();
+            logger.error(
+                    "Node [{}]: dropping throttled broadcast [{}] of type [{}] from sender [{}], {} nodes didn't respond",
+                    getSelf().getActorId(),
+                    session.getId(),
+                    session.getMessage().getClass().getName(),
+                    session.getSender(),
+                    session.getPendingNodes().size());
+        } else {
+            logger.warn(
+                    "Node [{}]: delivering throttled broadcast [{}] to the {} leaf nodes collected so far",
+                    getSelf().getActorId(),
+                    session.getId(),
+                    session.getLeafNodes().size());
+            throttle(
+                    session.getMessage(),
+                    session.getSender(),
+                    session.getThrottleConfig(),
+                    session.getLeafNodes(),
+                    session.getExpiresAt(),
+                    session.getTags(),
+                    state.isDeduplicating() ? session.getId() : null,
+                    state,
+                    getSystem());
+        }
+    }
+
+    @MessageHandler
+    public void handleLeafNodesResponse(LeafNodesResponse response, BroadcasterState state, ActorRef child) {
         // the throttling session
         ThrottledBroadcastSession session = state.getThrottledBroadcastSession(response.getBroadcastId());
         ActorRef self = getSelf();
         if(session != null) {
-            session.handleLeafNodesResponse(response);
-            if(session.isReady(state.getNodes().size())) {
-                // if the parent is set, create a new response and send it up the chain
-                if(session.getParent() != null) {
-                    logger.debug(
-                            "Node [{}]: sending response of session [{}] to the parent [{}] with {} leaf nodes",
-                            self.getActorId(),
-                            session.getId(),
-                            session.getParent().getActorId(),
-                            session.getLeafNodes().size());
-                    session.getParent().tell(new LeafNodesResponse(session.getId(),session.getLeafNodes()));
-                } else {
-                    // this is the actual throttling action
-                    logger.debug(
-                            "Node [{}]: got throttling action for session [{}]",
-                            self.getActorId(),
-                            session.getId());
-                    throttle(session, state, actorSystem);
-                }
-                // and clear the session
+            session.handleLeafNodesResponse(response, child);
+            if(session.isReady()) {
+                // clear the session
                 logger.debug(
                         "Node [{}]: removing the broadcast session [{}]",
                         self.getActorId(),
                         session.getId());
                 state.removeThrottledBroadcastSession(session.getId());
+                completeThrottledBroadcastSession(session, state);
+                metrics.throttledBroadcastSessions(state.getThrottledBroadcastSessionCount());
             } else {
                 logger.debug(
-                        "Node [{}]: session [{}] is not ready yet. Number of nodes = {}, received = {}",
+                        "Node [{}]: session [{}] is not ready yet. Pending nodes = {}, received = {}",
                         self.getActorId(),
                         session.getId(),
-                        state.getNodes().size(),
+                        session.getPendingNodes().size(),
                         session.getReceivedResponses());
             }
         } else {
@@ -281,8 +695,73 @@ public final class Broadcaster extends MethodActor {
         }
     }
 
+    private void completeThrottledBroadcastSession(ThrottledBroadcastSession session, BroadcasterState state) {
+        ActorRef self = getSelf();
+        // if the parent is set, create a new response and send it up the chain
+        if(session.getParent() != null) {
+            logger.debug(
+                    "Node [{}]: sending response of session [{}] to the parent [{}] with {} leaf nodes",
+                    self.getActorId(),
+                    session.getId(),
+                    session.getParent().getActorId(),
+                    session.getLeafNodes().size());
+            session.getParent().tell(new LeafNodesResponse(session.getId(),session.getLeafNodes()), self);
+        } else {
+            // this is the actual throttling action
+            logger.debug(
+                    "Node [{}]: got throttling action for session [{}]",
+                    self.getActorId(),
+                    session.getId());
+            // the next throttled broadcasts can use these leaf nodes, unless the tree changed in the meantime
+            if (state.isLeafNodeTracking()
+                    && session.getTags() == null
+                    && session.getLeafNodeCacheVersion() == state.getLeafNodeCacheVersion()) {
+                state.setLeafNodeCache(new HashSet<>(session.getLeafNodes()));
+            }
+            throttle(
+                    session.getMessage(),
+                    session.getSender(),
+                    session.getThrottleConfig(),
+                    session.getLeafNodes(),
+                    session.getExpiresAt(),
+                    session.getTags(),
+                    state.isDeduplicating() ? session.getId() : null,
+                    state,
+                    getSystem());
+        }
+    }
+
     @MessageHandler
-    public void handleThrottledMessage(ThrottledMessage message) {
+    public void handleLeafNodesChanged(LeafNodesChanged leafNodesChanged, BroadcasterState state) {
+        if (leafNodesChanged.isInvalidated()) {
+            logger.debug("Node [{}]: invalidating the leaf node cache", getSelf().getActorId());
+            state.invalidateLeafNodeCache();
+        } else {
+            state.updateLeafNodeCache(leafNodesChanged.getRemoved(), leafNodesChanged.getAdded());
+        }
+    }
+
+    @MessageHandler
+    public void handleThrottledMessage(ThrottledMessage message, BroadcasterState state, ActorRef sender) {
+        if (message.getSentAt() != null && state.isLeafNode() && sender != null) {
+            // the feedback for the adaptive rate of the rate limiter, which measures the latency itself
+            sender.tell(new ThrottledDeliveryFeedback(message.getMessageClass(), message.getSentAt()), getSelf());
+        }
+        if (message.isExpired(System.currentTimeMillis())) {
+            logger.debug(
+                    "Node [{}]: dropping expired ThrottledMessage of class [{}]",
+                    getSelf().getActorId(),
+                    message.getMessageClass());
+            return;
+        }
+        if (!state.isLeafNode()) {
+            // this node was a leaf node when the broadcast was started, but has been split since
+            for (ActorRef actorRef : state.getMatchingNodes(message.getTags())) {
+                // the children report to the rate limiter directly
+                actorRef.tell(message, message.getSentAt() != null ? sender : getSelf());
+            }
+            return;
+        }
         try {
             logger.debug(
                     "Node [{}]: handling ThrottledMessage of class [{}] received from [{}]",
@@ -291,80 +770,334 @@ public final class Broadcaster extends MethodActor {
                     message.getSender());
 
             // build up the original message
-            Class<?> messageClass = Class.forName(message.getMessageClass());
-
-            Object originalMessage = serializationFramework.getObjectMapper().readValue(message.getMessageData(), messageClass);
+            Object originalMessage;
+            if (message.getMessagePayload() != null) {
+                originalMessage = messageCodec.deserialize(message.getMessageClass(), message.getMessagePayload());
+            } else {
+                Class<?> messageClass = messageCodec.getMessageClass(message.getMessageClass());
+                originalMessage = serializationFramework.getObjectMapper().readValue(message.getMessageData(), messageClass);
+            }
 
-            // delegate to onUnhandled
-            onUnhandled(message.getSender(), originalMessage);
+            deliver(state, originalMessage, message.getSender(), message.getTags(), message.getBroadcastId());
         } catch(Exception e) {
             logger.error("Unexpected Exception scheduling throttled message of type [{}] from sender [{}]", message.getMessageClass(), message.getSender(), e);
         }
     }
 
-    private void throttle(ThrottledBroadcastSession session, BroadcasterState state, ActorSystem actorSystem) {
-        // first calculate the delay
-        int maxPerSecond = session.getThrottleConfig().getMaxMessagesPerSecond();
+    private void throttle(
+            Object originalMessage,
+            ActorRef sender,
+            ThrottleConfig throttleConfig,
+            Collection<ActorRef> leafNodes,
+            Long expiresAt,
+            Set<String> tags,
+            String broadcastId,
+            BroadcasterState state,
+            ActorSystem actorSystem) {
+        int maxPerSecond = throttleConfig.getMaxMessagesPerSecond();
         int maxPerBatch = state.getBucketSize();
-
-        long delayInMillis = (long) ((1000.0d / maxPerSecond) * maxPerBatch);
+        if (expiresAt != null && System.currentTimeMillis() > expiresAt) {
+            logger.debug(
+                    "Node [{}]: dropping expired throttled message of type [{}]",
+                    getSelf().getActorId(),
+                    originalMessage.getClass().getName());
+            return;
+        }
 
         try {
-            // serialize the original message
-            String messageData = serializationFramework.getObjectMapper().writeValueAsString(session.getMessage());
-
-            ThrottledMessage message = new ThrottledMessage(
-                    session.getSender(),
-                    session.getMessage().getClass().getName(),
-                    messageData);
-
-            // now schedule the delays
-            long count = 0;
-            ActorRef self = getSelf();
-            for (ActorRef leafNode : session.getLeafNodes()) {
-                long messageDelay = count * delayInMillis;
-                logger.trace(
-                        "Node [{}]: scheduling throttled message of type [{}] to leaf node [{}] in {} ms",
-                        self.getActorId(),
-                        session.getMessage().getClass().getName(),
-                        leafNode.getActorId(),
-                        messageDelay);
-                actorSystem.getScheduler()
-                    .scheduleOnce(message, leafNode, messageDelay, TimeUnit.MILLISECONDS);
-                count += 1;
+            // serialize the original message, with its own serialization framework if it has one
+            ThrottledMessage message;
+            if (messageCodec.canSerialize(originalMessage)) {
+                message = new ThrottledMessage(
+                        sender,
+                        originalMessage.getClass().getName(),
+                        messageCodec.serialize(originalMessage),
+                        expiresAt,
+                        tags,
+                        broadcastId);
+            } else {
+                message = new ThrottledMessage(
+                        sender,
+                        originalMessage.getClass().getName(),
+                        serializationFramework.getObjectMapper().writeValueAsString(originalMessage),
+                        null,
+                        expiresAt,
+                        tags,
+                        broadcastId);
             }
+
+            // the rate limiter delivers it to the leaf nodes within the budget of the message class
+            logger.debug(
+                    "Node [{}]: sending throttled message of type [{}] for {} leaf nodes to the rate limiter",
+                    getSelf().getActorId(),
+                    originalMessage.getClass().getName(),
+                    leafNodes.size());
+            getRateLimiter(state, actorSystem).tell(
+                    new ThrottledBroadcast(
+                            message,
+                            maxPerSecond,
+                            maxPerBatch,
+                            new ArrayList<>(leafNodes),
+                            getPriorityConfig(originalMessage).getPriority(),
+                            throttleConfig.isAdaptive() ? throttleConfig.getMinMessagesPerSecond() : null,
+                            throttleConfig.isAdaptive() ? throttleConfig.getTargetLatencyMillis() : null),
+                    getSelf());
         } catch(Exception e) {
-            logger.error("Unexpected Exception scheduling throttled message of type [{}] from sender [{}]", session.getMessage().getClass().getName(), session.getSender(), e);
+            logger.error("Unexpected Exception scheduling throttled message of type [{}] from sender [{}]", originalMessage.getClass().getName(), sender, e);
         }
     }
 
-    @Override
-    protected void onUnhandled(ActorRef sender, Object message) {
-        BroadcasterState state = getState(BroadcasterState.class);
-        // pass the message on
+    private ActorRef getRateLimiter(BroadcasterState state, ActorSystem actorSystem) throws Exception {
+        if (state.getRateLimiter() == null) {
+            state.setRateLimiter(actorSystem.actorOf(
+                    getSelf().getActorId() + "/rateLimiter",
+                    BroadcastRateLimiter.class,
+                    new RateLimiterState(RateLimiterState.DEFAULT_TICK_MILLIS)));
+            state.setPersistenceRequested(true);
+        }
+        return state.getRateLimiter();
+    }
+
+    @MessageHandler
+    public void handleBroadcastEnvelope(BroadcastEnvelope envelope, BroadcasterState state, ActorRef sender) {
         ActorRef self = getSelf();
+        if (envelope.isExpired(System.currentTimeMillis())) {
+            logger.debug(
+                    "Node [{}]: dropping expired broadcast message of type [{}]",
+                    self.getActorId(),
+                    envelope.getMessageClass());
+            return;
+        }
         if(state.isLeafNode()) {
+            try {
+                // the message only needs to be deserialized once for all members
+                Object message = messageCodec.deserialize(envelope.getMessageClass(), envelope.getMessageData());
+                deliver(state, message, sender, envelope.getTags(), envelope.getBroadcastId());
+            } catch(Exception e) {
+                logger.error("Unexpected Exception deserializing broadcast message of type [{}] from sender [{}]", envelope.getMessageClass(), sender, e);
+            }
+        } else {
             logger.debug(
-                    "Node [{}]: leaf got message of type [{}]",
+                    "Node [{}]: broadcasting serialized message of type [{}]",
                     self.getActorId(),
-                    message.getClass().getName());
-            for (ActorRef actorRef : state.getLeaves()) {
-                logger.trace("Node [{}]: sending message of type [{}] to [{}]",
-                        self.getActorId(),
-                        message.getClass().getName(),
-                        actorRef);
-                actorRef.tell(message,sender);
+                    envelope.getMessageClass());
+            for (ActorRef actorRef : state.getMatchingNodes(envelope.getTags())) {
+                actorRef.tell(envelope, sender);
             }
+        }
+    }
+
+    @MessageHandler
+    public void handleFilteredBroadcast(FilteredBroadcast filteredBroadcast, BroadcasterState state, ActorRef sender) {
+        Set<String> tags = filteredBroadcast.getTags();
+        broadcast(state, filteredBroadcast.getMessage(), sender, tags != null && !tags.isEmpty() ? tags : null);
+    }
+
+    @MessageHandler
+    public void handleTrackedBroadcast(TrackedBroadcast trackedBroadcast, BroadcasterState state, ActorRef sender) {
+        String broadcastId = trackedBroadcast.getBroadcastId() != null
+                ? trackedBroadcast.getBroadcastId()
+                : UUID.randomUUID().toString();
+        logger.debug(
+                "Node [{}]: initiating tracked broadcast [{}] for message of type [{}]",
+                getSelf().getActorId(),
+                broadcastId,
+                trackedBroadcast.getMessageClass());
+        metrics.broadcast(state.getSize());
+        track(new TrackedDelivery(
+                broadcastId,
+                trackedBroadcast.getMessageClass(),
+                trackedBroadcast.getMessageData(),
+                null,
+                System.currentTimeMillis(),
+                state.getTrackedBroadcastTimeoutMillis()), state, sender);
+    }
+
+    @MessageHandler
+    public void handleTrackedDelivery(TrackedDelivery delivery, BroadcasterState state, ActorRef sender) {
+        track(delivery, state, sender);
+    }
+
+    private void track(TrackedDelivery delivery, BroadcasterState state, ActorRef sender) {
+        ActorRef self = getSelf();
+        long latency = System.currentTimeMillis() - delivery.getStartedAt();
+        if (state.isLeafNode()) {
+            Object message;
+            try {
+                message = messageCodec.deserialize(delivery.getMessageClass(), delivery.getMessageData());
+            } catch (Exception e) {
+                logger.error("Unexpected Exception deserializing tracked broadcast message of type [{}] from sender [{}]", delivery.getMessageClass(), sender, e);
+                // don't hold up the broadcast until it expires
+                acknowledge(delivery, 0, latency, sender);
+                return;
+            }
+            LeafDelivery leafDelivery = deliver(state, message, sender, null, delivery.getBroadcastId());
+            if (leafDelivery != null) {
+                // acknowledged once the last chunk has been sent
+                leafDelivery.setTrackedDelivery(delivery, sender, latency);
+            } else {
+                acknowledge(delivery, state.getLeaves().size(), latency, sender);
+            }
+        } else {
+            BroadcastTracker tracker = new BroadcastTracker(
+                    delivery.getBroadcastId(),
+                    delivery.getParent(),
+                    sender,
+                    delivery.getStartedAt(),
+                    latency);
+            tracker.expect(state.getBroadcastNodes());
+            state.addTrackedBroadcast(tracker);
+            TrackedDelivery childDelivery = new TrackedDelivery(
+                    delivery.getBroadcastId(),
+                    delivery.getMessageClass(),
+                    delivery.getMessageData(),
+                    self,
+                    delivery.getStartedAt(),
+                    delivery.getTimeoutMillis() / 2);
+            for (ActorRef actorRef : state.getBroadcastNodes()) {
+                actorRef.tell(childDelivery, sender);
+            }
+            if (delivery.getTimeoutMillis() > 0) {
+                getSystem().getScheduler().scheduleOnce(
+                        new TrackedBroadcastTimeout(delivery.getBroadcastId()),
+                        self,
+                        delivery.getTimeoutMillis(),
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Acknowledges a tracked delivery that was delivered to the given number of members of this
+     * leaf node
+     */
+    private void acknowledge(TrackedDelivery delivery, int members, long latency, ActorRef replyTo) {
+        List<Long> levelLatencies = Collections.singletonList(latency);
+        if (delivery.getParent() != null) {
+            delivery.getParent().tell(
+                    new BroadcastAck(delivery.getBroadcastId(), members, 1, levelLatencies, true),
+                    getSelf());
+        } else {
+            // the root is the only node of the tree
+            completeTrackedBroadcast(new BroadcastCompleted(
+                    delivery.getBroadcastId(),
+                    members,
+                    1,
+                    latency,
+                    levelLatencies,
+                    true), replyTo);
+        }
+    }
+
+    @MessageHandler
+    public void handleBroadcastAck(BroadcastAck ack, BroadcasterState state, ActorRef child) {
+        BroadcastTracker tracker = state.getTrackedBroadcast(ack.getBroadcastId());
+        if (tracker == null) {
+            logger.trace(
+                    "Node [{}]: ignoring acknowledgement of expired tracked broadcast [{}] from [{}]",
+                    getSelf().getActorId(),
+                    ack.getBroadcastId(),
+                    child.getActorId());
+            return;
+        }
+        tracker.handleAck(ack, child);
+        if (tracker.isReady()) {
+            state.removeTrackedBroadcast(tracker.getId());
+            completeTrackedBroadcast(tracker);
+        }
+    }
+
+    @MessageHandler
+    public void handleTrackedBroadcastTimeout(TrackedBroadcastTimeout timeout, BroadcasterState state) {
+        BroadcastTracker tracker = state.removeTrackedBroadcast(timeout.getBroadcastId());
+        if (tracker != null) {
+            logger.warn(
+                    "Node [{}]: tracked broadcast [{}] expired, {} nodes did not acknowledge it",
+                    getSelf().getActorId(),
+                    tracker.getId(),
+                    tracker.getPendingNodes().size());
+            tracker.expire();
+            completeTrackedBroadcast(tracker);
+        }
+    }
+
+    private void completeTrackedBroadcast(BroadcastTracker tracker) {
+        if (tracker.getParent() != null) {
+            tracker.getParent().tell(tracker.toAck(), getSelf());
+        } else {
+            BroadcastCompleted completed = tracker.toCompleted(System.currentTimeMillis());
+            logger.debug(
+                    "Node [{}]: tracked broadcast [{}] reached {} members in {} ms",
+                    getSelf().getActorId(),
+                    tracker.getId(),
+                    completed.getMembers(),
+                    completed.getDurationMillis());
+            completeTrackedBroadcast(completed, tracker.getReplyTo());
+        }
+    }
+
+    private void completeTrackedBroadcast(BroadcastCompleted completed, ActorRef replyTo) {
+        if (replyTo != null) {
+            replyTo.tell(completed, getSelf());
+        }
+        List<Long> levelLatencies = completed.getLevelLatencyMillis();
+        metrics.trackedBroadcastCompleted(
+                completed.getDurationMillis(),
+                completed.getMembers(),
+                levelLatencies.size(),
+                completed.isComplete());
+        for (int i = 0; i < levelLatencies.size(); i++) {
+            metrics.levelLatency(i, levelLatencies.get(i));
+        }
+    }
+
+    @Override
+    protected void onUnhandled(ActorRef sender, Object message) {
+        broadcast(getState(BroadcasterState.class), message, sender, null);
+    }
+
+    /**
+     * Passes the message on to the members that have all of the given tags, or all members if
+     * {@code tags} is {@code null}
+     */
+    private void broadcast(BroadcasterState state, Object message, ActorRef sender, Set<String> tags) {
+        ActorRef self = getSelf();
+        if (state.getParent() == null) {
+            metrics.broadcast(state.getSize());
+        }
+        if(state.isLeafNode()) {
+            deliver(state, message, sender, tags, null);
         } else {
             // see if we have a throttle config set
             ThrottleConfig throttleConfig = getThrottleConfig(message);
-            if (throttleConfig.isValid()) {
+            Long expiresAt = getPriorityConfig(message).expiresAt(System.currentTimeMillis());
+            if (throttleConfig.isValid() && tags == null && state.getLeafNodeCache() != null) {
+                // the leaf nodes are known already, no need to collect them
+                logger.debug(
+                        "Node [{}]: initiating throttled broadcast with {} messages/sec for message of type [{}] to {} cached leaf nodes",
+                        self.getActorId(),
+                        throttleConfig.getMaxMessagesPerSecond(),
+                        message.getClass().getName(),
+                        state.getLeafNodeCache().size());
+                throttle(
+                        message,
+                        sender,
+                        throttleConfig,
+                        state.getLeafNodeCache(),
+                        expiresAt,
+                        null,
+                        newBroadcastId(state),
+                        state,
+                        getSystem());
+            } else if (throttleConfig.isValid()) {
                 // create a new throttle session
                 ThrottledBroadcastSession throttledBroadcastSession = new ThrottledBroadcastSession(
                         message,
                         sender,
                         throttleConfig);
-                state.addThrottledBroadcastSession(throttledBroadcastSession);
+                throttledBroadcastSession.setLeafNodeCacheVersion(state.getLeafNodeCacheVersion());
+                throttledBroadcastSession.setExpiresAt(expiresAt);
+                throttledBroadcastSession.setTags(tags);
                 logger.debug(
                         "Node [{}]: initiating throttled broadcast [{}] with {} messages/sec for message of type [{}]",
                         self.getActorId(),
@@ -372,67 +1105,234 @@ public final class Broadcaster extends MethodActor {
                         throttleConfig.getMaxMessagesPerSecond(),
                         message.getClass().getName());
                 // and send a request to the nodes
-                LeafNodesRequest request = new LeafNodesRequest(throttledBroadcastSession.getId());
-                for (ActorRef actorRef : state.getNodes()) {
-                    logger.trace("Node [{}]: sending leaf node request for broadcast [{}] to [{}]",
-                            self.getActorId(),
-                            request.getBroadcastId(),
-                            actorRef.getActorId());
-                    actorRef.tell(request, getSelf());
-                }
+                startThrottledBroadcastSession(
+                        throttledBroadcastSession,
+                        state.getThrottledBroadcastTimeoutMillis(),
+                        state);
             } else {
+                // serialize the message only once for the whole tree if configured, and for messages
+                // that expire, are filtered or deduplicated so the deadline, tags and id are passed on
+                // to the leaf nodes
+                String broadcastId = newBroadcastId(state);
+                Object broadcastMessage = state.isPreSerializeBroadcasts()
+                        || expiresAt != null
+                        || tags != null
+                        || broadcastId != null
+                        ? toEnvelope(message, expiresAt, tags, broadcastId)
+                        : message;
+                if (tags != null && !(broadcastMessage instanceof BroadcastEnvelope)) {
+                    broadcastMessage = new FilteredBroadcast(message, tags);
+                }
                 // just broadcast
                 logger.debug(
                         "Node [{}]: broadcasting message of type [{}]",
                         self.getActorId(),
                         message.getClass().getName());
-                for (ActorRef actorRef : state.getNodes()) {
+                for (ActorRef actorRef : state.getMatchingNodes(tags)) {
                     logger.trace("Node [{}]: sending message of type [{}] to [{}]",
                             self.getActorId(),
                             message.getClass().getName(),
                             actorRef.getActorId());
-                    actorRef.tell(message, sender);
+                    actorRef.tell(broadcastMessage, sender);
                 }
             }
         }
     }
 
+    /**
+     * @return a new id for a broadcast received by the root, {@code null} if the tree doesn't
+     * deduplicate broadcasts or the broadcast was passed on by the parent as is
+     */
+    private String newBroadcastId(BroadcasterState state) {
+        return state.isDeduplicating() && state.getParent() == null ? UUID.randomUUID().toString() : null;
+    }
+
+    private Object toEnvelope(Object message, Long expiresAt, Set<String> tags, String broadcastId) {
+        if (messageCodec.canSerialize(message)) {
+            try {
+                return new BroadcastEnvelope(
+                        message.getClass().getName(),
+                        messageCodec.serialize(message),
+                        expiresAt,
+                        tags,
+                        broadcastId);
+            } catch(Exception e) {
+                logger.error("Unexpected Exception serializing broadcast message of type [{}], sending it as is", message.getClass().getName(), e);
+            }
+        }
+        return message;
+    }
+
+    /**
+     * @param broadcastId the id of the broadcast, {@code null} if it doesn't have one
+     * @return the delivery if it is delivered in chunks and has not been completed yet, otherwise
+     * {@code null}
+     */
+    private LeafDelivery deliver(BroadcasterState state, Object message, ActorRef sender, Set<String> tags, String broadcastId) {
+        ActorRef self = getSelf();
+        logger.debug(
+                "Node [{}]: leaf got message of type [{}]",
+                self.getActorId(),
+                message.getClass().getName());
+        if (broadcastId != null
+                && state.isDeduplicating()
+                && state.isDuplicateBroadcast(broadcastId, System.currentTimeMillis())) {
+            logger.debug(
+                    "Node [{}]: dropping duplicate broadcast [{}] of type [{}]",
+                    self.getActorId(),
+                    broadcastId,
+                    message.getClass().getName());
+            metrics.duplicateBroadcastDropped();
+            return null;
+        }
+        Set<ActorRef> members = state.getMatchingLeaves(tags);
+        // undeliverable messages are returned to the sender, broadcasts without one can use the detector
+        ActorRef deliverySender = sender == null && state.isEvictingDeadMembers()
+                ? getDeadMemberDetector(state)
+                : sender;
+        int chunkSize = state.getLeafDeliveryChunkSize();
+        if (chunkSize > 0 && (members.size() > chunkSize || !state.getPendingLeafDeliveries().isEmpty())) {
+            // deliver in chunks, after the broadcasts that are still being delivered
+            boolean idle = state.getPendingLeafDeliveries().isEmpty();
+            LeafDelivery delivery = new LeafDelivery(message, deliverySender, members);
+            state.getPendingLeafDeliveries().add(delivery);
+            if (idle) {
+                deliverChunk(state);
+            }
+            metrics.leafDelivery(members.size());
+            return delivery.hasNext() ? delivery : null;
+        } else {
+            for (ActorRef actorRef : members) {
+                logger.trace("Node [{}]: sending message of type [{}] to [{}]",
+                        self.getActorId(),
+                        message.getClass().getName(),
+                        actorRef);
+                actorRef.tell(message,deliverySender);
+            }
+        }
+        metrics.leafDelivery(members.size());
+        return null;
+    }
+
+    /**
+     * @return the {@link DeadMemberDetector} of this leaf node, or {@code null} if it can't be
+     * created, in which case the broadcasts are delivered without a sender
+     */
+    private ActorRef getDeadMemberDetector(BroadcasterState state) {
+        if (state.getDeadMemberDetector() == null) {
+            try {
+                state.setDeadMemberDetector(getSystem().tempActorOf(
+                        DeadMemberDetector.class,
+                        new DeadMemberDetector.State(getSelf())));
+            } catch (Exception e) {
+                logger.error("Node [{}]: unexpected Exception creating dead member detector", getSelf().getActorId(), e);
+            }
+        }
+        return state.getDeadMemberDetector();
+    }
+
+    private void stopDeadMemberDetector(BroadcasterState state) throws Exception {
+        if (state.getDeadMemberDetector() != null) {
+            getSystem().stop(state.getDeadMemberDetector());
+            state.setDeadMemberDetector(null);
+        }
+    }
+
+    /**
+     * Evicts the members that can't be delivered to anymore, see
+     * {@link BroadcasterState#setDeadMemberEvictionThreshold(int)}
+     */
+    @MessageHandler
+    public void handleMemberUndeliverable(MemberUndeliverable undeliverable, BroadcasterState state) {
+        ActorRef receiver = undeliverable.getMember();
+        if (!state.isLeafNode() || !state.isEvictingDeadMembers() || !state.getLeaves().contains(receiver)) {
+            return;
+        }
+        if (state.incrementUndeliverableCount(receiver)) {
+            logger.info(
+                    "Node [{}]: evicting member [{}] after {} failed deliveries",
+                    getSelf().getActorId(),
+                    receiver,
+                    state.getDeadMemberEvictionThreshold());
+            Set<ActorRef> evicted = Collections.singleton(receiver);
+            state.getLeaves().remove(receiver);
+            state.removeTags(evicted);
+            state.removeWeights(evicted);
+            state.resetUndeliverableCounts(evicted);
+            state.incrementEvictedMembers();
+            metrics.membersEvicted(1);
+            scheduleSizeReport(state);
+            if (state.isCheckpointing()) {
+                scheduleCheckpoint(state);
+            } else {
+                state.setPersistenceRequested(true);
+            }
+        }
+    }
+
+    @MessageHandler
+    public void handleContinueLeafDelivery(ContinueLeafDelivery continueLeafDelivery, BroadcasterState state) {
+        deliverChunk(state);
+    }
+
+    private void deliverChunk(BroadcasterState state) {
+        ActorRef self = getSelf();
+        Deque<LeafDelivery> pending = state.getPendingLeafDeliveries();
+        // the chunking may have been disabled in the meantime
+        int remaining = state.getLeafDeliveryChunkSize() > 0 ? state.getLeafDeliveryChunkSize() : Integer.MAX_VALUE;
+        LeafDelivery delivery;
+        while ((delivery = pending.peek()) != null && remaining > 0) {
+            while (delivery.hasNext() && remaining-- > 0) {
+                ActorRef actorRef = delivery.next();
+                logger.trace("Node [{}]: sending message of type [{}] to [{}]",
+                        self.getActorId(),
+                        delivery.getMessage().getClass().getName(),
+                        actorRef);
+                actorRef.tell(delivery.getMessage(), delivery.getSender());
+            }
+            if (!delivery.hasNext()) {
+                pending.poll();
+                if (delivery.getTrackedDelivery() != null) {
+                    acknowledge(
+                            delivery.getTrackedDelivery(),
+                            delivery.getSize(),
+                            delivery.getTrackedLatency(),
+                            delivery.getTrackedReplyTo());
+                }
+            }
+        }
+        if (!pending.isEmpty()) {
+            // let the other actors of this shard go first
+            self.tell(new ContinueLeafDelivery(), self);
+        }
+    }
+
     private Multimap<ActorRef, ActorRef> mapToBucket(Set<ActorRef> members, BroadcasterState state) {
         Multimap<ActorRef,ActorRef> sendMap = ArrayListMultimap.create();
+        MemberHasher hasher = getMemberHasher(state);
+        BucketPlacement placement = state.getPlacement();
+        List<ActorRef> nodes = state.getNodes();
+        int numberOfShards = state.isShardAffinity() ? getSystem().getConfiguration().getNumberOfShards() : 0;
         for (ActorRef actorRef : members) {
-            int idx = Math.abs(Hashing.murmur3_32().hashString(format("%s:%s",getSelf().getActorId(),actorRef), StandardCharsets.UTF_8).asInt()) % state.getBucketsPerNode();
-            sendMap.put(state.getNodes().get(idx), actorRef);
+            int idx = state.shardBucket(actorRef, nodes.size(), numberOfShards);
+            if (idx < 0) {
+                idx = placement.bucket(hasher.hash(actorRef), nodes.size());
+            }
+            sendMap.put(nodes.get(idx), actorRef);
         }
         return sendMap;
     }
 
-    private Multimap<String, ActorRef> mapToBucket(Set<ActorRef> members, List<String> nodeIds) {
-        Multimap<String,ActorRef> sendMap = ArrayListMultimap.create();
-        for (ActorRef actorRef : members) {
-            int idx = Math.abs(Hashing.murmur3_32().hashString(format("%s:%s", getSelf().getActorId(), actorRef), StandardCharsets.UTF_8).asInt()) % nodeIds.size();
-            sendMap.put(nodeIds.get(idx), actorRef);
+    private MemberHasher getMemberHasher(BroadcasterState state) {
+        MemberHasher hasher = state.getMemberHasher();
+        if (hasher == null) {
+            hasher = MemberHasher.forNode(getSelf().getActorId());
+            state.setMemberHasher(hasher);
         }
-        return sendMap;
+        return hasher;
     }
 
     private void rehash(BroadcasterState state) throws Exception {
-        List<String> nodeIds = new LinkedList<>();
-        // create nodes
-        for (int i = 0; i < state.getBucketsPerNode(); i++) {
-            nodeIds.add(format("%s/%d",getSelf().getActorId(),i));
-        }
-        // map to buckets
-        Multimap<String,ActorRef> sendMap = mapToBucket(state.getLeaves(),nodeIds);
-        ActorSystem actorSystem = getSystem();
-        // now create the new leave nodes
-        for (String actorId : nodeIds) {
-            ActorRef actorRef = actorSystem.actorOf(actorId,Broadcaster.class,new BroadcasterState(state.getBucketsPerNode(),state.getBucketSize(),sendMap.get(actorId)));
-            state.getNodes().add(actorRef);
-        }
-        // store size
-        state.incrementSize(state.getLeaves().size());
-        // clear leaves
-        state.getLeaves().clear();
-        state.setLeafNode(false);
+        BroadcasterTree.split(getSystem(), getSelf(), state, state.getLeaves(), state.getMemberTags(), state.getMemberWeights());
     }
 }
@@ -0,0 +1,103 @@
+package org.elasticsoftware.elasticactors.broadcast;
+
+/**
+ * Receives the metrics of the {@link Broadcaster} trees. Register an implementation as a bean to
+ * collect them, for instance by recording them in Micrometer meters; without one the metrics are
+ * discarded. The methods are called on the threads of the actors for every broadcast, so they
+ * should be cheap and must not block. The arguments are primitives, so reporting a metric doesn't
+ * allocate.
+ */
+public interface BroadcasterMetrics {
+
+    BroadcasterMetrics NOOP = new BroadcasterMetrics() {
+    };
+
+    /**
+     * Called by the root for every broadcast it receives
+     *
+     * @param members the size of the tree, see {@link org.elasticsoftware.elasticactors.broadcast.messages.SizeRequest}
+     */
+    default void broadcast(int members) {
+    }
+
+    /**
+     * Called by every leaf node that delivers a broadcast to its members
+     *
+     * @param members the number of members the message was delivered to
+     */
+    default void leafDelivery(int members) {
+    }
+
+    /**
+     * Called by the root when a {@link org.elasticsoftware.elasticactors.broadcast.messages.TrackedBroadcast}
+     * completes
+     *
+     * @param depth the number of levels of the tree the broadcast went through, including the root
+     */
+    default void trackedBroadcastCompleted(long durationMillis, int members, int depth, boolean complete) {
+    }
+
+    /**
+     * Called by the root when a {@link org.elasticsoftware.elasticactors.broadcast.messages.TrackedBroadcast}
+     * completes, for every level of the tree
+     *
+     * @param level         the level of the tree, starting with zero for the root
+     * @param latencyMillis the highest latency at which the broadcast reached the nodes of the level
+     */
+    default void levelLatency(int level, long latencyMillis) {
+    }
+
+    /**
+     * Called whenever a throttled broadcast session is started or ends
+     *
+     * @param active the number of sessions of the node
+     */
+    default void throttledBroadcastSessions(int active) {
+    }
+
+    /**
+     * Called by the root when it drops a throttled broadcast, see
+     * {@link org.elasticsoftware.elasticactors.broadcast.state.ThrottledBroadcastTimeoutPolicy#FAIL}
+     */
+    default void throttledBroadcastFailed() {
+    }
+
+    /**
+     * Called by the {@link BroadcastRateLimiter} of a tree after every round of deliveries
+     *
+     * @param pendingDeliveries the number of leaf nodes that are still waiting for throttled messages
+     */
+    default void throttleBacklog(int pendingDeliveries) {
+    }
+
+    /**
+     * Called by a leaf node that removed members which could not be delivered to anymore, see
+     * {@link org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState#setDeadMemberEvictionThreshold(int)}
+     */
+    default void membersEvicted(int members) {
+    }
+
+    /**
+     * Called by a leaf node that dropped a broadcast it delivered before, see
+     * {@link org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState#setDeduplicationWindowMillis(long)}
+     */
+    default void duplicateBroadcastDropped() {
+    }
+
+    /**
+     * Called by an interior node whenever it forwards membership changes to its children
+     *
+     * @param messages the number of {@link org.elasticsoftware.elasticactors.broadcast.messages.Add}
+     *                 and {@link org.elasticsoftware.elasticactors.broadcast.messages.Remove} messages
+     *                 it sent, which coalescing keeps down (see
+     *                 {@link org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState#setCoalesceWindowMillis(long)})
+     */
+    default void membershipChangesForwarded(int messages) {
+    }
+
+    /**
+     * Called by the node that rebuilt its subtree after a rehash, merge or resize completes
+     */
+    default void rehashCompleted(long durationMillis) {
+    }
+}
@@ -0,0 +1,136 @@
+package org.elasticsoftware.elasticactors.broadcast;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.ActorSystem;
+import org.elasticsoftware.elasticactors.broadcast.messages.LeafNodesChanged;
+import org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState;
+import org.elasticsoftware.elasticactors.broadcast.state.BucketPlacement;
+import org.elasticsoftware.elasticactors.broadcast.state.MemberHasher;
+import org.elasticsoftware.elasticactors.broadcast.state.MemberTags;
+import org.elasticsoftware.elasticactors.broadcast.state.MemberWeights;
+import org.elasticsoftware.elasticactors.broadcast.state.PendingMembers;
+import org.elasticsoftware.elasticactors.broadcast.state.ShardAffinity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds the children of a {@link Broadcaster} node
+ */
+public final class BroadcasterTree {
+
+    private BroadcasterTree() {
+    }
+
+    /**
+     * Forwards the pending membership changes of the node to its children (see
+     * {@link BroadcasterState#setCoalesceWindowMillis(long)})
+     *
+     * @return the number of messages sent to the children
+     */
+    public static int flushPendingMembers(BroadcasterState state, ActorRef node) {
+        int messages = 0;
+        for (PendingMembers pending : state.drainPendingMembers()) {
+            for (Object message : pending.toMessages()) {
+                pending.getNode().tell(message, node);
+                messages++;
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Distributes the given members over {@code bucketsPerNode} new children of the node, which
+     * split further when their members weigh more than {@code bucketSize}, and turns the node
+     * into an interior node with these children.
+     *
+     * @param memberTags the tags of the members, see {@link MemberTags}
+     * @param memberWeights the weights of the members, see {@link MemberWeights}
+     * @return the children the node had before, which are not stopped by this method
+     */
+    public static List<ActorRef> split(
+            ActorSystem actorSystem,
+            ActorRef node,
+            BroadcasterState state,
+            Collection<ActorRef> members,
+            Map<String, Set<ActorRef>> memberTags,
+            Map<Integer, Set<ActorRef>> memberWeights) throws Exception {
+        int numberOfShards = actorSystem.getConfiguration().getNumberOfShards();
+        // a node that maps its members by shard passes the next digit of the shard on to its children
+        boolean byShard = state.isShardAffinity() && state.getShardModulus() < numberOfShards;
+        int childShardModulus = byShard ? state.getShardModulus() * state.getBucketsPerNode() : state.getShardModulus();
+        List<String> nodeIds = new ArrayList<>(state.getBucketsPerNode());
+        List<Integer> childShardResidues = new ArrayList<>(state.getBucketsPerNode());
+        for (int i = 0; i < state.getBucketsPerNode(); i++) {
+            String actorId = state.childId(node.getActorId(), i);
+            int childShardResidue = byShard ? state.getShardResidue() + i * state.getShardModulus() : state.getShardResidue();
+            if (state.isShardAffinity() && childShardModulus >= numberOfShards && childShardResidue < numberOfShards) {
+                // all members of the child live on the same shard, so the child should as well
+                actorId = ShardAffinity.actorIdOnShard(actorId, childShardResidue, numberOfShards);
+            }
+            nodeIds.add(actorId);
+            childShardResidues.add(childShardResidue);
+        }
+        // map to buckets
+        Multimap<String, ActorRef> sendMap = ArrayListMultimap.create();
+        MemberHasher hasher = MemberHasher.forNode(node.getActorId());
+        BucketPlacement placement = state.getPlacement();
+        for (ActorRef member : members) {
+            int idx = state.shardBucket(member, nodeIds.size(), numberOfShards);
+            if (idx < 0) {
+                idx = placement.bucket(hasher.hash(member), nodeIds.size());
+            }
+            sendMap.put(nodeIds.get(idx), member);
+        }
+        List<ActorRef> previousNodes = new ArrayList<>(state.getNodes());
+        List<ActorRef> newNodes = new ArrayList<>(nodeIds.size());
+        Map<String, Integer> childSizes = new HashMap<>();
+        Map<String, Integer> childWeights = new HashMap<>();
+        Map<String, Set<String>> childTags = new HashMap<>();
+        // now create the new nodes
+        for (int i = 0; i < nodeIds.size(); i++) {
+            String actorId = nodeIds.get(i);
+            Collection<ActorRef> childMembers = sendMap.get(actorId);
+            Map<String, Set<ActorRef>> childMemberTags = MemberTags.subIndex(memberTags, childMembers);
+            Map<Integer, Set<ActorRef>> childMemberWeights = MemberWeights.subIndex(memberWeights, childMembers);
+            BroadcasterState childState = state.newChildState(node, childMembers, childMemberTags, childMemberWeights);
+            if (state.isShardAffinity()) {
+                childState.setShardGroup(childShardModulus, childShardResidues.get(i));
+            }
+            newNodes.add(actorSystem.actorOf(actorId, Broadcaster.class, childState));
+            childSizes.put(actorId, childMembers.size());
+            childWeights.put(actorId, MemberWeights.total(childMembers.size(), childMemberWeights));
+            if (!childMemberTags.isEmpty()) {
+                childTags.put(actorId, childMemberTags.keySet());
+            }
+        }
+        // switch over to the new children, they report their size from now on
+        state.getNodes().clear();
+        state.getNodes().addAll(newNodes);
+        state.initChildSizes(childSizes, childWeights);
+        state.getChildTags().clear();
+        for (Map.Entry<String, Set<String>> entry : childTags.entrySet()) {
+            state.addChildTags(entry.getKey(), entry.getValue());
+        }
+        state.getLeaves().clear();
+        state.getMemberTags().clear();
+        state.getMemberWeights().clear();
+        state.setLeafNode(false);
+        if (state.getRoot() != null) {
+            // let the root know that this leaf node has been replaced by its children
+            state.getRoot().tell(new LeafNodesChanged(Collections.singletonList(node), newNodes), node);
+        } else if (state.getParent() == null) {
+            // this is the root, all nodes below it report their changes from now on
+            state.setLeafNodeTracking(true);
+            state.invalidateLeafNodeCache();
+        }
+        return previousNodes;
+    }
+}
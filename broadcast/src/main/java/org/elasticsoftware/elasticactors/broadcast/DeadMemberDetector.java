@@ -0,0 +1,65 @@
+package org.elasticsoftware.elasticactors.broadcast;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.ActorState;
+import org.elasticsoftware.elasticactors.TempActor;
+import org.elasticsoftware.elasticactors.UntypedActor;
+import org.elasticsoftware.elasticactors.broadcast.messages.MemberUndeliverable;
+import org.elasticsoftware.elasticactors.serialization.NoopSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.SerializationFramework;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The sender of the broadcasts a leaf node delivers without a sender of their own, when it evicts
+ * dead members (see {@link org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState#setDeadMemberEvictionThreshold(int)}).
+ * Undeliverable messages are returned to their sender, so this reports them to the leaf node.
+ * Replies of the members are dropped, rather than broadcast again by the leaf node.
+ */
+@TempActor(stateClass = DeadMemberDetector.State.class)
+public final class DeadMemberDetector extends UntypedActor {
+
+    private final static Logger staticLogger = LoggerFactory.getLogger(DeadMemberDetector.class);
+
+    @Override
+    public void onReceive(ActorRef sender, Object message) throws Exception {
+        logger.trace(
+                "Node [{}]: dropping message of type [{}] from member [{}]",
+                getState(State.class).getLeafNode().getActorId(),
+                message.getClass().getName(),
+                sender);
+    }
+
+    @Override
+    public void onUndeliverable(ActorRef receiver, Object message) throws Exception {
+        getState(State.class).getLeafNode().tell(new MemberUndeliverable(receiver), getSelf());
+    }
+
+    @Override
+    protected Logger initLogger() {
+        return staticLogger;
+    }
+
+    public static final class State implements ActorState<State> {
+
+        private final ActorRef leafNode;
+
+        State(ActorRef leafNode) {
+            this.leafNode = leafNode;
+        }
+
+        ActorRef getLeafNode() {
+            return leafNode;
+        }
+
+        @Override
+        public State getBody() {
+            return this;
+        }
+
+        @Override
+        public Class<? extends SerializationFramework> getSerializationFramework() {
+            return NoopSerializationFramework.class;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.elasticsoftware.elasticactors.broadcast;
+
+import org.elasticsoftware.elasticactors.serialization.Message;
+import org.elasticsoftware.elasticactors.serialization.MessageDeserializer;
+import org.elasticsoftware.elasticactors.serialization.MessageSerializer;
+import org.elasticsoftware.elasticactors.serialization.SerializationFramework;
+import org.springframework.beans.factory.BeanFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serializes broadcast messages with the serialization framework declared in their
+ * {@link Message} annotation, caching the class and framework lookups.
+ */
+final class MessageCodec {
+
+    private final BeanFactory beanFactory;
+    private final Map<String, Class<?>> messageClasses = new ConcurrentHashMap<>();
+    private final Map<Class<?>, SerializationFramework> serializationFrameworks = new ConcurrentHashMap<>();
+
+    MessageCodec(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    /**
+     * @return true if the message declares a serialization framework
+     */
+    boolean canSerialize(Object message) {
+        return message.getClass().isAnnotationPresent(Message.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    byte[] serialize(Object message) throws IOException {
+        Class<Object> messageClass = (Class<Object>) message.getClass();
+        MessageSerializer<Object> serializer = getSerializationFramework(messageClass).getSerializer(messageClass);
+        ByteBuffer buffer = serializer.serialize(message);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    Object deserialize(String messageClassName, byte[] messageData) throws IOException, ClassNotFoundException {
+        Class<?> messageClass = getMessageClass(messageClassName);
+        MessageDeserializer<?> deserializer = getSerializationFramework(messageClass).getDeserializer(messageClass);
+        return deserializer.deserialize(ByteBuffer.wrap(messageData));
+    }
+
+    Class<?> getMessageClass(String messageClassName) throws ClassNotFoundException {
+        Class<?> messageClass = messageClasses.get(messageClassName);
+        if (messageClass == null) {
+            messageClass = Class.forName(messageClassName);
+            messageClasses.put(messageClassName, messageClass);
+        }
+        return messageClass;
+    }
+
+    private SerializationFramework getSerializationFramework(Class<?> messageClass) {
+        return serializationFrameworks.computeIfAbsent(
+                messageClass,
+                c -> beanFactory.getBean(c.getAnnotation(Message.class).serializationFramework()));
+    }
+}
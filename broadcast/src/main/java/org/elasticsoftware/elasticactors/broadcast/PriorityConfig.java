@@ -0,0 +1,37 @@
+package org.elasticsoftware.elasticactors.broadcast;
+
+import org.elasticsoftware.elasticactors.broadcast.messages.BroadcastPriority;
+import org.elasticsoftware.elasticactors.broadcast.messages.Priority;
+
+/**
+ * The {@link Priority} of a message class, with the defaults for classes without the annotation
+ */
+final class PriorityConfig {
+
+    private static final PriorityConfig DEFAULT = new PriorityConfig(BroadcastPriority.NORMAL, 0L);
+
+    private final BroadcastPriority priority;
+    private final long timeToLiveMillis;
+
+    private PriorityConfig(BroadcastPriority priority, long timeToLiveMillis) {
+        this.priority = priority;
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    static PriorityConfig forClass(Class<?> messageClass) {
+        Priority priority = messageClass.getAnnotation(Priority.class);
+        return priority != null ? new PriorityConfig(priority.value(), priority.timeToLiveMillis()) : DEFAULT;
+    }
+
+    BroadcastPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return the time at which a broadcast of the message that is sent now expires, or
+     * {@code null} if it doesn't expire
+     */
+    Long expiresAt(long now) {
+        return timeToLiveMillis > 0 ? now + timeToLiveMillis : null;
+    }
+}
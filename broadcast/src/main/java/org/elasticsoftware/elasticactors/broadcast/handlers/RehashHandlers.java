@@ -1,23 +1,55 @@
 package org.elasticsoftware.elasticactors.broadcast.handlers;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
 import org.elasticsoftware.elasticactors.ActorRef;
 import org.elasticsoftware.elasticactors.MessageHandler;
 import org.elasticsoftware.elasticactors.MethodActor;
+import org.elasticsoftware.elasticactors.broadcast.Broadcaster;
+import org.elasticsoftware.elasticactors.broadcast.BroadcasterMetrics;
+import org.elasticsoftware.elasticactors.broadcast.BroadcasterTree;
 import org.elasticsoftware.elasticactors.broadcast.messages.Add;
+import org.elasticsoftware.elasticactors.broadcast.messages.LeafNodesChanged;
+import org.elasticsoftware.elasticactors.broadcast.messages.Remove;
+import org.elasticsoftware.elasticactors.broadcast.messages.ReportSize;
 import org.elasticsoftware.elasticactors.broadcast.messages.rehash.InternalRehashRequest;
+import org.elasticsoftware.elasticactors.broadcast.messages.rehash.MergeRequest;
+import org.elasticsoftware.elasticactors.broadcast.messages.rehash.MigrateRequest;
+import org.elasticsoftware.elasticactors.broadcast.messages.rehash.MigrateResponse;
 import org.elasticsoftware.elasticactors.broadcast.messages.rehash.RehashComplete;
 import org.elasticsoftware.elasticactors.broadcast.messages.rehash.RehashRequest;
 import org.elasticsoftware.elasticactors.broadcast.messages.rehash.RehashResponse;
+import org.elasticsoftware.elasticactors.broadcast.messages.rehash.ResizeRequest;
 import org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState;
+import org.elasticsoftware.elasticactors.broadcast.state.BucketPlacement;
+import org.elasticsoftware.elasticactors.broadcast.state.MemberHasher;
+import org.elasticsoftware.elasticactors.broadcast.state.MemberTags;
+import org.elasticsoftware.elasticactors.broadcast.state.MemberWeights;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+@Configurable
 public final class RehashHandlers extends MethodActor {
 
+    private BroadcasterMetrics metrics = BroadcasterMetrics.NOOP;
+
+    @Autowired(required = false)
+    public void setMetrics(BroadcasterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     @MessageHandler
     public void handle(RehashRequest rehashRequest, BroadcasterState state, ActorRef sender) {
-        if (state.getCurrentlyRehashing()) {
+        if (state.getCurrentlyRehashing() || state.isCurrentlyMigrating()) {
             logger.warn("Broadcaster actor <{}> received rehash request, but is already in the process of rehashing. Ignoring.", getSelf().getActorId());
             return;
         }
@@ -26,10 +58,16 @@ public final class RehashHandlers extends MethodActor {
             // if the root is a leaf node, there is nothing to do, as the rehash only works if the root has children nodes
             logger.warn("Broadcaster actor <{}> received rehash request, but it only contains a leaf node. Ignoring.", getSelf().getActorId());
         } else {
+            // make sure the children know about all members before collecting them
+            metrics.membershipChangesForwarded(BroadcasterTree.flushPendingMembers(state, getSelf()));
+
             state.setCurrentlyRehashing(true);
             state.setRehashRoot(true);
+            state.setRehashStartedAt(System.currentTimeMillis());
             state.setRehashReplyTo(sender);
             state.setRehashMembers(new HashSet<>());
+            state.setRehashMemberTags(new HashMap<>());
+            state.setRehashMemberWeights(new HashMap<>());
             state.setExpectedRehashingReplies(state.getNodes().size());
             state.setReceivedRehashingReplies(0);
 
@@ -39,19 +77,57 @@ public final class RehashHandlers extends MethodActor {
         }
     }
 
+    @MessageHandler
+    public void handle(MergeRequest mergeRequest, BroadcasterState state) {
+        if (!state.shouldMerge()) {
+            // the subtree has grown again or is being rehashed already
+            return;
+        }
+
+        logger.info("Merging the {} members of broadcaster <{}> into a leaf node", state.getSize(), getSelf().getActorId());
+
+        // make sure the children know about all members before collecting them
+        metrics.membershipChangesForwarded(BroadcasterTree.flushPendingMembers(state, getSelf()));
+
+        // add and remove requests are buffered until the members have been collected
+        state.setCurrentlyRehashing(true);
+        state.setRehashRoot(true);
+        state.setRehashStartedAt(System.currentTimeMillis());
+        state.setMerging(true);
+        state.setRehashMembers(new HashSet<>());
+        state.setRehashMemberTags(new HashMap<>());
+        state.setRehashMemberWeights(new HashMap<>());
+        state.setExpectedRehashingReplies(state.getNodes().size());
+        state.setReceivedRehashingReplies(0);
+
+        for (ActorRef actorRef : state.getNodes()) {
+            actorRef.tell(new InternalRehashRequest(), getSelf());
+        }
+    }
+
     @MessageHandler
     public void handle(InternalRehashRequest rehashRequest, BroadcasterState state, ActorRef sender) {
+        if (state.isMerging() && state.getMergeReplyTo() == null) {
+            // the parent is collecting the members as well, it gets them once the merge is done
+            state.setMergeReplyTo(sender);
+            return;
+        }
+
         if (state.getCurrentlyRehashing()) {
             logger.warn("Broadcaster actor <{}> received rehash request, but it only contains a leaf node. Ignoring.", getSelf().getActorId());
             return;
         }
 
         if (state.isLeafNode()) {
-            sender.tell(new RehashResponse(state.getLeaves()));
+            sender.tell(new RehashResponse(state.getLeaves(), state.getMemberTags(), state.getMemberWeights()));
         } else {
+            metrics.membershipChangesForwarded(BroadcasterTree.flushPendingMembers(state, getSelf()));
+
             state.setCurrentlyRehashing(true);
             state.setRehashReplyTo(sender);
             state.setRehashMembers(new HashSet<>());
+            state.setRehashMemberTags(new HashMap<>());
+            state.setRehashMemberWeights(new HashMap<>());
             state.setExpectedRehashingReplies(state.getNodes().size());
             state.setReceivedRehashingReplies(0);
 
@@ -65,43 +141,327 @@ public final class RehashHandlers extends MethodActor {
     public void handle(RehashResponse rehashResponse, BroadcasterState state) throws Exception {
         state.incrementReceivedRehashingReplies();
         state.getRehashMembers().addAll(rehashResponse.getMembers());
+        MemberTags.merge(state.getRehashMemberTags(), rehashResponse.getMemberTags());
+        MemberWeights.merge(state.getRehashMemberWeights(), rehashResponse.getMemberWeights());
 
         if (state.getReceivedRehashingReplies().equals(state.getExpectedRehashingReplies())) {
-            if (state.getRehashRoot()) {
-                // this node is the root of the broadcaster, once all replies are received
-                // the tree is deleted & recreated
-                for (ActorRef actorRef : state.getNodes()) {
-                    getSystem().stop(actorRef);
-                }
+            if (state.isMerging()) {
+                completeMerge(state);
+            } else if (state.getRehashRoot()) {
+                // this node is the root of the broadcaster, once all replies are received the new
+                // tree is built next to the old one, which kept serving broadcasts until now
+                Set<ActorRef> members = state.getRehashMembers();
+                Map<String, Set<ActorRef>> memberTags = state.getRehashMemberTags();
+                Map<Integer, Set<ActorRef>> memberWeights = state.getRehashMemberWeights();
+                applyReceivedDuringRehashing(state, members, memberTags, memberWeights);
 
-                state.setLeafNode(true);
-                state.getLeaves().clear();
-                state.getNodes().clear();
+                state.nextGeneration();
+                List<ActorRef> previousNodes;
+                if (members.size() > 1 && MemberWeights.total(members.size(), memberWeights) > state.getBucketSize()) {
+                    previousNodes = BroadcasterTree.split(getSystem(), getSelf(), state, members, memberTags, memberWeights);
+                } else {
+                    previousNodes = new ArrayList<>(state.getNodes());
+                    state.setLeafNode(true);
+                    state.getNodes().clear();
+                    state.clearChildSizes();
+                    state.getChildTags().clear();
+                    state.getLeaves().addAll(members);
+                    MemberTags.merge(state.getMemberTags(), memberTags);
+                    MemberWeights.merge(state.getMemberWeights(), memberWeights);
+                    state.invalidateLeafNodeCache();
+                }
+                // the new tree is not persisted by any of the messages that built it
+                state.setPersistenceRequested(true);
 
-                logger.info("Rehashing of broadcaster <{}> is now completed, re-adding all members to the tree", getSelf().getActorId());
+                // broadcasts are sent to the new tree from now on, so the old one can be removed
+                for (ActorRef actorRef : previousNodes) {
+                    getSystem().stop(actorRef);
+                }
 
-                getSelf().tell(new Add(state.getRehashMembers()));
+                logger.info("Rehashing of broadcaster <{}> is now completed, rebuilt the tree with {} members", getSelf().getActorId(), members.size());
+                metrics.rehashCompleted(System.currentTimeMillis() - state.getRehashStartedAt());
 
-                // replay the messages received during the rehashing process (both add and remove)
-                for (Object message : state.getReceivedDuringRehashing()) {
-                    getSelf().tell(message);
-                }
+                state.setRehashRoot(false);
 
                 if (state.getRehashReplyTo() != null) {
                     state.getRehashReplyTo().tell(new RehashComplete());
                 }
             } else {
                 // this node is not the root of the broadcaster, send all it's children further up the tree
-                state.getRehashReplyTo().tell(new RehashResponse(state.getRehashMembers()));
+                state.getRehashReplyTo().tell(new RehashResponse(
+                        state.getRehashMembers(),
+                        state.getRehashMemberTags(),
+                        state.getRehashMemberWeights()));
             }
 
             // this node has received all replies it was waiting for, time to mark the state as such
             state.setCurrentlyRehashing(false);
             state.setRehashReplyTo(null);
             state.setRehashMembers(new HashSet<>());
+            state.setRehashMemberTags(new HashMap<>());
+            state.setRehashMemberWeights(new HashMap<>());
             state.setExpectedRehashingReplies(0);
             state.setReceivedRehashingReplies(0);
             state.setReceivedDuringRehashing(new ArrayList<>());
         }
     }
+
+    private void completeMerge(BroadcasterState state) {
+        for (ActorRef actorRef : state.getNodes()) {
+            getSystem().stop(actorRef);
+        }
+
+        // the members are added directly, so no broadcast can reach this node while it is empty
+        state.setLeafNode(true);
+        state.getNodes().clear();
+        state.clearChildSizes();
+        state.getChildTags().clear();
+        state.nextGeneration();
+        state.getLeaves().addAll(state.getRehashMembers());
+        MemberTags.merge(state.getMemberTags(), state.getRehashMemberTags());
+        MemberWeights.merge(state.getMemberWeights(), state.getRehashMemberWeights());
+        applyReceivedDuringRehashing(state, state.getLeaves(), state.getMemberTags(), state.getMemberWeights());
+        state.setPersistenceRequested(true);
+
+        // the leaf nodes of the subtree are not known here, so the root needs to collect them again
+        if (state.getRoot() != null) {
+            state.getRoot().tell(LeafNodesChanged.invalidated(), getSelf());
+        } else {
+            state.invalidateLeafNodeCache();
+        }
+
+        logger.info("Merging of broadcaster <{}> is now completed, it contains {} members", getSelf().getActorId(), state.getLeaves().size());
+        metrics.rehashCompleted(System.currentTimeMillis() - state.getRehashStartedAt());
+
+        state.setMerging(false);
+        state.setRehashRoot(false);
+
+        if (state.getMergeReplyTo() != null) {
+            state.getMergeReplyTo().tell(
+                    new RehashResponse(state.getLeaves(), state.getMemberTags(), state.getMemberWeights()),
+                    getSelf());
+            state.setMergeReplyTo(null);
+        }
+
+        if (state.getDeferredMigrateRequest() != null) {
+            handle(state.getDeferredMigrateRequest(), state, state.getDeferredMigrateSender());
+            state.setDeferredMigrateRequest(null, null);
+        }
+
+        if (!state.isSizeReportScheduled()) {
+            getSelf().tell(new ReportSize(), getSelf());
+        }
+    }
+
+    private void applyReceivedDuringRehashing(
+            BroadcasterState state,
+            Set<ActorRef> members,
+            Map<String, Set<ActorRef>> memberTags,
+            Map<Integer, Set<ActorRef>> memberWeights) {
+        for (Object message : state.getReceivedDuringRehashing()) {
+            if (message instanceof Add) {
+                Add add = (Add) message;
+                members.addAll(add.getMembers());
+                MemberTags.set(memberTags, add.getMembers(), add.getTags());
+                MemberWeights.set(memberWeights, add.getMembers(), add.getWeight());
+            } else if (message instanceof Remove) {
+                Remove remove = (Remove) message;
+                members.removeAll(remove.getMembers());
+                MemberTags.remove(memberTags, remove.getMembers());
+                MemberWeights.remove(memberWeights, remove.getMembers());
+            }
+        }
+    }
+
+    @MessageHandler
+    public void handle(ResizeRequest resizeRequest, BroadcasterState state, ActorRef sender) throws Exception {
+        if (state.getCurrentlyRehashing() || state.isCurrentlyMigrating()) {
+            logger.warn("Broadcaster actor <{}> received resize request, but is already in the process of rehashing. Ignoring.", getSelf().getActorId());
+            return;
+        }
+
+        if (resizeRequest.getBucketsPerNode() < 1 || resizeRequest.getBucketSize() < 1) {
+            logger.warn("Broadcaster actor <{}> received resize request with invalid configuration (bucketsPerNode = {}, bucketSize = {}). Ignoring.",
+                    getSelf().getActorId(), resizeRequest.getBucketsPerNode(), resizeRequest.getBucketSize());
+            return;
+        }
+
+        if (state.isShardAffinity() && !state.isLeafNode()) {
+            logger.warn("Broadcaster actor <{}> received resize request, but its members are mapped by shard. Ignoring, rehash it instead.", getSelf().getActorId());
+            return;
+        }
+
+        if (state.getPlacement() == BucketPlacement.MODULO && !state.isLeafNode()) {
+            // almost every member would move, which costs more than rebuilding the tree
+            logger.warn("Broadcaster actor <{}> received resize request, but its members are placed with {}. Ignoring, rehash it instead.",
+                    getSelf().getActorId(), BucketPlacement.MODULO);
+            return;
+        }
+
+        state.setBucketsPerNode(resizeRequest.getBucketsPerNode());
+        state.setBucketSize(resizeRequest.getBucketSize());
+
+        if (state.isLeafNode()) {
+            // there are no children to migrate, the new configuration will be used for the next split
+            if (sender != null) {
+                sender.tell(new RehashComplete(0));
+            }
+            return;
+        }
+
+        // keep the existing children that are still in range and create the missing ones
+        List<ActorRef> previousNodes = state.getNodes();
+        List<ActorRef> migrationNodes = new ArrayList<>(resizeRequest.getBucketsPerNode());
+        for (int i = 0; i < resizeRequest.getBucketsPerNode(); i++) {
+            if (i < previousNodes.size()) {
+                migrationNodes.add(previousNodes.get(i));
+            } else {
+                String actorId = state.childId(getSelf().getActorId(), i);
+                migrationNodes.add(getSystem().actorOf(
+                        actorId,
+                        Broadcaster.class,
+                        state.newChildState(getSelf(), Collections.emptySet())));
+                state.addChildSize(actorId, 0);
+            }
+        }
+
+        // make sure the children know about all members before migrating them
+        metrics.membershipChangesForwarded(BroadcasterTree.flushPendingMembers(state, getSelf()));
+
+        // add and remove requests are buffered until all children have migrated their members
+        state.setCurrentlyRehashing(true);
+        state.setRehashRoot(true);
+        state.setRehashStartedAt(System.currentTimeMillis());
+        state.setRehashReplyTo(sender);
+        state.setMigrationNodes(migrationNodes);
+        state.setExpectedMigrationReplies(previousNodes.size());
+        state.setReceivedMigrationReplies(0);
+        state.setMigratedMembers(0);
+        state.invalidateLeafNodeCache();
+
+        logger.info("Resizing broadcaster <{}> from {} to {} buckets per node", getSelf().getActorId(), previousNodes.size(), migrationNodes.size());
+
+        MigrateRequest migrateRequest = new MigrateRequest(
+                getSelf().getActorId(),
+                state.getPlacement(),
+                previousNodes.size(),
+                migrationNodes,
+                state.getBucketsPerNode(),
+                state.getBucketSize());
+        for (ActorRef actorRef : previousNodes) {
+            actorRef.tell(migrateRequest, getSelf());
+        }
+    }
+
+    @MessageHandler
+    public void handle(MigrateRequest migrateRequest, BroadcasterState state, ActorRef sender) {
+        if (state.isMerging()) {
+            // this node becomes a leaf node once the merge is done, migrate its members then
+            state.setDeferredMigrateRequest(migrateRequest, sender);
+            return;
+        }
+
+        state.setBucketsPerNode(migrateRequest.getBucketsPerNode());
+        state.setBucketSize(migrateRequest.getBucketSize());
+
+        if (state.isLeafNode()) {
+            // move the members whose bucket changed directly to their new sibling
+            BucketPlacement placement = migrateRequest.getPlacement();
+            MemberHasher hasher = MemberHasher.forNode(migrateRequest.getRoutingNodeId());
+            Multimap<ActorRef, ActorRef> moves = ArrayListMultimap.create();
+            Iterator<ActorRef> iterator = state.getLeaves().iterator();
+            while (iterator.hasNext()) {
+                ActorRef member = iterator.next();
+                int hash = hasher.hash(member);
+                int previousBucket = placement.bucket(hash, migrateRequest.getPreviousBuckets());
+                int currentBucket = placement.bucket(hash, migrateRequest.getNodes().size());
+                if (previousBucket != currentBucket) {
+                    moves.put(migrateRequest.getNodes().get(currentBucket), member);
+                    iterator.remove();
+                }
+            }
+            for (ActorRef actorRef : moves.keySet()) {
+                // the members keep their tags and weights
+                for (Add add : MemberWeights.toAdds(moves.get(actorRef), state.getMemberTags(), state.getMemberWeights())) {
+                    actorRef.tell(add, getSelf());
+                }
+            }
+            state.removeTags(moves.values());
+            state.removeWeights(moves.values());
+            if (!moves.isEmpty() && !state.isSizeReportScheduled()) {
+                // the new siblings report the members they received themselves
+                getSelf().tell(new ReportSize(), getSelf());
+            }
+            logger.debug("Broadcaster actor <{}> moved {} members to sibling nodes", getSelf().getActorId(), moves.size());
+            sender.tell(new MigrateResponse(moves.size()), getSelf());
+        } else {
+            metrics.membershipChangesForwarded(BroadcasterTree.flushPendingMembers(state, getSelf()));
+
+            state.setMigrationReplyTo(sender);
+            state.setExpectedMigrationReplies(state.getNodes().size());
+            state.setReceivedMigrationReplies(0);
+            state.setMigratedMembers(0);
+
+            for (ActorRef actorRef : state.getNodes()) {
+                actorRef.tell(migrateRequest, getSelf());
+            }
+        }
+    }
+
+    @MessageHandler
+    public void handle(MigrateResponse migrateResponse, BroadcasterState state) {
+        if (!state.isCurrentlyMigrating()) {
+            logger.warn("Broadcaster actor <{}> received migrate response, but is not migrating. Ignoring.", getSelf().getActorId());
+            return;
+        }
+
+        state.incrementReceivedMigrationReplies();
+        state.incrementMigratedMembers(migrateResponse.getMovedMembers());
+
+        if (state.getReceivedMigrationReplies() == state.getExpectedMigrationReplies()) {
+            if (state.getMigrationNodes() != null) {
+                // this node is the one being resized, switch over to the new children
+                List<ActorRef> migrationNodes = state.getMigrationNodes();
+                List<ActorRef> retiredNodes = new ArrayList<>(state.getNodes());
+                retiredNodes.removeAll(migrationNodes);
+
+                state.getNodes().clear();
+                state.getNodes().addAll(migrationNodes);
+                state.invalidateLeafNodeCache();
+                // members with any of the tags may have moved to any of the children
+                state.shareChildTags(migrationNodes);
+
+                // all members of the retired nodes have been moved, so they can be removed
+                for (ActorRef actorRef : retiredNodes) {
+                    getSystem().stop(actorRef);
+                    state.removeChildSize(actorRef.getActorId());
+                }
+
+                logger.info("Resizing of broadcaster <{}> is now completed, moved {} members", getSelf().getActorId(), state.getMigratedMembers());
+                metrics.rehashCompleted(System.currentTimeMillis() - state.getRehashStartedAt());
+
+                // replay the messages received during the migration process (both add and remove)
+                for (Object message : state.getReceivedDuringRehashing()) {
+                    getSelf().tell(message);
+                }
+
+                if (state.getRehashReplyTo() != null) {
+                    state.getRehashReplyTo().tell(new RehashComplete(state.getMigratedMembers()));
+                }
+
+                state.setCurrentlyRehashing(false);
+                state.setRehashRoot(false);
+                state.setRehashReplyTo(null);
+                state.setReceivedDuringRehashing(new ArrayList<>());
+                state.setMigrationNodes(null);
+            } else {
+                state.getMigrationReplyTo().tell(new MigrateResponse(state.getMigratedMembers()), getSelf());
+                state.setMigrationReplyTo(null);
+            }
+
+            state.setExpectedMigrationReplies(0);
+            state.setReceivedMigrationReplies(0);
+            state.setMigratedMembers(0);
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package org.elasticsoftware.elasticactors.broadcast.messages;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.Sets;
 import org.elasticsoftware.elasticactors.ActorRef;
@@ -10,12 +11,23 @@ import org.elasticsoftware.elasticactors.serialization.Message;
 import java.util.Collection;
 import java.util.Set;
 
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
 /**
+ * Adds members to a broadcaster. Members can be added with tags (for instance a region or a
+ * tier), so a {@link FilteredBroadcast} only reaches the members that have all of its tags. Members
+ * that fan out further themselves (for instance a room with many sessions) can be added with a
+ * weight, so a leaf node splits once the total weight of its members exceeds {@code bucketSize}
+ * rather than their number. Adding a member again replaces its tags and weight.
+ *
  * @author Joost van de Wijgerd
  */
+@JsonInclude(NON_NULL)
 @Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
 public final class Add {
     private final Set<ActorRef> members;
+    private final Set<String> tags;
+    private final Integer weight;
 
     public Add(Collection<ActorRef> members) {
         this(Sets.newHashSet(members));
@@ -25,12 +37,47 @@ public final class Add {
         this(Sets.newHashSet(members));
     }
 
+    public Add(Set<ActorRef> members) {
+        this(members, null);
+    }
+
+    public Add(Collection<ActorRef> members, Set<String> tags) {
+        this(Sets.newHashSet(members), tags);
+    }
+
+    public Add(Set<ActorRef> members, Set<String> tags) {
+        this(members, tags, null);
+    }
+
+    public Add(Collection<ActorRef> members, Set<String> tags, Integer weight) {
+        this(Sets.newHashSet(members), tags, weight);
+    }
+
     @JsonCreator
-    public Add(@JsonProperty("members") Set<ActorRef> members) {
+    public Add(
+            @JsonProperty("members") Set<ActorRef> members,
+            @JsonProperty("tags") Set<String> tags,
+            @JsonProperty("weight") Integer weight) {
         this.members = members;
+        this.tags = tags != null && !tags.isEmpty() ? tags : null;
+        this.weight = weight != null && weight > 1 ? weight : null;
     }
 
     public Set<ActorRef> getMembers() {
         return members;
     }
+
+    /**
+     * The tags of the added members, {@code null} if they don't have any
+     */
+    public Set<String> getTags() {
+        return tags;
+    }
+
+    /**
+     * The weight of every added member, {@code null} for the default weight of 1
+     */
+    public Integer getWeight() {
+        return weight;
+    }
 }
@@ -0,0 +1,63 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+import java.util.List;
+
+/**
+ * Acknowledges a {@link TrackedDelivery} to the parent node, aggregating the counts of the subtree
+ * of the sending node
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = false, immutable = true)
+public final class BroadcastAck {
+
+    private final String broadcastId;
+    private final int members;
+    private final int leafNodes;
+    private final List<Long> levelLatencies;
+    private final boolean complete;
+
+    @JsonCreator
+    public BroadcastAck(
+            @JsonProperty("broadcastId") String broadcastId,
+            @JsonProperty("members") int members,
+            @JsonProperty("leafNodes") int leafNodes,
+            @JsonProperty("levelLatencies") List<Long> levelLatencies,
+            @JsonProperty("complete") boolean complete) {
+        this.broadcastId = broadcastId;
+        this.members = members;
+        this.leafNodes = leafNodes;
+        this.levelLatencies = levelLatencies;
+        this.complete = complete;
+    }
+
+    public String getBroadcastId() {
+        return broadcastId;
+    }
+
+    public int getMembers() {
+        return members;
+    }
+
+    public int getLeafNodes() {
+        return leafNodes;
+    }
+
+    /**
+     * The highest latency at which the delivery reached the nodes of the subtree, per level
+     * starting with the sending node
+     */
+    public List<Long> getLevelLatencies() {
+        return levelLatencies;
+    }
+
+    /**
+     * Whether all nodes of the subtree acknowledged the delivery before their deadline
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+}
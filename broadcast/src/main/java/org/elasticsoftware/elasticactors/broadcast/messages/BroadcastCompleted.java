@@ -0,0 +1,82 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+import java.util.List;
+
+/**
+ * Sent to the sender of a {@link TrackedBroadcast} once the message was delivered to all members,
+ * or when the deadline of the broadcast passed
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = false, immutable = true)
+public final class BroadcastCompleted {
+
+    private final String broadcastId;
+    private final int members;
+    private final int leafNodes;
+    private final long durationMillis;
+    private final List<Long> levelLatencyMillis;
+    private final boolean complete;
+
+    @JsonCreator
+    public BroadcastCompleted(
+            @JsonProperty("broadcastId") String broadcastId,
+            @JsonProperty("members") int members,
+            @JsonProperty("leafNodes") int leafNodes,
+            @JsonProperty("durationMillis") long durationMillis,
+            @JsonProperty("levelLatencyMillis") List<Long> levelLatencyMillis,
+            @JsonProperty("complete") boolean complete) {
+        this.broadcastId = broadcastId;
+        this.members = members;
+        this.leafNodes = leafNodes;
+        this.durationMillis = durationMillis;
+        this.levelLatencyMillis = levelLatencyMillis;
+        this.complete = complete;
+    }
+
+    public String getBroadcastId() {
+        return broadcastId;
+    }
+
+    /**
+     * The number of members the message was delivered to
+     */
+    public int getMembers() {
+        return members;
+    }
+
+    /**
+     * The number of leaf nodes that delivered the message
+     */
+    public int getLeafNodes() {
+        return leafNodes;
+    }
+
+    /**
+     * The time between the root receiving the broadcast and the last acknowledgement
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * The highest latency at which the broadcast reached the nodes of every level of the tree,
+     * starting with the root. Latencies below the root are measured against the clock of the
+     * root, so they include the clock skew between the nodes.
+     */
+    public List<Long> getLevelLatencyMillis() {
+        return levelLatencyMillis;
+    }
+
+    /**
+     * Whether all nodes acknowledged the delivery. When {@code false}, the deadline of at least
+     * one node passed and the counts only include the nodes that did acknowledge it (see
+     * {@link org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState#setTrackedBroadcastTimeoutMillis(long)}).
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+}
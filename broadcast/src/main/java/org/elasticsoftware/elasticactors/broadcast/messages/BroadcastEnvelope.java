@@ -0,0 +1,80 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+import java.util.Set;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
+/**
+ * Carries a broadcast message down the tree in its serialized form. The message is serialized
+ * once by the node that receives it, using the serialization framework declared in its
+ * {@link Message} annotation, and is only deserialized again by the leaf nodes.
+ */
+@JsonInclude(NON_NULL)
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
+public final class BroadcastEnvelope {
+
+    private final String messageClass;
+    private final byte[] messageData;
+    private final Long expiresAt;
+    private final Set<String> tags;
+    private final String broadcastId;
+
+    public BroadcastEnvelope(String messageClass, byte[] messageData) {
+        this(messageClass, messageData, null, null, null);
+    }
+
+    @JsonCreator
+    public BroadcastEnvelope(
+            @JsonProperty("messageClass") String messageClass,
+            @JsonProperty("messageData") byte[] messageData,
+            @JsonProperty("expiresAt") Long expiresAt,
+            @JsonProperty("tags") Set<String> tags,
+            @JsonProperty("broadcastId") String broadcastId) {
+        this.messageClass = messageClass;
+        this.messageData = messageData;
+        this.expiresAt = expiresAt;
+        this.tags = tags;
+        this.broadcastId = broadcastId;
+    }
+
+    public String getMessageClass() {
+        return messageClass;
+    }
+
+    public byte[] getMessageData() {
+        return messageData;
+    }
+
+    /**
+     * The time after which the message is no longer delivered, {@code null} if it doesn't expire
+     * (see {@link Priority})
+     */
+    public Long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isExpired(long now) {
+        return expiresAt != null && now > expiresAt;
+    }
+
+    /**
+     * The tags of a {@link FilteredBroadcast}, {@code null} when the message is for all members
+     */
+    public Set<String> getTags() {
+        return tags;
+    }
+
+    /**
+     * The id the root assigned to the broadcast, {@code null} when the tree doesn't deduplicate
+     * broadcasts (see {@link org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState#setDeduplicationWindowMillis(long)})
+     */
+    public String getBroadcastId() {
+        return broadcastId;
+    }
+}
@@ -0,0 +1,12 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+/**
+ * Sent by a {@link org.elasticsoftware.elasticactors.broadcast.Broadcaster} to itself when its
+ * checkpoint interval expires, to persist the membership changes it received in the meantime.
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
+public final class Checkpoint {
+}
@@ -0,0 +1,12 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+/**
+ * Sent by a leaf {@link org.elasticsoftware.elasticactors.broadcast.Broadcaster} to itself to
+ * deliver the next chunk of a broadcast, giving the other actors of its shard a turn in between.
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = false, immutable = true)
+public final class ContinueLeafDelivery {
+}
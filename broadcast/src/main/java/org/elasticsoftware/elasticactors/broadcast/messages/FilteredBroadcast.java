@@ -0,0 +1,43 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.google.common.collect.Sets;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+import java.util.Set;
+
+/**
+ * Broadcasts a message to the members that were added with all of the given tags (see
+ * {@link Add}). The nodes of the tree keep track of the tags in their subtrees, so the message
+ * is only sent down the subtrees that can have matching members.
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
+public final class FilteredBroadcast {
+
+    private final Object message;
+    private final Set<String> tags;
+
+    public FilteredBroadcast(Object message, String... tags) {
+        this(message, Sets.newHashSet(tags));
+    }
+
+    @JsonCreator
+    public FilteredBroadcast(
+            @JsonProperty("message") @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS) Object message,
+            @JsonProperty("tags") Set<String> tags) {
+        this.message = message;
+        this.tags = tags;
+    }
+
+    @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS)
+    public Object getMessage() {
+        return message;
+    }
+
+    public Set<String> getTags() {
+        return tags;
+    }
+}
@@ -0,0 +1,12 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+/**
+ * Sent by a {@link org.elasticsoftware.elasticactors.broadcast.Broadcaster} to itself when its
+ * coalescing window expires, to forward the pending membership changes to its children.
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
+public final class FlushMembers {
+}
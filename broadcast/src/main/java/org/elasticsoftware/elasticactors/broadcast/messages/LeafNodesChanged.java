@@ -0,0 +1,54 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sent to the root of a {@link org.elasticsoftware.elasticactors.broadcast.Broadcaster} tree when
+ * the leaf nodes of the tree change, to keep its cache of leaf nodes up to date. When
+ * {@code invalidated} is set the change is not known in detail and the root needs to collect the
+ * leaf nodes again.
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
+public final class LeafNodesChanged {
+
+    private final List<ActorRef> removed;
+    private final List<ActorRef> added;
+    private final boolean invalidated;
+
+    public LeafNodesChanged(List<ActorRef> removed, List<ActorRef> added) {
+        this(removed, added, false);
+    }
+
+    @JsonCreator
+    public LeafNodesChanged(
+            @JsonProperty("removed") List<ActorRef> removed,
+            @JsonProperty("added") List<ActorRef> added,
+            @JsonProperty("invalidated") boolean invalidated) {
+        this.removed = removed != null ? removed : Collections.emptyList();
+        this.added = added != null ? added : Collections.emptyList();
+        this.invalidated = invalidated;
+    }
+
+    public static LeafNodesChanged invalidated() {
+        return new LeafNodesChanged(null, null, true);
+    }
+
+    public List<ActorRef> getRemoved() {
+        return removed;
+    }
+
+    public List<ActorRef> getAdded() {
+        return added;
+    }
+
+    public boolean isInvalidated() {
+        return invalidated;
+    }
+}
@@ -1,24 +1,57 @@
 package org.elasticsoftware.elasticactors.broadcast.messages;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
 import org.elasticsoftware.elasticactors.serialization.Message;
 
+import java.util.Set;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
 /**
  * @author Joost van de Wijgerd
  */
+@JsonInclude(NON_NULL)
 @Message(serializationFramework = JacksonSerializationFramework.class, durable = false, immutable = true)
 public final class LeafNodesRequest {
     private final String broadcastId;
+    private final long timeoutMillis;
+    private final Set<String> tags;
+
+    public LeafNodesRequest(String broadcastId) {
+        this(broadcastId, 0L, null);
+    }
 
     @JsonCreator
-    public LeafNodesRequest(@JsonProperty("broadcastId") String broadcastId) {
+    public LeafNodesRequest(
+            @JsonProperty("broadcastId") String broadcastId,
+            @JsonProperty("timeoutMillis") long timeoutMillis,
+            @JsonProperty("tags") Set<String> tags) {
         this.broadcastId = broadcastId;
+        this.timeoutMillis = timeoutMillis;
+        this.tags = tags;
     }
 
     public String getBroadcastId() {
         return broadcastId;
     }
 
+    /**
+     * The time an interior node has to return the leaf nodes of its subtree, zero when the
+     * node should wait for all of its children
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * The tags of a {@link FilteredBroadcast}, only the leaf nodes with members that have all of
+     * them are returned. {@code null} for all leaf nodes.
+     */
+    public Set<String> getTags() {
+        return tags;
+    }
+
 }
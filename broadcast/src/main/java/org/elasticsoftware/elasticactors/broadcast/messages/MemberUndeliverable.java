@@ -0,0 +1,26 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+/**
+ * Sent by a {@link org.elasticsoftware.elasticactors.broadcast.DeadMemberDetector} to its leaf
+ * node when a broadcast could not be delivered to one of the members
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = false, immutable = true)
+public final class MemberUndeliverable {
+
+    private final ActorRef member;
+
+    @JsonCreator
+    public MemberUndeliverable(@JsonProperty("member") ActorRef member) {
+        this.member = member;
+    }
+
+    public ActorRef getMember() {
+        return member;
+    }
+}
@@ -0,0 +1,12 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+/**
+ * Sent by a {@link org.elasticsoftware.elasticactors.broadcast.BroadcastRateLimiter} to itself
+ * while it has throttled messages left to deliver.
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
+public final class RateLimiterTick {
+}
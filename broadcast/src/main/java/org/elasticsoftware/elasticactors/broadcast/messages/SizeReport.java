@@ -0,0 +1,36 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+/**
+ * Sent by a {@link org.elasticsoftware.elasticactors.broadcast.Broadcaster} node to its parent
+ * with the number of members in its subtree and their total weight (see
+ * {@link Add#getWeight()}).
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
+public final class SizeReport {
+
+    private final int size;
+    private final int weight;
+
+    @JsonCreator
+    public SizeReport(@JsonProperty("size") int size, @JsonProperty("weight") Integer weight) {
+        this.size = size;
+        // reports of nodes that were created before weights were introduced don't have one
+        this.weight = weight != null ? weight : size;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * The total weight of the members, which equals the size for subtrees without weighted members
+     */
+    public int getWeight() {
+        return weight;
+    }
+}
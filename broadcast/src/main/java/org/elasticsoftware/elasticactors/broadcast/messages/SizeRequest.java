@@ -0,0 +1,12 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+/**
+ * Asks a {@link org.elasticsoftware.elasticactors.broadcast.Broadcaster} for the number of
+ * members in its tree, which is answered with a {@link SizeResponse}.
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = false, immutable = true)
+public final class SizeRequest {
+}
@@ -0,0 +1,32 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = false, immutable = true)
+public final class SizeResponse {
+
+    private final int size;
+    private final boolean exact;
+
+    @JsonCreator
+    public SizeResponse(@JsonProperty("size") int size, @JsonProperty("exact") boolean exact) {
+        this.size = size;
+        this.exact = exact;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Whether the size is exact, or an approximation because the tree was built before sizes were
+     * reported up the tree (sending a {@link org.elasticsoftware.elasticactors.broadcast.messages.rehash.RehashRequest}
+     * rebuilds the tree)
+     */
+    public boolean isExact() {
+        return exact;
+    }
+}
@@ -0,0 +1,101 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+import java.util.List;
+
+/**
+ * Sent by the root of a {@link org.elasticsoftware.elasticactors.broadcast.Broadcaster} tree to its
+ * {@link org.elasticsoftware.elasticactors.broadcast.BroadcastRateLimiter} to deliver a throttled
+ * message to the given leaf nodes.
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
+public final class ThrottledBroadcast {
+
+    private final ThrottledMessage message;
+    private final int maxPerSecond;
+    private final int messagesPerLeafNode;
+    private final List<ActorRef> leafNodes;
+    private final BroadcastPriority priority;
+    private final Integer minPerSecond;
+    private final Integer targetLatencyMillis;
+
+    public ThrottledBroadcast(
+            ThrottledMessage message,
+            int maxPerSecond,
+            int messagesPerLeafNode,
+            List<ActorRef> leafNodes) {
+        this(message, maxPerSecond, messagesPerLeafNode, leafNodes, null, null, null);
+    }
+
+    @JsonCreator
+    public ThrottledBroadcast(
+            @JsonProperty("message") ThrottledMessage message,
+            @JsonProperty("maxPerSecond") int maxPerSecond,
+            @JsonProperty("messagesPerLeafNode") int messagesPerLeafNode,
+            @JsonProperty("leafNodes") List<ActorRef> leafNodes,
+            @JsonProperty("priority") BroadcastPriority priority,
+            @JsonProperty("minPerSecond") Integer minPerSecond,
+            @JsonProperty("targetLatencyMillis") Integer targetLatencyMillis) {
+        this.message = message;
+        this.maxPerSecond = maxPerSecond;
+        this.messagesPerLeafNode = messagesPerLeafNode;
+        this.leafNodes = leafNodes;
+        this.priority = priority;
+        this.minPerSecond = minPerSecond;
+        this.targetLatencyMillis = targetLatencyMillis;
+    }
+
+    public ThrottledMessage getMessage() {
+        return message;
+    }
+
+    public int getMaxPerSecond() {
+        return maxPerSecond;
+    }
+
+    /**
+     * The number of messages a single leaf node delivers, which is what delivering the message
+     * to a leaf node costs of the budget
+     */
+    public int getMessagesPerLeafNode() {
+        return messagesPerLeafNode;
+    }
+
+    public List<ActorRef> getLeafNodes() {
+        return leafNodes;
+    }
+
+    /**
+     * The priority of the message, {@code null} for broadcasts sent by older versions
+     */
+    public BroadcastPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * The lowest rate of an adaptive rate, {@code null} if the rate is fixed (see
+     * {@link Throttled#minPerSecond()})
+     */
+    public Integer getMinPerSecond() {
+        return minPerSecond;
+    }
+
+    /**
+     * The target latency of an adaptive rate, {@code null} if the rate is fixed (see
+     * {@link Throttled#targetLatencyMillis()})
+     */
+    public Integer getTargetLatencyMillis() {
+        return targetLatencyMillis;
+    }
+
+    @JsonIgnore
+    public boolean isAdaptive() {
+        return minPerSecond != null && targetLatencyMillis != null;
+    }
+}
@@ -0,0 +1,36 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+/**
+ * Sent by a {@link org.elasticsoftware.elasticactors.broadcast.Broadcaster} to itself when the
+ * deadline of a throttled broadcast session expires. Ignored when the session completed already.
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = false, immutable = true)
+public final class ThrottledBroadcastTimeout {
+    private final String broadcastId;
+    private final int attempt;
+
+    @JsonCreator
+    public ThrottledBroadcastTimeout(
+            @JsonProperty("broadcastId") String broadcastId,
+            @JsonProperty("attempt") int attempt) {
+        this.broadcastId = broadcastId;
+        this.attempt = attempt;
+    }
+
+    public String getBroadcastId() {
+        return broadcastId;
+    }
+
+    /**
+     * The retry of the session this deadline belongs to, so the deadline of a previous attempt
+     * doesn't expire a retry early
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+}
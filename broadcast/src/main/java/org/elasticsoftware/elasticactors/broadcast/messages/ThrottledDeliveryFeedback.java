@@ -0,0 +1,38 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+/**
+ * Sent by a leaf node to the {@link org.elasticsoftware.elasticactors.broadcast.BroadcastRateLimiter}
+ * for every {@link ThrottledMessage} it received with a {@link ThrottledMessage#getSentAt()}. The
+ * time is echoed as it was sent, so the rate limiter measures the round trip on its own clock and
+ * the clocks of the nodes don't need to agree.
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = false, immutable = true)
+public final class ThrottledDeliveryFeedback {
+
+    private final String messageClass;
+    private final long sentAt;
+
+    @JsonCreator
+    public ThrottledDeliveryFeedback(
+            @JsonProperty("messageClass") String messageClass,
+            @JsonProperty("sentAt") long sentAt) {
+        this.messageClass = messageClass;
+        this.sentAt = sentAt;
+    }
+
+    public String getMessageClass() {
+        return messageClass;
+    }
+
+    /**
+     * The time the rate limiter sent the message, on the clock of the rate limiter
+     */
+    public long getSentAt() {
+        return sentAt;
+    }
+}
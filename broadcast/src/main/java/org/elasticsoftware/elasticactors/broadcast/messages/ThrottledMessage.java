@@ -1,28 +1,71 @@
 package org.elasticsoftware.elasticactors.broadcast.messages;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.elasticsoftware.elasticactors.ActorRef;
 import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
 import org.elasticsoftware.elasticactors.serialization.Message;
 
+import java.util.Set;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
 /**
+ * Carries a throttled broadcast message to the leaf nodes. Messages that declare a serialization
+ * framework in their {@link Message} annotation are carried in their serialized form
+ * ({@link #getMessagePayload()}), other messages as JSON ({@link #getMessageData()}).
+ *
  * @author Joost van de Wijgerd
  */
+@JsonInclude(NON_NULL)
 @Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
 public final class ThrottledMessage {
     private final ActorRef sender;
     private final String messageClass;
     private final String messageData;
+    private final byte[] messagePayload;
+    private final Long expiresAt;
+    private final Set<String> tags;
+    private final String broadcastId;
+    private final Long sentAt;
+
+    public ThrottledMessage(ActorRef sender, String messageClass, String messageData) {
+        this(sender, messageClass, messageData, null, null, null, null, null);
+    }
+
+    public ThrottledMessage(ActorRef sender, String messageClass, String messageData, Long expiresAt, Set<String> tags) {
+        this(sender, messageClass, messageData, null, expiresAt, tags, null, null);
+    }
+
+    public ThrottledMessage(
+            ActorRef sender,
+            String messageClass,
+            byte[] messagePayload,
+            Long expiresAt,
+            Set<String> tags,
+            String broadcastId) {
+        this(sender, messageClass, null, messagePayload, expiresAt, tags, broadcastId, null);
+    }
 
     @JsonCreator
     public ThrottledMessage(
             @JsonProperty("sender") ActorRef sender,
             @JsonProperty("messageClass") String messageClass,
-            @JsonProperty("messageData") String messageData) {
+            @JsonProperty("messageData") String messageData,
+            @JsonProperty("messagePayload") byte[] messagePayload,
+            @JsonProperty("expiresAt") Long expiresAt,
+            @JsonProperty("tags") Set<String> tags,
+            @JsonProperty("broadcastId") String broadcastId,
+            @JsonProperty("sentAt") Long sentAt) {
         this.sender = sender;
         this.messageClass = messageClass;
         this.messageData = messageData;
+        this.messagePayload = messagePayload;
+        this.expiresAt = expiresAt;
+        this.tags = tags;
+        this.broadcastId = broadcastId;
+        this.sentAt = sentAt;
     }
 
     public ActorRef getSender() {
@@ -33,8 +76,70 @@ public final class ThrottledMessage {
         return messageClass;
     }
 
+    /**
+     * The message serialized as JSON, {@code null} when the message is carried as
+     * {@link #getMessagePayload()}
+     */
     public String getMessageData() {
         return messageData;
     }
 
+    /**
+     * The message serialized with its own serialization framework, {@code null} for messages that
+     * don't declare one and for messages sent by older versions
+     */
+    public byte[] getMessagePayload() {
+        return messagePayload;
+    }
+
+    /**
+     * The time after which the message is no longer delivered, {@code null} if it doesn't expire
+     * (see {@link Priority})
+     */
+    public Long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isExpired(long now) {
+        return expiresAt != null && now > expiresAt;
+    }
+
+    /**
+     * The tags of a {@link FilteredBroadcast}, {@code null} when the message is for all members
+     */
+    public Set<String> getTags() {
+        return tags;
+    }
+
+    /**
+     * The id the root assigned to the broadcast, see {@link BroadcastEnvelope#getBroadcastId()}
+     */
+    public String getBroadcastId() {
+        return broadcastId;
+    }
+
+    /**
+     * The time the rate limiter sent the message to the leaf node, {@code null} unless the message
+     * has an adaptive rate (see {@link Throttled#minPerSecond()})
+     */
+    public Long getSentAt() {
+        return sentAt;
+    }
+
+    /**
+     * @return a copy of this message with the given {@link #getSentAt()}, which shares the
+     * serialized message
+     */
+    public ThrottledMessage withSentAt(long sentAt) {
+        return new ThrottledMessage(
+                sender,
+                messageClass,
+                messageData,
+                messagePayload,
+                expiresAt,
+                tags,
+                broadcastId,
+                sentAt);
+    }
+
 }
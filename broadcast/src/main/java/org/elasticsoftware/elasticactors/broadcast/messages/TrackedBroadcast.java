@@ -0,0 +1,83 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+import org.elasticsoftware.elasticactors.serialization.MessageSerializer;
+import org.elasticsoftware.elasticactors.serialization.SerializationFramework;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
+/**
+ * Broadcasts a message to all members and reports back to the sender with a
+ * {@link BroadcastCompleted} once every leaf node of the tree acknowledged the delivery. The
+ * message is sent straight down the tree: {@link Throttled} and {@link BroadcastPriority}
+ * configuration of the message does not apply.
+ * <br>
+ * Like a {@link BroadcastEnvelope}, the message is carried in its serialized form, and is only
+ * deserialized by the leaf nodes with the serialization framework declared in its {@link Message}
+ * annotation. Use {@link #of(String, Object, SerializationFramework)} to create one.
+ */
+@JsonInclude(NON_NULL)
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
+public final class TrackedBroadcast {
+
+    private final String broadcastId;
+    private final String messageClass;
+    private final byte[] messageData;
+
+    /**
+     * @param broadcastId the id the {@link BroadcastCompleted} is sent with, a random id is used
+     *                    when {@code null}
+     */
+    @JsonCreator
+    public TrackedBroadcast(
+            @JsonProperty("broadcastId") String broadcastId,
+            @JsonProperty("messageClass") String messageClass,
+            @JsonProperty("messageData") byte[] messageData) {
+        this.broadcastId = broadcastId;
+        this.messageClass = messageClass;
+        this.messageData = messageData;
+    }
+
+    /**
+     * Serializes the message with the given serialization framework, which must be the one
+     * declared in the {@link Message} annotation of the message
+     *
+     * @param broadcastId the id the {@link BroadcastCompleted} is sent with, a random id is used
+     *                    when {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public static TrackedBroadcast of(
+            String broadcastId,
+            Object message,
+            SerializationFramework serializationFramework) throws IOException {
+        Class<Object> messageClass = (Class<Object>) message.getClass();
+        if (!messageClass.isAnnotationPresent(Message.class)) {
+            throw new IllegalArgumentException(
+                    "Message of type [" + messageClass.getName() + "] is not annotated with @Message");
+        }
+        MessageSerializer<Object> serializer = serializationFramework.getSerializer(messageClass);
+        ByteBuffer buffer = serializer.serialize(message);
+        byte[] messageData = new byte[buffer.remaining()];
+        buffer.get(messageData);
+        return new TrackedBroadcast(broadcastId, messageClass.getName(), messageData);
+    }
+
+    public String getBroadcastId() {
+        return broadcastId;
+    }
+
+    public String getMessageClass() {
+        return messageClass;
+    }
+
+    public byte[] getMessageData() {
+        return messageData;
+    }
+}
@@ -0,0 +1,24 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+/**
+ * Sent by a {@link org.elasticsoftware.elasticactors.broadcast.Broadcaster} to itself when the
+ * deadline of a tracked broadcast expires. Ignored when all children acknowledged it already.
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = false, immutable = true)
+public final class TrackedBroadcastTimeout {
+    private final String broadcastId;
+
+    @JsonCreator
+    public TrackedBroadcastTimeout(@JsonProperty("broadcastId") String broadcastId) {
+        this.broadcastId = broadcastId;
+    }
+
+    public String getBroadcastId() {
+        return broadcastId;
+    }
+}
@@ -0,0 +1,78 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+/**
+ * Carries a {@link TrackedBroadcast} down the tree. Every node acknowledges it to its parent with
+ * a {@link BroadcastAck} once its subtree is done. The message stays serialized until it reaches
+ * the leaf nodes.
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
+public final class TrackedDelivery {
+
+    private final String broadcastId;
+    private final String messageClass;
+    private final byte[] messageData;
+    private final ActorRef parent;
+    private final long startedAt;
+    private final long timeoutMillis;
+
+    @JsonCreator
+    public TrackedDelivery(
+            @JsonProperty("broadcastId") String broadcastId,
+            @JsonProperty("messageClass") String messageClass,
+            @JsonProperty("messageData") byte[] messageData,
+            @JsonProperty("parent") ActorRef parent,
+            @JsonProperty("startedAt") long startedAt,
+            @JsonProperty("timeoutMillis") long timeoutMillis) {
+        this.broadcastId = broadcastId;
+        this.messageClass = messageClass;
+        this.messageData = messageData;
+        this.parent = parent;
+        this.startedAt = startedAt;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public String getBroadcastId() {
+        return broadcastId;
+    }
+
+    public String getMessageClass() {
+        return messageClass;
+    }
+
+    /**
+     * The message, serialized with the serialization framework declared in its
+     * {@link Message} annotation
+     */
+    public byte[] getMessageData() {
+        return messageData;
+    }
+
+    /**
+     * The node to acknowledge the delivery to. The message itself is sent with the sender of the
+     * {@link TrackedBroadcast}, so the members can reply to it.
+     */
+    public ActorRef getParent() {
+        return parent;
+    }
+
+    /**
+     * The time the root received the {@link TrackedBroadcast}, in milliseconds since the epoch
+     */
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * The time the receiving node waits for the acknowledgements of its children, zero to wait
+     * for all of them
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
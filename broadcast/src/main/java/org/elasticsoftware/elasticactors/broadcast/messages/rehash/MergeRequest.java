@@ -0,0 +1,13 @@
+package org.elasticsoftware.elasticactors.broadcast.messages.rehash;
+
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+/**
+ * Sent by a {@link org.elasticsoftware.elasticactors.broadcast.Broadcaster} node to itself when
+ * its subtree contains no more than {@code mergeThreshold} members, to collect them and turn
+ * itself into a leaf node. Unlike {@link RehashRequest}, this only affects the subtree of the node.
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
+public final class MergeRequest {
+}
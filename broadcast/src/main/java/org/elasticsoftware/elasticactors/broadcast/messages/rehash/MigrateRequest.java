@@ -0,0 +1,67 @@
+package org.elasticsoftware.elasticactors.broadcast.messages.rehash;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.broadcast.state.BucketPlacement;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+import java.util.List;
+
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
+public final class MigrateRequest {
+
+    private final String routingNodeId;
+    private final BucketPlacement placement;
+    private final int previousBuckets;
+    private final List<ActorRef> nodes;
+    private final int bucketsPerNode;
+    private final int bucketSize;
+
+    @JsonCreator
+    public MigrateRequest(
+            @JsonProperty("routingNodeId") String routingNodeId,
+            @JsonProperty("placement") BucketPlacement placement,
+            @JsonProperty("previousBuckets") int previousBuckets,
+            @JsonProperty("nodes") List<ActorRef> nodes,
+            @JsonProperty("bucketsPerNode") int bucketsPerNode,
+            @JsonProperty("bucketSize") int bucketSize) {
+        this.routingNodeId = routingNodeId;
+        this.placement = placement;
+        this.previousBuckets = previousBuckets;
+        this.nodes = nodes;
+        this.bucketsPerNode = bucketsPerNode;
+        this.bucketSize = bucketSize;
+    }
+
+    /**
+     * The id of the node that is being resized, used as the hash key for its members
+     */
+    public String getRoutingNodeId() {
+        return routingNodeId;
+    }
+
+    public BucketPlacement getPlacement() {
+        return placement;
+    }
+
+    public int getPreviousBuckets() {
+        return previousBuckets;
+    }
+
+    /**
+     * The children of the node that is being resized, after the resize
+     */
+    public List<ActorRef> getNodes() {
+        return nodes;
+    }
+
+    public int getBucketsPerNode() {
+        return bucketsPerNode;
+    }
+
+    public int getBucketSize() {
+        return bucketSize;
+    }
+}
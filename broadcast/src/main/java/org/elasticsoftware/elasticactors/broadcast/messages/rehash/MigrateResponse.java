@@ -0,0 +1,21 @@
+package org.elasticsoftware.elasticactors.broadcast.messages.rehash;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
+public final class MigrateResponse {
+
+    private final int movedMembers;
+
+    @JsonCreator
+    public MigrateResponse(@JsonProperty("movedMembers") int movedMembers) {
+        this.movedMembers = movedMembers;
+    }
+
+    public int getMovedMembers() {
+        return movedMembers;
+    }
+}
@@ -1,8 +1,33 @@
 package org.elasticsoftware.elasticactors.broadcast.messages.rehash;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
 import org.elasticsoftware.elasticactors.serialization.Message;
 
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
+@JsonInclude(NON_NULL)
 @Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
 public final class RehashComplete {
+
+    private final Integer movedMembers;
+
+    public RehashComplete() {
+        this(null);
+    }
+
+    @JsonCreator
+    public RehashComplete(@JsonProperty("movedMembers") Integer movedMembers) {
+        this.movedMembers = movedMembers;
+    }
+
+    /**
+     * The number of members that moved to another node during a {@link ResizeRequest}, or
+     * {@code null} if the tree was rebuilt
+     */
+    public Integer getMovedMembers() {
+        return movedMembers;
+    }
 }
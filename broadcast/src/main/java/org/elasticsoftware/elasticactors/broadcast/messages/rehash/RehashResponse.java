@@ -1,24 +1,58 @@
 package org.elasticsoftware.elasticactors.broadcast.messages.rehash;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import org.elasticsoftware.elasticactors.ActorRef;
 import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.broadcast.serialization.CompactActorRefSetDeserializer;
+import org.elasticsoftware.elasticactors.broadcast.serialization.CompactActorRefSetSerializer;
 import org.elasticsoftware.elasticactors.serialization.Message;
 
+import java.util.Map;
 import java.util.Set;
 
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_EMPTY;
+
 @Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
 public final class RehashResponse {
 
     private final Set<ActorRef> members;
+    private final Map<String, Set<ActorRef>> memberTags;
+    private final Map<Integer, Set<ActorRef>> memberWeights;
 
     @JsonCreator
-    public RehashResponse(@JsonProperty("members") Set<ActorRef> members) {
+    public RehashResponse(
+            @JsonProperty("members") @JsonDeserialize(using = CompactActorRefSetDeserializer.class) Set<ActorRef> members,
+            @JsonProperty("memberTags") @JsonDeserialize(contentUsing = CompactActorRefSetDeserializer.class) Map<String, Set<ActorRef>> memberTags,
+            @JsonProperty("memberWeights") @JsonDeserialize(contentUsing = CompactActorRefSetDeserializer.class) Map<Integer, Set<ActorRef>> memberWeights) {
         this.members = members;
+        this.memberTags = memberTags;
+        this.memberWeights = memberWeights;
     }
 
+    @JsonSerialize(using = CompactActorRefSetSerializer.class)
     public Set<ActorRef> getMembers() {
         return members;
     }
+
+    /**
+     * The tags of the members, see {@link org.elasticsoftware.elasticactors.broadcast.state.MemberTags}
+     */
+    @JsonInclude(NON_EMPTY)
+    @JsonSerialize(contentUsing = CompactActorRefSetSerializer.class)
+    public Map<String, Set<ActorRef>> getMemberTags() {
+        return memberTags;
+    }
+
+    /**
+     * The weights of the members, see {@link org.elasticsoftware.elasticactors.broadcast.state.MemberWeights}
+     */
+    @JsonInclude(NON_EMPTY)
+    @JsonSerialize(contentUsing = CompactActorRefSetSerializer.class)
+    public Map<Integer, Set<ActorRef>> getMemberWeights() {
+        return memberWeights;
+    }
 }
@@ -0,0 +1,40 @@
+package org.elasticsoftware.elasticactors.broadcast.messages.rehash;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+/**
+ * Changes the {@code bucketsPerNode} and {@code bucketSize} of a broadcaster tree. Instead of
+ * tearing down the tree (like {@link RehashRequest} does), only the members whose bucket changes
+ * are streamed to their new sibling node. This requires
+ * {@link org.elasticsoftware.elasticactors.broadcast.state.BucketPlacement#JUMP_CONSISTENT_HASH}:
+ * with {@link org.elasticsoftware.elasticactors.broadcast.state.BucketPlacement#MODULO} almost
+ * every member would move, so trees that are split already ignore the request.
+ * <br>
+ * The sender will receive a {@link RehashComplete} message with the number of moved members when
+ * the migration is done.
+ */
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = true, immutable = true)
+public final class ResizeRequest {
+
+    private final int bucketsPerNode;
+    private final int bucketSize;
+
+    @JsonCreator
+    public ResizeRequest(
+            @JsonProperty("bucketsPerNode") int bucketsPerNode,
+            @JsonProperty("bucketSize") int bucketSize) {
+        this.bucketsPerNode = bucketsPerNode;
+        this.bucketSize = bucketSize;
+    }
+
+    public int getBucketsPerNode() {
+        return bucketsPerNode;
+    }
+
+    public int getBucketSize() {
+        return bucketSize;
+    }
+}
@@ -0,0 +1,44 @@
+package org.elasticsoftware.elasticactors.broadcast.serialization;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.elasticsoftware.elasticactors.ActorRef;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads a set of {@link ActorRef}s written by {@link CompactActorRefSetSerializer}. Plain arrays of
+ * ref specs, which is how the set was written before, are supported as well.
+ */
+public final class CompactActorRefSetDeserializer extends JsonDeserializer<Set<ActorRef>> {
+
+    @Override
+    public Set<ActorRef> deserialize(JsonParser jp, DeserializationContext ctxt) throws IOException {
+        ObjectCodec codec = jp.getCodec();
+        JsonNode node = codec.readTree(jp);
+        Set<ActorRef> actorRefs = new HashSet<>();
+        if (node.isArray()) {
+            for (JsonNode spec : node) {
+                actorRefs.add(codec.treeToValue(spec, ActorRef.class));
+            }
+        } else {
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> entry = fields.next();
+                String prefix = entry.getKey();
+                for (JsonNode actorId : entry.getValue()) {
+                    actorRefs.add(codec.treeToValue(new TextNode(prefix + actorId.asText()), ActorRef.class));
+                }
+            }
+        }
+        return actorRefs;
+    }
+}
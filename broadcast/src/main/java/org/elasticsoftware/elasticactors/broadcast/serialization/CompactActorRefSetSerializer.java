@@ -0,0 +1,87 @@
+package org.elasticsoftware.elasticactors.broadcast.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import org.elasticsoftware.elasticactors.ActorRef;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes a set of {@link ActorRef}s as an object that maps every ref spec prefix (everything but
+ * the actor id) to the sorted actor ids that share it:
+ *
+ * <pre>
+ * {"actor://cluster/system/shards/3/": ["session-1", "session-12"], ...}
+ * </pre>
+ *
+ * Members of a broadcaster typically live on a small number of shards, so this stores the
+ * cluster, actor system and shard of a member once per shard instead of once per member.
+ * <br>
+ * Versions before this was introduced can only read the plain array of ref specs, both from the
+ * persisted state and from a
+ * {@link org.elasticsoftware.elasticactors.broadcast.messages.rehash.RehashResponse}. So that a
+ * release can still be rolled back, the sets are only written in this form when the property
+ * {@value #COMPACT_FORMAT_PROPERTY} of the actor system is {@code true} (see
+ * {@link #setCompactFormat(ObjectMapper, boolean)}). Enable it once no node runs an older version
+ * anymore; it will become the default in the next release.
+ * <br>
+ * Only the persisted state and the messages get smaller, the sets on the heap are unchanged.
+ *
+ * @see CompactActorRefSetDeserializer
+ */
+public final class CompactActorRefSetSerializer extends JsonSerializer<Set<ActorRef>> {
+
+    public static final String COMPACT_FORMAT_PROPERTY = "ea.broadcast.compactActorRefSets";
+
+    /**
+     * Enables or disables the compact format for the sets written by the given mapper, which is
+     * the mapper of the serialization framework of a single actor system
+     */
+    public static void setCompactFormat(ObjectMapper objectMapper, boolean compactFormat) {
+        objectMapper.setDefaultAttributes(objectMapper.getSerializationConfig()
+                .getAttributes()
+                .withSharedAttribute(COMPACT_FORMAT_PROPERTY, compactFormat));
+    }
+
+    @Override
+    public void serialize(Set<ActorRef> value, JsonGenerator jgen, SerializerProvider provider) throws IOException {
+        if (!Boolean.TRUE.equals(provider.getAttribute(COMPACT_FORMAT_PROPERTY))) {
+            jgen.writeStartArray();
+            for (ActorRef actorRef : value) {
+                jgen.writeString(actorRef.toString());
+            }
+            jgen.writeEndArray();
+            return;
+        }
+        Map<String, List<String>> actorIdsByPrefix = new TreeMap<>();
+        for (ActorRef actorRef : value) {
+            String spec = actorRef.toString();
+            String actorId = actorRef.getActorId();
+            if (actorId != null && spec.endsWith(actorId)) {
+                String prefix = spec.substring(0, spec.length() - actorId.length());
+                actorIdsByPrefix.computeIfAbsent(prefix, k -> new ArrayList<>()).add(actorId);
+            } else {
+                actorIdsByPrefix.computeIfAbsent(spec, k -> new ArrayList<>()).add("");
+            }
+        }
+        jgen.writeStartObject();
+        for (Map.Entry<String, List<String>> entry : actorIdsByPrefix.entrySet()) {
+            List<String> actorIds = entry.getValue();
+            Collections.sort(actorIds);
+            jgen.writeArrayFieldStart(entry.getKey());
+            for (String actorId : actorIds) {
+                jgen.writeString(actorId);
+            }
+            jgen.writeEndArray();
+        }
+        jgen.writeEndObject();
+    }
+}
@@ -0,0 +1,118 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The rate of a throttled message class that adapts to the latency reported by the leaf nodes
+ * (additive increase, multiplicative decrease). While the latency stays within the target the rate
+ * grows linearly from {@code minPerSecond} to {@code maxPerSecond} in {@link #RAMP_UP_MILLIS}.
+ * When it exceeds the target the rate is halved, at most once per {@link #DECREASE_INTERVAL_MILLIS}
+ * so the messages that were sent at the higher rate don't lower it again.
+ */
+public final class AdaptiveRate {
+
+    public static final long RAMP_UP_MILLIS = 10_000L;
+    public static final long DECREASE_INTERVAL_MILLIS = 1_000L;
+    private static final double DECREASE_FACTOR = 0.5d;
+
+    private int minPerSecond;
+    private int maxPerSecond;
+    private long targetLatencyMillis;
+    private double perSecond;
+    private long lastUpdate;
+    private long lastDecrease;
+    private transient long lastSampledAt;
+
+    public AdaptiveRate(int minPerSecond, int maxPerSecond, long targetLatencyMillis, long now) {
+        this(minPerSecond, maxPerSecond, targetLatencyMillis, minPerSecond, now, 0L);
+    }
+
+    @JsonCreator
+    public AdaptiveRate(
+            @JsonProperty("minPerSecond") int minPerSecond,
+            @JsonProperty("maxPerSecond") int maxPerSecond,
+            @JsonProperty("targetLatencyMillis") long targetLatencyMillis,
+            @JsonProperty("perSecond") double perSecond,
+            @JsonProperty("lastUpdate") long lastUpdate,
+            @JsonProperty("lastDecrease") long lastDecrease) {
+        this.minPerSecond = minPerSecond;
+        this.maxPerSecond = maxPerSecond;
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.perSecond = perSecond;
+        this.lastUpdate = lastUpdate;
+        this.lastDecrease = lastDecrease;
+    }
+
+    public int getMinPerSecond() {
+        return minPerSecond;
+    }
+
+    public int getMaxPerSecond() {
+        return maxPerSecond;
+    }
+
+    public long getTargetLatencyMillis() {
+        return targetLatencyMillis;
+    }
+
+    public double getPerSecond() {
+        return perSecond;
+    }
+
+    public long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    public long getLastDecrease() {
+        return lastDecrease;
+    }
+
+    /**
+     * The rate the token bucket of the message class is refilled at
+     */
+    @JsonIgnore
+    public int getCurrentPerSecond() {
+        return (int) perSecond;
+    }
+
+    /**
+     * Applies a changed configuration, keeping the current rate within the new bounds
+     */
+    public void configure(int minPerSecond, int maxPerSecond, long targetLatencyMillis) {
+        this.minPerSecond = minPerSecond;
+        this.maxPerSecond = maxPerSecond;
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.perSecond = Math.max(minPerSecond, Math.min(maxPerSecond, perSecond));
+    }
+
+    /**
+     * Whether a message sent now should ask its leaf node for feedback, which is the case for one
+     * message per interval
+     */
+    public boolean shouldSample(long now, long intervalMillis) {
+        if (now - lastSampledAt < intervalMillis) {
+            return false;
+        }
+        lastSampledAt = now;
+        return true;
+    }
+
+    /**
+     * Adjusts the rate to the round trip latency of a message to a leaf node
+     */
+    public void update(long latencyMillis, long now) {
+        if (latencyMillis > targetLatencyMillis) {
+            if (now - lastDecrease >= DECREASE_INTERVAL_MILLIS) {
+                perSecond = Math.max(minPerSecond, perSecond * DECREASE_FACTOR);
+                lastDecrease = now;
+            }
+        } else if (now > lastUpdate) {
+            // a pause in the deliveries doesn't count as time spent at the current rate
+            long elapsed = Math.min(now - lastUpdate, DECREASE_INTERVAL_MILLIS);
+            perSecond = Math.min(maxPerSecond, perSecond + (maxPerSecond - minPerSecond) * elapsed / (double) RAMP_UP_MILLIS);
+        }
+        lastUpdate = now;
+    }
+}
@@ -0,0 +1,111 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.broadcast.messages.BroadcastAck;
+import org.elasticsoftware.elasticactors.broadcast.messages.BroadcastCompleted;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Aggregates the acknowledgements of the children of a node for a tracked broadcast, see
+ * {@link org.elasticsoftware.elasticactors.broadcast.messages.TrackedBroadcast}
+ */
+public final class BroadcastTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(BroadcastTracker.class);
+
+    private final String id;
+    private final ActorRef parent;
+    private final ActorRef replyTo;
+    private final long startedAt;
+    private final Set<ActorRef> pendingNodes = new HashSet<>();
+    private final List<Long> levelLatencies = new ArrayList<>();
+    private int members;
+    private int leafNodes;
+    private boolean complete = true;
+
+    /**
+     * @param parent  the node to acknowledge the broadcast to, {@code null} for the root
+     * @param replyTo the actor to send the {@link BroadcastCompleted} to when this is the root
+     * @param latency the time it took the broadcast to reach this node
+     */
+    public BroadcastTracker(String id, ActorRef parent, ActorRef replyTo, long startedAt, long latency) {
+        this.id = id;
+        this.parent = parent;
+        this.replyTo = replyTo;
+        this.startedAt = startedAt;
+        this.levelLatencies.add(latency);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ActorRef getParent() {
+        return parent;
+    }
+
+    public ActorRef getReplyTo() {
+        return replyTo;
+    }
+
+    /**
+     * Sets the nodes the tracker waits for
+     */
+    public void expect(Collection<ActorRef> nodes) {
+        this.pendingNodes.addAll(nodes);
+    }
+
+    /**
+     * The nodes that didn't acknowledge the broadcast yet
+     */
+    public Set<ActorRef> getPendingNodes() {
+        return pendingNodes;
+    }
+
+    public void handleAck(BroadcastAck ack, ActorRef node) {
+        if (!pendingNodes.remove(node)) {
+            // a late acknowledgement of a node that already expired, or from a node that was replaced
+            logger.trace("Ignoring acknowledgement of node [{}] to tracked broadcast [{}]", node, this.id);
+            return;
+        }
+        members += ack.getMembers();
+        leafNodes += ack.getLeafNodes();
+        complete &= ack.isComplete();
+        List<Long> latencies = ack.getLevelLatencies();
+        for (int i = 0; i < latencies.size(); i++) {
+            // the levels of the child start one level below this node
+            if (levelLatencies.size() <= i + 1) {
+                levelLatencies.add(latencies.get(i));
+            } else if (latencies.get(i) > levelLatencies.get(i + 1)) {
+                levelLatencies.set(i + 1, latencies.get(i));
+            }
+        }
+    }
+
+    public boolean isReady() {
+        return pendingNodes.isEmpty();
+    }
+
+    /**
+     * Gives up on the pending nodes, marking the broadcast as incomplete
+     */
+    public void expire() {
+        complete = complete && pendingNodes.isEmpty();
+        pendingNodes.clear();
+    }
+
+    public BroadcastAck toAck() {
+        return new BroadcastAck(id, members, leafNodes, levelLatencies, complete);
+    }
+
+    public BroadcastCompleted toCompleted(long now) {
+        return new BroadcastCompleted(id, members, leafNodes, now - startedAt, levelLatencies, complete);
+    }
+}
@@ -5,20 +5,33 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import org.elasticsoftware.elasticactors.ActorRef;
 import org.elasticsoftware.elasticactors.base.state.JacksonActorState;
+import org.elasticsoftware.elasticactors.broadcast.messages.rehash.MigrateRequest;
+import org.elasticsoftware.elasticactors.broadcast.serialization.CompactActorRefSetDeserializer;
+import org.elasticsoftware.elasticactors.broadcast.serialization.CompactActorRefSetSerializer;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_EMPTY;
 import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
 
+import static java.lang.String.format;
+
 /**
  * @author Joost van de Wijgerd
  */
@@ -26,67 +39,1076 @@ import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public final class BroadcasterState extends JacksonActorState {
 
-    private final int bucketsPerNode;
-    private final int bucketSize;
-    private final List<ActorRef> nodes;
-    private final Set<ActorRef> leaves;
-    private boolean leafNode = true;
-    private final transient Map<String, ThrottledBroadcastSession> throttledBroadcasts = new HashMap<>();
-    private int size;
+    public static final long DEFAULT_SIZE_REPORT_INTERVAL_MILLIS = 1000L;
+    public static final long DEFAULT_THROTTLED_BROADCAST_TIMEOUT_MILLIS = 10000L;
+    public static final int DEFAULT_MAX_THROTTLED_BROADCAST_SESSIONS = 1000;
+    public static final long DEFAULT_TRACKED_BROADCAST_TIMEOUT_MILLIS = 30000L;
+    public static final int DEFAULT_LEAF_DELIVERY_CHUNK_SIZE = 0;
+
+    private int bucketsPerNode;
+    private int bucketSize;
+    private final BucketPlacement placement;
+    private final List<ActorRef> nodes;
+    private final Set<ActorRef> leaves;
+    private Map<String, Set<ActorRef>> memberTags = new HashMap<>();
+    private Map<String, Set<String>> childTags = new HashMap<>();
+    private Map<Integer, Set<ActorRef>> memberWeights = new HashMap<>();
+    private Map<String, Integer> childWeights = new HashMap<>();
+    private boolean leafNode = true;
+    private final transient Map<String, ThrottledBroadcastSession> throttledBroadcasts = new LinkedHashMap<>();
+    private final transient Map<String, BroadcastTracker> trackedBroadcasts = new HashMap<>();
+    private final transient Deque<LeafDelivery> pendingLeafDeliveries = new ArrayDeque<>();
+    private int size;
+    private long coalesceWindowMillis;
+    private int coalesceMaxMembers;
+    private Map<String, PendingMembers> pendingMembers = new HashMap<>();
+    private boolean flushScheduled;
+    private boolean preSerializeBroadcasts;
+    private final ActorRef parent;
+    private Map<String, Integer> childSizes;
+    private int reportedSize;
+    // null for states persisted before weighted members were introduced
+    private Integer reportedWeight;
+    private boolean sizeReportScheduled;
+    private long sizeReportIntervalMillis;
+    private int mergeThreshold;
+    private int generation;
+    private long checkpointIntervalMillis;
+    private int checkpointMaxChanges;
+    private boolean checkpointScheduled;
+    private ActorRef rateLimiter;
+    private final ActorRef root;
+    private boolean leafNodeTracking;
+    // states persisted before the deadlines were introduced use the defaults
+    private long throttledBroadcastTimeoutMillis = DEFAULT_THROTTLED_BROADCAST_TIMEOUT_MILLIS;
+    private ThrottledBroadcastTimeoutPolicy throttledBroadcastTimeoutPolicy = ThrottledBroadcastTimeoutPolicy.DELIVER_PARTIAL;
+    private int maxThrottledBroadcastSessions = DEFAULT_MAX_THROTTLED_BROADCAST_SESSIONS;
+    private long trackedBroadcastTimeoutMillis = DEFAULT_TRACKED_BROADCAST_TIMEOUT_MILLIS;
+    private int leafDeliveryChunkSize = DEFAULT_LEAF_DELIVERY_CHUNK_SIZE;
+    private int deadMemberEvictionThreshold;
+    private int shardModulus;
+    private int shardResidue;
+    private long deduplicationWindowMillis;
+    private transient int uncheckpointedChanges;
+    private transient boolean persistenceRequested;
+    private transient Set<ActorRef> leafNodeCache;
+    private transient int leafNodeCacheVersion;
+    private transient int failedThrottledBroadcasts;
+    private final transient Map<ActorRef, Integer> undeliverableCounts = new HashMap<>();
+    private transient int evictedMembers;
+    private transient ActorRef deadMemberDetector;
+    private transient DeduplicationFilter deduplicationFilter;
+    private transient int duplicateBroadcasts;
+    private transient MemberHasher memberHasher;
+
+    // variables necessary for re-hashing process
+    private transient Boolean currentlyRehashing = false;
+    private transient Boolean rehashRoot = false;
+    private transient ActorRef rehashReplyTo = null;
+    private transient Set<ActorRef> rehashMembers = null;
+    private transient Map<String, Set<ActorRef>> rehashMemberTags = null;
+    private transient Map<Integer, Set<ActorRef>> rehashMemberWeights = null;
+    private transient Integer expectedRehashingReplies = 0;
+    private transient Integer receivedRehashingReplies = 0;
+    private transient List<Object> receivedDuringRehashing = new ArrayList<>();
+    private transient boolean merging = false;
+    private transient ActorRef mergeReplyTo = null;
+    private transient MigrateRequest deferredMigrateRequest = null;
+    private transient ActorRef deferredMigrateSender = null;
+
+    // variables necessary for the incremental resizing process
+    private transient ActorRef migrationReplyTo = null;
+    private transient List<ActorRef> migrationNodes = null;
+    private transient int expectedMigrationReplies = 0;
+    private transient int receivedMigrationReplies = 0;
+    private transient int migratedMembers = 0;
+    private transient long rehashStartedAt;
+
+    /**
+     * DEPRECATED: starting from version 2.1.0, the state's {@code throttleConfig} field has no
+     * function anymore and is provided solely for backwards compatibility reasons. See
+     * {@link org.elasticsoftware.elasticactors.broadcast.messages.UpdateThrottleConfig}.
+     */
+    @Deprecated
+    private ThrottleConfig throttleConfig;
+
+    public BroadcasterState(int bucketsPerNode, int bucketSize) {
+        this(bucketsPerNode, bucketSize, BucketPlacement.MODULO);
+    }
+
+    public BroadcasterState(int bucketsPerNode, int bucketSize, BucketPlacement placement) {
+        this(bucketsPerNode, bucketSize, placement, new HashSet<>());
+    }
+
+    public BroadcasterState(int bucketsPerNode, int bucketSize, Collection<ActorRef> leaves) {
+        this(bucketsPerNode, bucketSize, BucketPlacement.MODULO, leaves);
+    }
+
+    public BroadcasterState(
+            int bucketsPerNode,
+            int bucketSize,
+            BucketPlacement placement,
+            Collection<ActorRef> leaves) {
+        this(bucketsPerNode, bucketSize, placement, new LinkedList<>(), new HashSet<>(leaves), leaves.size(), null, null);
+        this.reportedSize = leaves.size();
+        this.sizeReportIntervalMillis = DEFAULT_SIZE_REPORT_INTERVAL_MILLIS;
+    }
+
+    /**
+     * The constructor of the versions before the placement was introduced. The node gets the
+     * defaults of all other settings.
+     */
+    public BroadcasterState(
+            int bucketsPerNode,
+            int bucketSize,
+            List<ActorRef> nodes,
+            Set<ActorRef> leaves,
+            int size,
+            ThrottleConfig throttleConfig) {
+        this(bucketsPerNode, bucketSize, null, nodes, leaves, size, null, null);
+        this.throttleConfig = throttleConfig;
+    }
+
+    /**
+     * Creates the state with the structure of the node. The settings of the node, and everything
+     * it keeps track of, are set through the setters, so the properties that are missing from
+     * states persisted by older versions keep their defaults.
+     */
+    @JsonCreator
+    public BroadcasterState(
+            @JsonProperty("bucketsPerNode") int bucketsPerNode,
+            @JsonProperty("bucketSize") int bucketSize,
+            @JsonProperty("placement") BucketPlacement placement,
+            @JsonProperty("nodes") List<ActorRef> nodes,
+            @JsonProperty("leaves") @JsonDeserialize(using = CompactActorRefSetDeserializer.class) Set<ActorRef> leaves,
+            @JsonProperty("size") int size,
+            @JsonProperty("parent") ActorRef parent,
+            @JsonProperty("root") ActorRef root) {
+        this.bucketsPerNode = bucketsPerNode;
+        this.bucketSize = bucketSize;
+        this.placement = placement;
+        this.nodes = nodes;
+        this.leaves = leaves;
+        this.size = size;
+        this.parent = parent;
+        this.root = root;
+    }
+
+    public int getBucketsPerNode() {
+        return bucketsPerNode;
+    }
+
+    public void setBucketsPerNode(int bucketsPerNode) {
+        this.bucketsPerNode = bucketsPerNode;
+    }
+
+    public int getBucketSize() {
+        return bucketSize;
+    }
+
+    public void setBucketSize(int bucketSize) {
+        this.bucketSize = bucketSize;
+    }
+
+    /**
+     * The placement used to map members onto the children of this node. States persisted before
+     * the placement was introduced use {@link BucketPlacement#MODULO}.
+     */
+    public BucketPlacement getPlacement() {
+        return placement != null ? placement : BucketPlacement.MODULO;
+    }
+
+    /**
+     * Creates the state for a new child node of this node, inheriting its configuration
+     */
+    public BroadcasterState newChildState(ActorRef parent, Collection<ActorRef> leaves) {
+        return newChildState(parent, leaves, null, null);
+    }
+
+    /**
+     * Creates the state for a new child node of this node, inheriting its configuration
+     *
+     * @param memberTags the tags of the members of the child, see {@link MemberTags}
+     * @param memberWeights the weights of the members of the child, see {@link MemberWeights}
+     */
+    public BroadcasterState newChildState(
+            ActorRef parent,
+            Collection<ActorRef> leaves,
+            Map<String, Set<ActorRef>> memberTags,
+            Map<Integer, Set<ActorRef>> memberWeights) {
+        BroadcasterState childState = new BroadcasterState(
+                bucketsPerNode,
+                bucketSize,
+                getPlacement(),
+                new LinkedList<>(),
+                new HashSet<>(leaves),
+                leaves.size(),
+                parent,
+                root != null ? root : parent);
+        childState.setCoalesceWindowMillis(coalesceWindowMillis);
+        childState.setCoalesceMaxMembers(coalesceMaxMembers);
+        childState.setPreSerializeBroadcasts(preSerializeBroadcasts);
+        childState.setReportedSize(leaves.size());
+        childState.setReportedWeight(MemberWeights.total(leaves.size(), memberWeights));
+        childState.setSizeReportIntervalMillis(sizeReportIntervalMillis);
+        childState.setMergeThreshold(mergeThreshold);
+        childState.setCheckpointIntervalMillis(checkpointIntervalMillis);
+        childState.setCheckpointMaxChanges(checkpointMaxChanges);
+        childState.setThrottledBroadcastTimeoutMillis(throttledBroadcastTimeoutMillis);
+        childState.setThrottledBroadcastTimeoutPolicy(throttledBroadcastTimeoutPolicy);
+        childState.setMaxThrottledBroadcastSessions(maxThrottledBroadcastSessions);
+        childState.setTrackedBroadcastTimeoutMillis(trackedBroadcastTimeoutMillis);
+        childState.setLeafDeliveryChunkSize(leafDeliveryChunkSize);
+        childState.setDeadMemberEvictionThreshold(deadMemberEvictionThreshold);
+        childState.setShardGroup(shardModulus, shardResidue);
+        childState.setDeduplicationWindowMillis(deduplicationWindowMillis);
+        childState.setMemberTags(memberTags);
+        childState.setMemberWeights(memberWeights);
+        return childState;
+    }
+
+    /**
+     * The tags of the members of this leaf node, mapping every tag onto the members that have it
+     * (see {@link MemberTags})
+     */
+    @JsonInclude(NON_EMPTY)
+    @JsonSerialize(contentUsing = CompactActorRefSetSerializer.class)
+    public Map<String, Set<ActorRef>> getMemberTags() {
+        return memberTags;
+    }
+
+    @JsonProperty("memberTags")
+    @JsonDeserialize(contentUsing = CompactActorRefSetDeserializer.class)
+    private void setMemberTags(Map<String, Set<ActorRef>> memberTags) {
+        this.memberTags = memberTags != null ? memberTags : new HashMap<>();
+    }
+
+    public void setTags(Collection<ActorRef> members, Set<String> tags) {
+        MemberTags.set(memberTags, members, tags);
+    }
+
+    public void removeTags(Collection<ActorRef> members) {
+        if (!memberTags.isEmpty()) {
+            MemberTags.remove(memberTags, members);
+        }
+    }
+
+    /**
+     * @return the members of this leaf node that have all of the given tags, or all members if
+     * there are no tags
+     */
+    public Set<ActorRef> getMatchingLeaves(Set<String> tags) {
+        return tags == null || tags.isEmpty() ? leaves : MemberTags.matching(memberTags, tags);
+    }
+
+    /**
+     * The weights of the members of this leaf node that don't have the default weight of 1,
+     * mapping every weight onto the members that have it (see {@link MemberWeights})
+     */
+    @JsonInclude(NON_EMPTY)
+    @JsonSerialize(contentUsing = CompactActorRefSetSerializer.class)
+    public Map<Integer, Set<ActorRef>> getMemberWeights() {
+        return memberWeights;
+    }
+
+    @JsonProperty("memberWeights")
+    @JsonDeserialize(contentUsing = CompactActorRefSetDeserializer.class)
+    private void setMemberWeights(Map<Integer, Set<ActorRef>> memberWeights) {
+        this.memberWeights = memberWeights != null ? memberWeights : new HashMap<>();
+    }
+
+    public void setWeights(Collection<ActorRef> members, Integer weight) {
+        MemberWeights.set(memberWeights, members, weight);
+    }
+
+    public void removeWeights(Collection<ActorRef> members) {
+        if (!memberWeights.isEmpty()) {
+            MemberWeights.remove(memberWeights, members);
+        }
+    }
+
+    /**
+     * The total weight of the members in the subtree of this node. Leaf nodes split once their
+     * weight exceeds {@code bucketSize}, so leaf nodes with heavy members have fewer of them and
+     * every leaf node does roughly the same amount of work per broadcast. For an interior node
+     * this is based on the weights last reported by its children, like {@link #getSize()}.
+     */
+    @JsonIgnore
+    public int getWeight() {
+        if (leafNode) {
+            return MemberWeights.total(leaves.size(), memberWeights);
+        }
+        int weight = size;
+        if (childSizes != null) {
+            for (Map.Entry<String, Integer> entry : childWeights.entrySet()) {
+                weight += entry.getValue() - childSizes.getOrDefault(entry.getKey(), 0);
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Whether this leaf node has outgrown its bucket. A leaf node with a single member doesn't
+     * split, however heavy that member is.
+     */
+    @JsonIgnore
+    public boolean shouldSplit() {
+        return leafNode && leaves.size() > 1 && getWeight() > bucketSize;
+    }
+
+    /**
+     * The tags that have been sent to every child of this interior node, keyed by the actor id of
+     * the child. A tag is not removed when the members that have it are removed, so like a bloom
+     * filter this can only tell that a subtree doesn't have any members with a tag. The tags are
+     * exact again after the node has been split, merged or rehashed.
+     */
+    @JsonInclude(NON_EMPTY)
+    public Map<String, Set<String>> getChildTags() {
+        return childTags;
+    }
+
+    @JsonProperty("childTags")
+    private void setChildTags(Map<String, Set<String>> childTags) {
+        this.childTags = childTags != null ? childTags : new HashMap<>();
+    }
+
+    public void addChildTags(String childId, Set<String> tags) {
+        if (tags != null) {
+            childTags.computeIfAbsent(childId, c -> new HashSet<>()).addAll(tags);
+        }
+    }
+
+    /**
+     * Gives every child all tags of its siblings, for when members move between them
+     */
+    public void shareChildTags(Collection<ActorRef> children) {
+        Set<String> allTags = new HashSet<>();
+        for (Set<String> tags : childTags.values()) {
+            allTags.addAll(tags);
+        }
+        childTags.clear();
+        if (!allTags.isEmpty()) {
+            for (ActorRef child : children) {
+                childTags.put(child.getActorId(), new HashSet<>(allTags));
+            }
+        }
+    }
+
+    /**
+     * @return the children of this interior node whose subtrees can have members with all of the
+     * given tags, or all children if there are no tags
+     */
+    @JsonIgnore
+    public Collection<ActorRef> getMatchingNodes(Set<String> tags) {
+        Collection<ActorRef> broadcastNodes = getBroadcastNodes();
+        if (tags == null || tags.isEmpty()) {
+            return broadcastNodes;
+        }
+        List<ActorRef> matchingNodes = new ArrayList<>(broadcastNodes.size());
+        for (ActorRef node : broadcastNodes) {
+            Set<String> nodeTags = childTags.get(node.getActorId());
+            if (nodeTags != null && nodeTags.containsAll(tags)) {
+                matchingNodes.add(node);
+            }
+        }
+        return matchingNodes;
+    }
+
+    /**
+     * When set on the root of a tree, members are mapped onto the children by the shard they live
+     * on rather than by their hash, and the nodes whose members all live on the same shard are
+     * created on that shard too. Most leaf nodes then deliver broadcasts to their members without
+     * crossing the network. Every level of the tree takes the next digit of the shard number in
+     * base {@code bucketsPerNode}, until the shard is known and the members are hashed again.
+     * Members that don't live on a shard (temp and service actors) are always hashed.
+     * <br>
+     * This needs to be set before the root splits. Trees with shard affinity can't be resized, as
+     * that would change the shards of all levels, but they can be rebuilt with a
+     * {@link org.elasticsoftware.elasticactors.broadcast.messages.rehash.RehashRequest}.
+     */
+    public void setShardAffinity(boolean shardAffinity) {
+        this.shardModulus = shardAffinity ? 1 : 0;
+        this.shardResidue = 0;
+    }
+
+    @JsonIgnore
+    public boolean isShardAffinity() {
+        return shardModulus > 0;
+    }
+
+    /**
+     * The shards of the members this node maps by shard are the ones congruent to
+     * {@code shardResidue} modulo this value. Zero if the tree doesn't use shard affinity.
+     */
+    public int getShardModulus() {
+        return shardModulus;
+    }
+
+    @JsonProperty("shardModulus")
+    private void setShardModulus(int shardModulus) {
+        this.shardModulus = shardModulus;
+    }
+
+    public int getShardResidue() {
+        return shardResidue;
+    }
+
+    @JsonProperty("shardResidue")
+    private void setShardResidue(int shardResidue) {
+        this.shardResidue = shardResidue;
+    }
+
+    public void setShardGroup(int shardModulus, int shardResidue) {
+        this.shardModulus = shardModulus;
+        this.shardResidue = shardResidue;
+    }
+
+    /**
+     * @return the shard all members of this node live on, or {@code -1} if that is not known
+     */
+    @JsonIgnore
+    public int getShard(int numberOfShards) {
+        return isShardAffinity() && shardModulus >= numberOfShards && shardResidue < numberOfShards
+                ? shardResidue
+                : -1;
+    }
+
+    /**
+     * @return the child of this node the member is mapped onto by its shard, or {@code -1} if it
+     * needs to be mapped by its hash
+     */
+    public int shardBucket(ActorRef member, int buckets, int numberOfShards) {
+        if (!isShardAffinity() || shardModulus >= numberOfShards) {
+            return -1;
+        }
+        int shard = ShardAffinity.shardOf(member);
+        return shard >= 0 ? (shard / shardModulus) % buckets : -1;
+    }
+
+    /**
+     * The number of times the children of this node have been replaced as a whole. Children of a
+     * new generation get new actor ids, so they can be created while the previous generation is
+     * still running.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    @JsonProperty("generation")
+    private void setGeneration(int generation) {
+        this.generation = generation;
+    }
+
+    public void nextGeneration() {
+        generation++;
+    }
+
+    /**
+     * The actor id of the child with the given index in the current generation
+     */
+    public String childId(String nodeId, int index) {
+        return generation == 0 ? format("%s/%d", nodeId, index) : format("%s/%d.%d", nodeId, generation, index);
+    }
+
+    public long getCoalesceWindowMillis() {
+        return coalesceWindowMillis;
+    }
+
+    /**
+     * When set to a positive value, interior nodes don't forward every {@code Add} and
+     * {@code Remove} to their children right away, but merge them per child and forward them
+     * once the window expires.
+     */
+    public void setCoalesceWindowMillis(long coalesceWindowMillis) {
+        this.coalesceWindowMillis = coalesceWindowMillis;
+    }
+
+    public int getCoalesceMaxMembers() {
+        return coalesceMaxMembers;
+    }
+
+    /**
+     * When set to a positive value, the pending membership changes are forwarded as soon as their
+     * number reaches this value, even if the coalescing window has not expired yet.
+     */
+    public void setCoalesceMaxMembers(int coalesceMaxMembers) {
+        this.coalesceMaxMembers = coalesceMaxMembers;
+    }
+
+    @JsonIgnore
+    public boolean isCoalescing() {
+        return coalesceWindowMillis > 0;
+    }
+
+    public Map<String, PendingMembers> getPendingMembers() {
+        return pendingMembers;
+    }
+
+    @JsonProperty("pendingMembers")
+    private void setPendingMembers(Map<String, PendingMembers> pendingMembers) {
+        this.pendingMembers = pendingMembers != null ? pendingMembers : new HashMap<>();
+    }
+
+    public PendingMembers pendingMembersFor(ActorRef node) {
+        return pendingMembers.computeIfAbsent(node.getActorId(), k -> new PendingMembers(node));
+    }
+
+    @JsonIgnore
+    public int getPendingMembersCount() {
+        int count = 0;
+        for (PendingMembers pending : pendingMembers.values()) {
+            count += pending.size();
+        }
+        return count;
+    }
+
+    /**
+     * Removes all pending membership changes, which the caller then forwards to the children
+     */
+    public List<PendingMembers> drainPendingMembers() {
+        List<PendingMembers> drained = new ArrayList<>(pendingMembers.values());
+        pendingMembers.clear();
+        return drained;
+    }
+
+    public boolean isPreSerializeBroadcasts() {
+        return preSerializeBroadcasts;
+    }
+
+    /**
+     * When set, the node that receives a broadcast serializes it once (with the serialization
+     * framework of the message) and sends the bytes down the tree, so they don't have to be
+     * serialized again for every child that lives on another node. The leaf nodes deserialize the
+     * message once before delivering it to their members.
+     */
+    public void setPreSerializeBroadcasts(boolean preSerializeBroadcasts) {
+        this.preSerializeBroadcasts = preSerializeBroadcasts;
+    }
+
+    public boolean isFlushScheduled() {
+        return flushScheduled;
+    }
+
+    public void setFlushScheduled(boolean flushScheduled) {
+        this.flushScheduled = flushScheduled;
+    }
+
+    /**
+     * The node this node reports its size to, {@code null} for the root and for nodes that were
+     * created before sizes were reported up the tree.
+     */
+    public ActorRef getParent() {
+        return parent;
+    }
+
+    /**
+     * The last reported size of every child, keyed by actor id. This is {@code null} for leaf
+     * nodes and for interior nodes that were created before sizes were reported up the tree, in
+     * which case {@link #getSize()} is an approximation. The reports are persisted at most once per
+     * size report interval (or with the next checkpoint), so the ones received in between are lost
+     * when the node crashes, until the children report a change again.
+     */
+    public Map<String, Integer> getChildSizes() {
+        return childSizes;
+    }
+
+    @JsonProperty("childSizes")
+    private void setChildSizes(Map<String, Integer> childSizes) {
+        this.childSizes = childSizes;
+    }
+
+    @JsonIgnore
+    public boolean isExactSize() {
+        return leafNode || childSizes != null;
+    }
+
+    /**
+     * The last reported weight of the children whose weight differs from their size, keyed by
+     * actor id (see {@link #getWeight()})
+     */
+    @JsonInclude(NON_EMPTY)
+    public Map<String, Integer> getChildWeights() {
+        return childWeights;
+    }
+
+    @JsonProperty("childWeights")
+    private void setChildWeights(Map<String, Integer> childWeights) {
+        this.childWeights = childWeights != null ? childWeights : new HashMap<>();
+    }
+
+    /**
+     * Starts tracking the size and weight of the given children, which contain the given number
+     * of members with the given total weight
+     */
+    public void initChildSizes(Map<String, Integer> childSizes, Map<String, Integer> childWeights) {
+        this.childSizes = new HashMap<>(childSizes);
+        this.childWeights.clear();
+        this.size = 0;
+        for (Map.Entry<String, Integer> entry : childSizes.entrySet()) {
+            this.size += entry.getValue();
+            setChildWeight(entry.getKey(), entry.getValue(), childWeights.getOrDefault(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    public void addChildSize(String childId, int childSize) {
+        addChildSize(childId, childSize, childSize);
+    }
+
+    public void addChildSize(String childId, int childSize, int childWeight) {
+        if (childSizes != null) {
+            Integer previous = childSizes.put(childId, childSize);
+            size += childSize - (previous != null ? previous : 0);
+            setChildWeight(childId, childSize, childWeight);
+        }
+    }
+
+    private void setChildWeight(String childId, int childSize, int childWeight) {
+        if (childWeight != childSize) {
+            childWeights.put(childId, childWeight);
+        } else {
+            childWeights.remove(childId);
+        }
+    }
+
+    public void removeChildSize(String childId) {
+        if (childSizes != null) {
+            Integer previous = childSizes.remove(childId);
+            if (previous != null) {
+                size -= previous;
+            }
+            childWeights.remove(childId);
+        }
+    }
+
+    /**
+     * Updates the size and weight of a child, provided it is one of the children this node keeps
+     * track of.
+     *
+     * @return {@code true} if the size was updated
+     */
+    public boolean updateChildSize(String childId, int childSize, int childWeight) {
+        if (childSizes == null || !childSizes.containsKey(childId)) {
+            return false;
+        }
+        addChildSize(childId, childSize, childWeight);
+        return true;
+    }
+
+    public void clearChildSizes() {
+        this.childSizes = null;
+        this.childWeights.clear();
+        this.size = 0;
+    }
+
+    public int getReportedSize() {
+        return reportedSize;
+    }
+
+    public void setReportedSize(int reportedSize) {
+        this.reportedSize = reportedSize;
+    }
+
+    public int getReportedWeight() {
+        // without weighted members, the weight of a node equals its size
+        return reportedWeight != null ? reportedWeight : reportedSize;
+    }
+
+    public void setReportedWeight(int reportedWeight) {
+        this.reportedWeight = reportedWeight;
+    }
+
+    public boolean isSizeReportScheduled() {
+        return sizeReportScheduled;
+    }
+
+    public void setSizeReportScheduled(boolean sizeReportScheduled) {
+        this.sizeReportScheduled = sizeReportScheduled;
+    }
+
+    public long getSizeReportIntervalMillis() {
+        return sizeReportIntervalMillis;
+    }
+
+    /**
+     * The interval at which a node reports a changed size to its parent. Changes within the
+     * interval are reported at once. When set to zero, every change is reported immediately.
+     */
+    public void setSizeReportIntervalMillis(long sizeReportIntervalMillis) {
+        this.sizeReportIntervalMillis = sizeReportIntervalMillis;
+    }
+
+    public int getMergeThreshold() {
+        return mergeThreshold;
+    }
+
+    /**
+     * When set to a positive value, an interior node whose subtree contains no more than this
+     * number of members (or total weight, see {@link #getWeight()}) collects them and becomes a
+     * leaf node again, stopping its children. Together with the split of leaves that grow beyond
+     * {@code bucketSize} this keeps the tree balanced. The threshold should be well below
+     * {@code bucketSize} (for instance half of it) so nodes don't keep merging and splitting. Only
+     * nodes that know the exact size of their children merge, see {@link #isExactSize()}.
+     */
+    public void setMergeThreshold(int mergeThreshold) {
+        this.mergeThreshold = mergeThreshold;
+    }
+
+    public long getCheckpointIntervalMillis() {
+        return checkpointIntervalMillis;
+    }
+
+    /**
+     * When set to a positive value, the node doesn't persist its state after every {@code Add} and
+     * {@code Remove} (nor after the coalesced changes are flushed and sizes are reported), but at
+     * most once per interval (and when {@code checkpointMaxChanges} changes have been received).
+     * This reduces the number of writes to the state store when the membership changes often, at
+     * the cost of losing the changes since the last checkpoint when the node crashes before the
+     * next one.
+     */
+    public void setCheckpointIntervalMillis(long checkpointIntervalMillis) {
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+    }
+
+    @JsonIgnore
+    public boolean isCheckpointing() {
+        return checkpointIntervalMillis > 0;
+    }
+
+    public int getCheckpointMaxChanges() {
+        return checkpointMaxChanges;
+    }
+
+    /**
+     * When set to a positive value, the state is persisted as soon as this number of membership
+     * changes have been received since the last checkpoint, even if the interval has not expired.
+     */
+    public void setCheckpointMaxChanges(int checkpointMaxChanges) {
+        this.checkpointMaxChanges = checkpointMaxChanges;
+    }
+
+    public boolean isCheckpointScheduled() {
+        return checkpointScheduled;
+    }
+
+    public void setCheckpointScheduled(boolean checkpointScheduled) {
+        this.checkpointScheduled = checkpointScheduled;
+    }
+
+    @JsonIgnore
+    public int getUncheckpointedChanges() {
+        return uncheckpointedChanges;
+    }
+
+    @JsonIgnore
+    public void incrementUncheckpointedChanges() {
+        uncheckpointedChanges++;
+    }
+
+    @JsonIgnore
+    public void resetUncheckpointedChanges() {
+        uncheckpointedChanges = 0;
+    }
+
+    /**
+     * The actor that delivers the throttled broadcasts of this tree, only set on the root
+     */
+    public ActorRef getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public void setRateLimiter(ActorRef rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * The root of the tree this node belongs to, {@code null} for the root itself and for nodes
+     * that were created before the root was tracked
+     */
+    public ActorRef getRoot() {
+        return root;
+    }
+
+    /**
+     * Whether all nodes below this root report changes of the leaf nodes, which is the case for
+     * trees that were split (or rebuilt with a {@code RehashRequest}) after this was introduced.
+     * Only then the root caches the leaf nodes of the tree.
+     */
+    public boolean isLeafNodeTracking() {
+        return leafNodeTracking;
+    }
+
+    public void setLeafNodeTracking(boolean leafNodeTracking) {
+        this.leafNodeTracking = leafNodeTracking;
+    }
+
+    /**
+     * The leaf nodes of the tree as known by the root, or {@code null} when they need to be
+     * collected from the tree
+     */
+    @JsonIgnore
+    public Set<ActorRef> getLeafNodeCache() {
+        return leafNodeCache;
+    }
+
+    @JsonIgnore
+    public void setLeafNodeCache(Set<ActorRef> leafNodeCache) {
+        this.leafNodeCache = leafNodeCache;
+    }
 
-    // variables necessary for re-hashing process
-    private transient Boolean currentlyRehashing = false;
-    private transient Boolean rehashRoot = false;
-    private transient ActorRef rehashReplyTo = null;
-    private transient Set<ActorRef> rehashMembers = null;
-    private transient Integer expectedRehashingReplies = 0;
-    private transient Integer receivedRehashingReplies = 0;
-    private transient List<Object> receivedDuringRehashing = new ArrayList<>();
+    /**
+     * Incremented on every change of the leaf nodes, so leaf nodes that were collected while the
+     * tree changed are not cached
+     */
+    @JsonIgnore
+    public int getLeafNodeCacheVersion() {
+        return leafNodeCacheVersion;
+    }
+
+    @JsonIgnore
+    public void updateLeafNodeCache(Collection<ActorRef> removed, Collection<ActorRef> added) {
+        if (leafNodeCache != null) {
+            leafNodeCache.removeAll(removed);
+            leafNodeCache.addAll(added);
+        }
+        leafNodeCacheVersion++;
+    }
+
+    @JsonIgnore
+    public void invalidateLeafNodeCache() {
+        leafNodeCache = null;
+        leafNodeCacheVersion++;
+    }
+
+    public long getThrottledBroadcastTimeoutMillis() {
+        return throttledBroadcastTimeoutMillis;
+    }
 
     /**
-     * DEPRECATED: starting from version 2.1.0, the state's {@code throttleConfig} field has no
-     * function anymore and is provided solely for backwards compatibility reasons. See
-     * {@link org.elasticsoftware.elasticactors.broadcast.messages.UpdateThrottleConfig}.
+     * The time the root waits for the leaf nodes of a throttled broadcast. Every level of the tree
+     * gets half of the time of its parent, so the leaf nodes collected by a slow subtree still
+     * reach the root before its deadline. When set to zero, the nodes wait for all of their
+     * children.
      */
-    @Deprecated
-    private ThrottleConfig throttleConfig;
+    public void setThrottledBroadcastTimeoutMillis(long throttledBroadcastTimeoutMillis) {
+        this.throttledBroadcastTimeoutMillis = throttledBroadcastTimeoutMillis;
+    }
 
-    public BroadcasterState(int bucketsPerNode, int bucketSize) {
-        this(bucketsPerNode, bucketSize, new LinkedList<>(), new HashSet<>(), 0, null);
+    public ThrottledBroadcastTimeoutPolicy getThrottledBroadcastTimeoutPolicy() {
+        return throttledBroadcastTimeoutPolicy;
     }
 
-    public BroadcasterState(int bucketsPerNode, int bucketSize, Collection<ActorRef> leaves) {
-        this(
-                bucketsPerNode,
-                bucketSize,
-                new LinkedList<>(),
-                new HashSet<>(leaves),
-                leaves.size(),
-                null);
+    public void setThrottledBroadcastTimeoutPolicy(ThrottledBroadcastTimeoutPolicy throttledBroadcastTimeoutPolicy) {
+        this.throttledBroadcastTimeoutPolicy = throttledBroadcastTimeoutPolicy;
     }
 
-    @JsonCreator
-    public BroadcasterState(
-            @JsonProperty("bucketsPerNode") int bucketsPerNode,
-            @JsonProperty("bucketSize") int bucketSize,
-            @JsonProperty("nodes") List<ActorRef> nodes,
-            @JsonProperty("leaves") Set<ActorRef> leaves,
-            @JsonProperty("size") int size,
-            @Deprecated @JsonProperty("throttleConfig") ThrottleConfig throttleConfig) {
-        this.bucketsPerNode = bucketsPerNode;
-        this.bucketSize = bucketSize;
-        this.nodes = nodes;
-        this.leaves = leaves;
-        this.size = size;
-        this.throttleConfig = throttleConfig;
+    public int getMaxThrottledBroadcastSessions() {
+        return maxThrottledBroadcastSessions;
     }
 
-    public int getBucketsPerNode() {
-        return bucketsPerNode;
+    /**
+     * The maximum number of throttled broadcast sessions of a node. When a new session is started,
+     * the oldest one is expired as if its deadline passed. When set to zero, the number of
+     * sessions is not limited.
+     */
+    public void setMaxThrottledBroadcastSessions(int maxThrottledBroadcastSessions) {
+        this.maxThrottledBroadcastSessions = maxThrottledBroadcastSessions;
     }
 
-    public int getBucketSize() {
-        return bucketSize;
+    public long getTrackedBroadcastTimeoutMillis() {
+        return trackedBroadcastTimeoutMillis;
+    }
+
+    /**
+     * The time the root waits for the acknowledgements of a tracked broadcast before it reports
+     * an incomplete {@link org.elasticsoftware.elasticactors.broadcast.messages.BroadcastCompleted}.
+     * Like the deadlines of throttled broadcasts, every level of the tree gets half of the time of
+     * its parent. When set to zero, the nodes wait for all of their children.
+     */
+    public void setTrackedBroadcastTimeoutMillis(long trackedBroadcastTimeoutMillis) {
+        this.trackedBroadcastTimeoutMillis = trackedBroadcastTimeoutMillis;
+    }
+
+    public int getLeafDeliveryChunkSize() {
+        return leafDeliveryChunkSize;
+    }
+
+    /**
+     * The maximum number of members a leaf node delivers a broadcast to while handling a single
+     * message. Larger leaf nodes deliver the rest in later chunks, so they don't hold on to the
+     * thread of their shard for the whole delivery. Broadcasts that arrive in the meantime are
+     * delivered after the ones before them. When set to zero, which is the default, broadcasts
+     * are delivered at once. The broadcasts that are still being delivered are not persisted, see
+     * {@link #getPendingLeafDeliveries()}.
+     */
+    public void setLeafDeliveryChunkSize(int leafDeliveryChunkSize) {
+        this.leafDeliveryChunkSize = leafDeliveryChunkSize;
+    }
+
+    /**
+     * The broadcasts this leaf node is delivering in chunks, in order of arrival. These are not
+     * persisted, so they are lost when the actor is moved to another node in the meantime.
+     */
+    @JsonIgnore
+    public Deque<LeafDelivery> getPendingLeafDeliveries() {
+        return pendingLeafDeliveries;
+    }
+
+    public int getDeadMemberEvictionThreshold() {
+        return deadMemberEvictionThreshold;
+    }
+
+    /**
+     * When set to a positive value, a leaf node removes a member once this number of broadcasts
+     * could not be delivered to it, because the actor doesn't exist anymore. Adding the member
+     * again resets its count. Undeliverable messages are returned to their sender, so the leaf
+     * node sends the broadcasts that don't have a sender from a
+     * {@link org.elasticsoftware.elasticactors.broadcast.DeadMemberDetector}, and only those
+     * count. Broadcasts with a sender keep it, as the members may reply to it.
+     */
+    public void setDeadMemberEvictionThreshold(int deadMemberEvictionThreshold) {
+        this.deadMemberEvictionThreshold = deadMemberEvictionThreshold;
+    }
+
+    @JsonIgnore
+    public boolean isEvictingDeadMembers() {
+        return deadMemberEvictionThreshold > 0;
+    }
+
+    /**
+     * Counts a failed delivery to a member of this leaf node. The counts are not persisted, so
+     * they start over when the actor is activated again.
+     *
+     * @return {@code true} if the member has reached the {@code deadMemberEvictionThreshold}
+     */
+    public boolean incrementUndeliverableCount(ActorRef member) {
+        return undeliverableCounts.merge(member, 1, Integer::sum) >= deadMemberEvictionThreshold;
+    }
+
+    public void resetUndeliverableCounts(Collection<ActorRef> members) {
+        if (!undeliverableCounts.isEmpty()) {
+            for (ActorRef member : members) {
+                undeliverableCounts.remove(member);
+            }
+        }
+    }
+
+    /**
+     * The temp actor this leaf node sends the broadcasts without a sender from, {@code null} if it
+     * hasn't been created since the leaf node was activated
+     */
+    @JsonIgnore
+    public ActorRef getDeadMemberDetector() {
+        return deadMemberDetector;
+    }
+
+    @JsonIgnore
+    public void setDeadMemberDetector(ActorRef deadMemberDetector) {
+        this.deadMemberDetector = deadMemberDetector;
+    }
+
+    /**
+     * The number of members this leaf node evicted since it was activated
+     */
+    @JsonIgnore
+    public int getEvictedMembers() {
+        return evictedMembers;
+    }
+
+    @JsonIgnore
+    public void incrementEvictedMembers() {
+        evictedMembers++;
+    }
+
+    public long getDeduplicationWindowMillis() {
+        return deduplicationWindowMillis;
+    }
+
+    /**
+     * When set to a positive value, the root assigns an id to every broadcast and the leaf nodes
+     * deliver a broadcast only once within this window, so redelivered messages don't reach the
+     * members twice. The messages are passed down the tree serialized, like with
+     * {@code preSerializeBroadcasts}, except those the codec can't serialize, which are not
+     * deduplicated. Tracked broadcasts are deduplicated by the id they were given. See
+     * {@link DeduplicationFilter} for the memory it takes.
+     * <br>
+     * The ids are only kept in memory, so they don't add to the writes of the state store. A leaf
+     * node that is activated again, after a restart or when its shard moved to another node,
+     * starts with an empty filter and delivers a broadcast that is redelivered to it at that
+     * point once more.
+     */
+    public void setDeduplicationWindowMillis(long deduplicationWindowMillis) {
+        this.deduplicationWindowMillis = deduplicationWindowMillis;
+    }
+
+    @JsonIgnore
+    public boolean isDeduplicating() {
+        return deduplicationWindowMillis > 0;
+    }
+
+    /**
+     * Remembers that this leaf node delivered the broadcast with the given id. The ids are not
+     * persisted, so they are forgotten when the actor is activated again.
+     *
+     * @return {@code true} if the broadcast was delivered before within the deduplication window
+     */
+    public boolean isDuplicateBroadcast(String broadcastId, long now) {
+        if (deduplicationFilter == null || deduplicationFilter.getWindowMillis() != deduplicationWindowMillis) {
+            deduplicationFilter = new DeduplicationFilter(
+                    deduplicationWindowMillis,
+                    DeduplicationFilter.DEFAULT_CAPACITY,
+                    now);
+        }
+        if (deduplicationFilter.add(broadcastId, now)) {
+            return false;
+        }
+        duplicateBroadcasts++;
+        return true;
+    }
+
+    /**
+     * The number of duplicate broadcasts this leaf node dropped since it was activated
+     */
+    @JsonIgnore
+    public int getDuplicateBroadcasts() {
+        return duplicateBroadcasts;
+    }
+
+    /**
+     * The number of throttled broadcasts this node dropped since it was activated, see
+     * {@link ThrottledBroadcastTimeoutPolicy#FAIL}
+     */
+    @JsonIgnore
+    public int getFailedThrottledBroadcasts() {
+        return failedThrottledBroadcasts;
+    }
+
+    @JsonIgnore
+    public void incrementFailedThrottledBroadcasts() {
+        failedThrottledBroadcasts++;
+    }
+
+    /**
+     * Whether the state needs to be persisted after the current message, even if the message is
+     * not persisted otherwise
+     */
+    @JsonIgnore
+    public boolean isPersistenceRequested() {
+        return persistenceRequested;
+    }
+
+    @JsonIgnore
+    public void setPersistenceRequested(boolean persistenceRequested) {
+        this.persistenceRequested = persistenceRequested;
+    }
+
+    @JsonIgnore
+    public boolean shouldMerge() {
+        return mergeThreshold > 0
+                && !leafNode
+                && childSizes != null
+                && getWeight() <= Math.min(mergeThreshold, bucketSize)
+                && !currentlyRehashing
+                && !isCurrentlyMigrating();
     }
 
     public boolean isLeafNode() {
@@ -101,10 +1123,20 @@ public final class BroadcasterState extends JacksonActorState {
         return nodes;
     }
 
+    /**
+     * The members of this node, persisted with the ref spec prefix of every shard only once when
+     * the compact format is enabled (see {@link CompactActorRefSetSerializer})
+     */
+    @JsonSerialize(using = CompactActorRefSetSerializer.class)
     public Set<ActorRef> getLeaves() {
         return leaves;
     }
 
+    /**
+     * The number of members in the subtree of this node. For an interior node this is the sum of
+     * the sizes last reported by its children, so it may lag behind by up to the size report
+     * interval of each level.
+     */
     public int getSize() {
         return leafNode ? leaves.size() : size;
     }
@@ -129,16 +1161,47 @@ public final class BroadcasterState extends JacksonActorState {
         this.throttleConfig = throttleConfig;
     }
 
+    @JsonIgnore
+    public MemberHasher getMemberHasher() {
+        return memberHasher;
+    }
+
+    @JsonIgnore
+    public void setMemberHasher(MemberHasher memberHasher) {
+        this.memberHasher = memberHasher;
+    }
+
+    /**
+     * Only used for interior nodes that don't know the size of their children, see
+     * {@link #isExactSize()}
+     */
     public void incrementSize(int increment) {
         size += increment;
     }
 
+    /**
+     * Only used for interior nodes that don't know the size of their children, see
+     * {@link #isExactSize()}
+     */
     public void decrementSize(int decrement) {
         size -= decrement;
     }
 
-    public void addThrottledBroadcastSession(ThrottledBroadcastSession session) {
+    /**
+     * Adds the session, evicting the oldest session when this node already has
+     * {@code maxThrottledBroadcastSessions} sessions
+     *
+     * @return the evicted session, or {@code null}
+     */
+    public ThrottledBroadcastSession addThrottledBroadcastSession(ThrottledBroadcastSession session) {
+        ThrottledBroadcastSession evicted = null;
+        if (maxThrottledBroadcastSessions > 0 && throttledBroadcasts.size() >= maxThrottledBroadcastSessions) {
+            Iterator<ThrottledBroadcastSession> iterator = throttledBroadcasts.values().iterator();
+            evicted = iterator.next();
+            iterator.remove();
+        }
         this.throttledBroadcasts.put(session.getId(),session);
+        return evicted;
     }
 
     public ThrottledBroadcastSession getThrottledBroadcastSession(String id) {
@@ -149,6 +1212,37 @@ public final class BroadcasterState extends JacksonActorState {
         return this.throttledBroadcasts.remove(id);
     }
 
+    @JsonIgnore
+    public int getThrottledBroadcastSessionCount() {
+        return this.throttledBroadcasts.size();
+    }
+
+    public void addTrackedBroadcast(BroadcastTracker tracker) {
+        this.trackedBroadcasts.put(tracker.getId(), tracker);
+    }
+
+    public BroadcastTracker getTrackedBroadcast(String id) {
+        return this.trackedBroadcasts.get(id);
+    }
+
+    public BroadcastTracker removeTrackedBroadcast(String id) {
+        return this.trackedBroadcasts.remove(id);
+    }
+
+    /**
+     * The time this node started rebuilding its subtree, for the rehash, merge or resize that is
+     * in progress
+     */
+    @JsonIgnore
+    public long getRehashStartedAt() {
+        return rehashStartedAt;
+    }
+
+    @JsonIgnore
+    public void setRehashStartedAt(long rehashStartedAt) {
+        this.rehashStartedAt = rehashStartedAt;
+    }
+
     @JsonIgnore
     public Boolean getCurrentlyRehashing() {
         return currentlyRehashing;
@@ -187,6 +1281,26 @@ public final class BroadcasterState extends JacksonActorState {
         this.rehashMembers = rehashMembers;
     }
 
+    @JsonIgnore
+    public Map<String, Set<ActorRef>> getRehashMemberTags() {
+        return rehashMemberTags;
+    }
+
+    @JsonIgnore
+    public void setRehashMemberTags(Map<String, Set<ActorRef>> rehashMemberTags) {
+        this.rehashMemberTags = rehashMemberTags;
+    }
+
+    @JsonIgnore
+    public Map<Integer, Set<ActorRef>> getRehashMemberWeights() {
+        return rehashMemberWeights;
+    }
+
+    @JsonIgnore
+    public void setRehashMemberWeights(Map<Integer, Set<ActorRef>> rehashMemberWeights) {
+        this.rehashMemberWeights = rehashMemberWeights;
+    }
+
     @JsonIgnore
     public Integer getExpectedRehashingReplies() {
         return expectedRehashingReplies;
@@ -221,4 +1335,126 @@ public final class BroadcasterState extends JacksonActorState {
     public void setReceivedDuringRehashing(List<Object> receivedDuringRehashing) {
         this.receivedDuringRehashing = receivedDuringRehashing;
     }
+
+    @JsonIgnore
+    public boolean isMerging() {
+        return merging;
+    }
+
+    @JsonIgnore
+    public void setMerging(boolean merging) {
+        this.merging = merging;
+    }
+
+    /**
+     * The parent that asked for the members of this node while it was merging its subtree
+     */
+    @JsonIgnore
+    public ActorRef getMergeReplyTo() {
+        return mergeReplyTo;
+    }
+
+    @JsonIgnore
+    public void setMergeReplyTo(ActorRef mergeReplyTo) {
+        this.mergeReplyTo = mergeReplyTo;
+    }
+
+    @JsonIgnore
+    public MigrateRequest getDeferredMigrateRequest() {
+        return deferredMigrateRequest;
+    }
+
+    @JsonIgnore
+    public ActorRef getDeferredMigrateSender() {
+        return deferredMigrateSender;
+    }
+
+    /**
+     * Stores a migrate request that was received while this node was merging its subtree, to be
+     * handled once the node has become a leaf node
+     */
+    @JsonIgnore
+    public void setDeferredMigrateRequest(MigrateRequest deferredMigrateRequest, ActorRef deferredMigrateSender) {
+        this.deferredMigrateRequest = deferredMigrateRequest;
+        this.deferredMigrateSender = deferredMigrateSender;
+    }
+
+    /**
+     * The children a broadcast needs to be sent to. While this node is being resized, this
+     * includes both the current and the newly created children.
+     */
+    @JsonIgnore
+    public Collection<ActorRef> getBroadcastNodes() {
+        if (migrationNodes == null) {
+            return nodes;
+        }
+        Set<ActorRef> broadcastNodes = new LinkedHashSet<>(nodes);
+        broadcastNodes.addAll(migrationNodes);
+        return broadcastNodes;
+    }
+
+    @JsonIgnore
+    public boolean isCurrentlyMigrating() {
+        return migrationReplyTo != null || migrationNodes != null;
+    }
+
+    @JsonIgnore
+    public ActorRef getMigrationReplyTo() {
+        return migrationReplyTo;
+    }
+
+    @JsonIgnore
+    public void setMigrationReplyTo(ActorRef migrationReplyTo) {
+        this.migrationReplyTo = migrationReplyTo;
+    }
+
+    @JsonIgnore
+    public List<ActorRef> getMigrationNodes() {
+        return migrationNodes;
+    }
+
+    @JsonIgnore
+    public void setMigrationNodes(List<ActorRef> migrationNodes) {
+        this.migrationNodes = migrationNodes;
+    }
+
+    @JsonIgnore
+    public int getExpectedMigrationReplies() {
+        return expectedMigrationReplies;
+    }
+
+    @JsonIgnore
+    public void setExpectedMigrationReplies(int expectedMigrationReplies) {
+        this.expectedMigrationReplies = expectedMigrationReplies;
+    }
+
+    @JsonIgnore
+    public int getReceivedMigrationReplies() {
+        return receivedMigrationReplies;
+    }
+
+    @JsonIgnore
+    public void setReceivedMigrationReplies(int receivedMigrationReplies) {
+        this.receivedMigrationReplies = receivedMigrationReplies;
+    }
+
+    @JsonIgnore
+    public void incrementReceivedMigrationReplies() {
+        this.receivedMigrationReplies++;
+    }
+
+    @JsonIgnore
+    public int getMigratedMembers() {
+        return migratedMembers;
+    }
+
+    @JsonIgnore
+    public void setMigratedMembers(int migratedMembers) {
+        this.migratedMembers = migratedMembers;
+    }
+
+    @JsonIgnore
+    public void incrementMigratedMembers(int migratedMembers) {
+        this.migratedMembers += migratedMembers;
+    }
 }
@@ -0,0 +1,38 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.UnsignedInts;
+
+/**
+ * Strategy used by a {@link org.elasticsoftware.elasticactors.broadcast.Broadcaster} node to map
+ * a member onto one of its children.
+ * <br>
+ * {@link #MODULO} is the original placement and remaps almost every member when the number of
+ * buckets changes. {@link #JUMP_CONSISTENT_HASH} only moves the members of the buckets that were
+ * added or removed, which allows the tree to be resized incrementally.
+ */
+public enum BucketPlacement {
+
+    MODULO {
+        @Override
+        public int bucket(int hash, int buckets) {
+            return Math.abs(hash % buckets);
+        }
+    },
+
+    JUMP_CONSISTENT_HASH {
+        @Override
+        public int bucket(int hash, int buckets) {
+            return Hashing.consistentHash(UnsignedInts.toLong(hash), buckets);
+        }
+    };
+
+    /**
+     * Maps a member hash onto a bucket in the range {@code [0, buckets)}
+     *
+     * @param hash the hash of the member, as computed by {@link MemberHasher}
+     * @param buckets the number of buckets
+     * @return the index of the bucket
+     */
+    public abstract int bucket(int hash, int buckets);
+}
@@ -0,0 +1,64 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Remembers the ids of the broadcasts a leaf node delivered recently, so a broadcast that reaches
+ * it again is not delivered twice. The ids are kept in two bloom filters of a fixed size: new ids
+ * are added to the current one, which replaces the previous one once it is older than the window
+ * or holds {@code capacity} ids. An id is therefore remembered for at least the window, unless
+ * the leaf node receives more than {@code capacity} broadcasts within it.
+ * <br>
+ * A false positive drops a broadcast that was not delivered before, which is why the filters are
+ * sized for a very low false positive probability.
+ */
+public final class DeduplicationFilter {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final double FALSE_POSITIVE_PROBABILITY = 1.0E-6;
+
+    private final long windowMillis;
+    private final int capacity;
+    private BloomFilter<CharSequence> current;
+    private BloomFilter<CharSequence> previous;
+    private long rotatedAt;
+    private int insertions;
+
+    public DeduplicationFilter(long windowMillis, int capacity, long now) {
+        this.windowMillis = windowMillis;
+        this.capacity = capacity;
+        this.current = newBloomFilter();
+        this.rotatedAt = now;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Adds the id of a broadcast
+     *
+     * @return {@code false} if the id was added before (or the filters consider it to be)
+     */
+    public boolean add(String broadcastId, long now) {
+        if (now - rotatedAt >= windowMillis || insertions >= capacity) {
+            previous = current;
+            current = newBloomFilter();
+            rotatedAt = now;
+            insertions = 0;
+        }
+        if (current.mightContain(broadcastId) || (previous != null && previous.mightContain(broadcastId))) {
+            return false;
+        }
+        current.put(broadcastId);
+        insertions++;
+        return true;
+    }
+
+    private BloomFilter<CharSequence> newBloomFilter() {
+        return BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), capacity, FALSE_POSITIVE_PROBABILITY);
+    }
+}
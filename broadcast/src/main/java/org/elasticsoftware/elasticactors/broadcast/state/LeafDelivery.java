@@ -0,0 +1,70 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.broadcast.messages.TrackedDelivery;
+
+import java.util.Collection;
+
+/**
+ * A broadcast a leaf node is delivering in chunks, see
+ * {@link BroadcasterState#setLeafDeliveryChunkSize(int)}. The members are copied when the
+ * broadcast arrives, so membership changes in between chunks don't affect it.
+ */
+public final class LeafDelivery {
+
+    private final Object message;
+    private final ActorRef sender;
+    private final ActorRef[] members;
+    private int next;
+    private TrackedDelivery trackedDelivery;
+    private ActorRef trackedReplyTo;
+    private long trackedLatency;
+
+    public LeafDelivery(Object message, ActorRef sender, Collection<ActorRef> members) {
+        this.message = message;
+        this.sender = sender;
+        this.members = members.toArray(new ActorRef[0]);
+    }
+
+    public Object getMessage() {
+        return message;
+    }
+
+    public ActorRef getSender() {
+        return sender;
+    }
+
+    public int getSize() {
+        return members.length;
+    }
+
+    public boolean hasNext() {
+        return next < members.length;
+    }
+
+    public ActorRef next() {
+        return members[next++];
+    }
+
+    /**
+     * The tracked delivery to acknowledge once the last chunk has been sent, {@code null} if the
+     * broadcast is not tracked
+     */
+    public TrackedDelivery getTrackedDelivery() {
+        return trackedDelivery;
+    }
+
+    public ActorRef getTrackedReplyTo() {
+        return trackedReplyTo;
+    }
+
+    public long getTrackedLatency() {
+        return trackedLatency;
+    }
+
+    public void setTrackedDelivery(TrackedDelivery trackedDelivery, ActorRef trackedReplyTo, long trackedLatency) {
+        this.trackedDelivery = trackedDelivery;
+        this.trackedReplyTo = trackedReplyTo;
+        this.trackedLatency = trackedLatency;
+    }
+}
@@ -0,0 +1,147 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Computes the hash that is used to assign a member to a bucket of a
+ * {@link org.elasticsoftware.elasticactors.broadcast.Broadcaster} node.
+ * <br>
+ * The hash is the 32-bit murmur3 hash of the UTF-8 encoded string {@code "<nodeId>:<member>"},
+ * which is what the broadcaster has always used. Instead of formatting that string for every
+ * member, the murmur3 state after hashing the {@code "<nodeId>:"} prefix is computed once per node
+ * and hashing a member only continues from that state over the characters of its ref spec. This
+ * does not allocate as long as {@link ActorRef#toString()} returns a cached spec.
+ * <br>
+ * The result is identical to {@code Hashing.murmur3_32().hashString(..., UTF_8)} for all strings
+ * that do not contain supplementary characters (Guava's implementation mishandles those).
+ */
+public final class MemberHasher {
+
+    private static final int C1 = 0xcc9e2d51;
+    private static final int C2 = 0x1b873593;
+
+    private final int h1;
+    private final long buffer;
+    private final int shift;
+    private final int length;
+
+    private MemberHasher(int h1, long buffer, int shift, int length) {
+        this.h1 = h1;
+        this.buffer = buffer;
+        this.shift = shift;
+        this.length = length;
+    }
+
+    /**
+     * Creates the hasher for the node with the given actor id
+     */
+    public static MemberHasher forNode(String nodeId) {
+        byte[] prefix = (nodeId + ":").getBytes(StandardCharsets.UTF_8);
+        int h1 = 0;
+        int i = 0;
+        for (; i + 4 <= prefix.length; i += 4) {
+            int k1 = (prefix[i] & 0xff)
+                    | (prefix[i + 1] & 0xff) << 8
+                    | (prefix[i + 2] & 0xff) << 16
+                    | (prefix[i + 3] & 0xff) << 24;
+            h1 = mixH1(h1, mixK1(k1));
+        }
+        long buffer = 0L;
+        int shift = 0;
+        for (; i < prefix.length; i++) {
+            buffer |= (long) (prefix[i] & 0xff) << shift;
+            shift += 8;
+        }
+        return new MemberHasher(h1, buffer, shift, prefix.length);
+    }
+
+    public int hash(ActorRef member) {
+        return hash(member.toString());
+    }
+
+    public int hash(CharSequence member) {
+        int h1 = this.h1;
+        long buffer = this.buffer;
+        int shift = this.shift;
+        int length = this.length;
+        for (int i = 0; i < member.length(); i++) {
+            char c = member.charAt(i);
+            if (c < 0x80) {
+                buffer |= (long) c << shift;
+                shift += 8;
+                length += 1;
+            } else if (c < 0x800) {
+                buffer |= twoUtf8Bytes(c) << shift;
+                shift += 16;
+                length += 2;
+            } else if (!Character.isSurrogate(c)) {
+                buffer |= threeUtf8Bytes(c) << shift;
+                shift += 24;
+                length += 3;
+            } else {
+                int codePoint = Character.codePointAt(member, i);
+                if (codePoint == c) {
+                    // unpaired surrogate, encoded as '?' like String.getBytes does
+                    buffer |= (long) '?' << shift;
+                    shift += 8;
+                    length += 1;
+                } else {
+                    i++;
+                    buffer |= fourUtf8Bytes(codePoint) << shift;
+                    shift += 32;
+                    length += 4;
+                }
+            }
+            if (shift >= 32) {
+                h1 = mixH1(h1, mixK1((int) buffer));
+                buffer >>>= 32;
+                shift -= 32;
+            }
+        }
+        h1 ^= mixK1((int) buffer);
+        return fmix(h1, length);
+    }
+
+    private static int mixK1(int k1) {
+        k1 *= C1;
+        k1 = Integer.rotateLeft(k1, 15);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static int mixH1(int h1, int k1) {
+        h1 ^= k1;
+        h1 = Integer.rotateLeft(h1, 13);
+        h1 = h1 * 5 + 0xe6546b64;
+        return h1;
+    }
+
+    private static int fmix(int h1, int length) {
+        h1 ^= length;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return h1;
+    }
+
+    private static long twoUtf8Bytes(char c) {
+        return (0xc0 | (c >>> 6)) | ((0x80 | (c & 0x3f)) << 8);
+    }
+
+    private static long threeUtf8Bytes(char c) {
+        return (0xe0 | (c >>> 12))
+                | ((0x80 | ((c >>> 6) & 0x3f)) << 8)
+                | ((0x80 | (c & 0x3f)) << 16);
+    }
+
+    private static long fourUtf8Bytes(int codePoint) {
+        return (0xf0 | (codePoint >>> 18))
+                | ((0x80 | ((codePoint >>> 12) & 0x3f)) << 8)
+                | ((0x80 | ((codePoint >>> 6) & 0x3f)) << 16)
+                | ((long) (0x80 | (codePoint & 0x3f)) << 24);
+    }
+}
@@ -0,0 +1,153 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Operations on an index of member tags, which maps every tag onto the members that have it. The
+ * number of distinct tags is expected to be small (a region, a tier, an app version), so looking
+ * up the tags of a single member iterates over all of them. A leaf node splits once the weight of
+ * its members exceeds {@code bucketSize}, and every member weighs at least 1, so the member sets
+ * stay small enough to be plain hash sets. The same index is used for the member weights, with the
+ * weight as the only tag of a member (see {@link MemberWeights}).
+ */
+public final class MemberTags {
+
+    private MemberTags() {
+    }
+
+    /**
+     * Replaces the tags of the given members
+     *
+     * @param tags the new tags of the members, {@code null} or empty to remove all of their tags
+     */
+    public static <T> void set(Map<T, Set<ActorRef>> index, Collection<ActorRef> members, Set<T> tags) {
+        if (!index.isEmpty()) {
+            remove(index, members);
+        }
+        if (tags != null) {
+            for (T tag : tags) {
+                index.computeIfAbsent(tag, t -> new HashSet<>()).addAll(members);
+            }
+        }
+    }
+
+    /**
+     * Removes all tags of the given members
+     */
+    public static <T> void remove(Map<T, Set<ActorRef>> index, Collection<ActorRef> members) {
+        Iterator<Set<ActorRef>> iterator = index.values().iterator();
+        while (iterator.hasNext()) {
+            Set<ActorRef> tagged = iterator.next();
+            tagged.removeAll(members);
+            if (tagged.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Adds all tags of the other index
+     */
+    public static <T> void merge(Map<T, Set<ActorRef>> index, Map<T, Set<ActorRef>> other) {
+        if (other != null) {
+            for (Map.Entry<T, Set<ActorRef>> entry : other.entrySet()) {
+                index.computeIfAbsent(entry.getKey(), t -> new HashSet<>()).addAll(entry.getValue());
+            }
+        }
+    }
+
+    public static <T> Set<T> tagsOf(Map<T, Set<ActorRef>> index, ActorRef member) {
+        Set<T> tags = new HashSet<>();
+        for (Map.Entry<T, Set<ActorRef>> entry : index.entrySet()) {
+            if (entry.getValue().contains(member)) {
+                tags.add(entry.getKey());
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * @return the index of the given members only
+     */
+    public static <T> Map<T, Set<ActorRef>> subIndex(Map<T, Set<ActorRef>> index, Collection<ActorRef> members) {
+        Map<T, Set<ActorRef>> subIndex = new HashMap<>();
+        if (index.isEmpty()) {
+            return subIndex;
+        }
+        Set<ActorRef> memberSet = members instanceof Set ? (Set<ActorRef>) members : new HashSet<>(members);
+        for (Map.Entry<T, Set<ActorRef>> entry : index.entrySet()) {
+            Set<ActorRef> tagged = new HashSet<>();
+            // iterate over the smaller of the two sets
+            if (entry.getValue().size() < memberSet.size()) {
+                for (ActorRef member : entry.getValue()) {
+                    if (memberSet.contains(member)) {
+                        tagged.add(member);
+                    }
+                }
+            } else {
+                for (ActorRef member : memberSet) {
+                    if (entry.getValue().contains(member)) {
+                        tagged.add(member);
+                    }
+                }
+            }
+            if (!tagged.isEmpty()) {
+                subIndex.put(entry.getKey(), tagged);
+            }
+        }
+        return subIndex;
+    }
+
+    /**
+     * Groups the given members by their tags, so they can be added elsewhere with the same tags
+     */
+    public static <T> Map<Set<T>, Set<ActorRef>> groupByTags(Map<T, Set<ActorRef>> index, Collection<ActorRef> members) {
+        Map<Set<T>, Set<ActorRef>> groups = new HashMap<>();
+        for (ActorRef member : members) {
+            Set<T> tags = index.isEmpty() ? Collections.emptySet() : tagsOf(index, member);
+            groups.computeIfAbsent(tags, t -> new HashSet<>()).add(member);
+        }
+        return groups;
+    }
+
+    /**
+     * @return the members that have all of the given tags
+     */
+    public static Set<ActorRef> matching(Map<String, Set<ActorRef>> index, Set<String> tags) {
+        Set<ActorRef> smallest = null;
+        for (String tag : tags) {
+            Set<ActorRef> tagged = index.get(tag);
+            if (tagged == null) {
+                return Collections.emptySet();
+            }
+            if (smallest == null || tagged.size() < smallest.size()) {
+                smallest = tagged;
+            }
+        }
+        if (smallest == null) {
+            return Collections.emptySet();
+        }
+        Set<ActorRef> matching = new HashSet<>();
+        for (ActorRef member : smallest) {
+            boolean matches = true;
+            for (String tag : tags) {
+                if (!index.get(tag).contains(member)) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                matching.add(member);
+            }
+        }
+        return matching;
+    }
+}
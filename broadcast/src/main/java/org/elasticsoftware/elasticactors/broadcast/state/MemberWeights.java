@@ -0,0 +1,102 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.broadcast.messages.Add;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Operations on an index of member weights, which maps every weight onto the members that have
+ * it. Members have a weight of 1 unless they were added with a higher one, and only those are
+ * kept in the index (see {@link MemberTags} for the operations it shares with the tags).
+ */
+public final class MemberWeights {
+
+    private MemberWeights() {
+    }
+
+    /**
+     * Replaces the weights of the given members
+     *
+     * @param weight the new weight of the members, {@code null} for the default weight
+     */
+    public static void set(Map<Integer, Set<ActorRef>> index, Collection<ActorRef> members, Integer weight) {
+        MemberTags.set(index, members, weight != null && weight > 1 ? Collections.singleton(weight) : null);
+    }
+
+    /**
+     * Removes the given members, which then have the default weight
+     */
+    public static void remove(Map<Integer, Set<ActorRef>> index, Collection<ActorRef> members) {
+        MemberTags.remove(index, members);
+    }
+
+    /**
+     * Adds the members of the other index with their weights
+     */
+    public static void merge(Map<Integer, Set<ActorRef>> index, Map<Integer, Set<ActorRef>> other) {
+        MemberTags.merge(index, other);
+    }
+
+    /**
+     * @return the index of the given members only
+     */
+    public static Map<Integer, Set<ActorRef>> subIndex(Map<Integer, Set<ActorRef>> index, Collection<ActorRef> members) {
+        return MemberTags.subIndex(index, members);
+    }
+
+    /**
+     * Groups the given members by their weight, the members with the default weight under 1
+     */
+    public static Map<Integer, Set<ActorRef>> groupByWeight(Map<Integer, Set<ActorRef>> index, Collection<ActorRef> members) {
+        Map<Integer, Set<ActorRef>> groups = new HashMap<>();
+        for (Map.Entry<Set<Integer>, Set<ActorRef>> group : MemberTags.groupByTags(index, members).entrySet()) {
+            // a member has a single weight in the index
+            groups.put(group.getKey().isEmpty() ? 1 : group.getKey().iterator().next(), group.getValue());
+        }
+        return groups;
+    }
+
+    /**
+     * @param members the number of members in the index and with the default weight
+     * @return the total weight of the members
+     */
+    public static int total(int members, Map<Integer, Set<ActorRef>> index) {
+        int total = members;
+        if (index != null) {
+            for (Map.Entry<Integer, Set<ActorRef>> entry : index.entrySet()) {
+                total += (entry.getKey() - 1) * entry.getValue().size();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return the {@code Add} messages that add the given members elsewhere with the same tags and
+     * weights
+     */
+    public static List<Add> toAdds(
+            Collection<ActorRef> members,
+            Map<String, Set<ActorRef>> memberTags,
+            Map<Integer, Set<ActorRef>> memberWeights) {
+        List<Add> adds = new ArrayList<>();
+        if (memberTags.isEmpty() && memberWeights.isEmpty()) {
+            adds.add(new Add(members));
+            return adds;
+        }
+        // members with different tags or weights are added separately
+        for (Map.Entry<Set<String>, Set<ActorRef>> tagGroup : MemberTags.groupByTags(memberTags, members).entrySet()) {
+            for (Map.Entry<Integer, Set<ActorRef>> weightGroup : groupByWeight(memberWeights, tagGroup.getValue()).entrySet()) {
+                Integer weight = weightGroup.getKey() > 1 ? weightGroup.getKey() : null;
+                adds.add(new Add(weightGroup.getValue(), tagGroup.getKey(), weight));
+            }
+        }
+        return adds;
+    }
+}
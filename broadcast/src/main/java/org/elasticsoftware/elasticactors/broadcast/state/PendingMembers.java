@@ -0,0 +1,116 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.broadcast.messages.Add;
+import org.elasticsoftware.elasticactors.broadcast.messages.Remove;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_EMPTY;
+
+/**
+ * The membership changes for a single child node that have not been forwarded yet. An add and a
+ * remove of the same member collapse into the last one, so every member is sent at most once.
+ */
+public final class PendingMembers {
+
+    private final ActorRef node;
+    private final Set<ActorRef> added;
+    private final Set<ActorRef> removed;
+    private final Map<String, Set<ActorRef>> addedTags;
+    private final Map<Integer, Set<ActorRef>> addedWeights;
+
+    public PendingMembers(ActorRef node) {
+        this(node, new HashSet<>(), new HashSet<>(), new HashMap<>(), new HashMap<>());
+    }
+
+    @JsonCreator
+    public PendingMembers(
+            @JsonProperty("node") ActorRef node,
+            @JsonProperty("added") Set<ActorRef> added,
+            @JsonProperty("removed") Set<ActorRef> removed,
+            @JsonProperty("addedTags") Map<String, Set<ActorRef>> addedTags,
+            @JsonProperty("addedWeights") Map<Integer, Set<ActorRef>> addedWeights) {
+        this.node = node;
+        this.added = added;
+        this.removed = removed;
+        this.addedTags = addedTags != null ? addedTags : new HashMap<>();
+        this.addedWeights = addedWeights != null ? addedWeights : new HashMap<>();
+    }
+
+    public ActorRef getNode() {
+        return node;
+    }
+
+    public Set<ActorRef> getAdded() {
+        return added;
+    }
+
+    public Set<ActorRef> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * The tags of the added members, see {@link MemberTags}
+     */
+    @JsonInclude(NON_EMPTY)
+    public Map<String, Set<ActorRef>> getAddedTags() {
+        return addedTags;
+    }
+
+    /**
+     * The weights of the added members, see {@link MemberWeights}
+     */
+    @JsonInclude(NON_EMPTY)
+    public Map<Integer, Set<ActorRef>> getAddedWeights() {
+        return addedWeights;
+    }
+
+    public void add(Collection<ActorRef> members, Set<String> tags, Integer weight) {
+        removed.removeAll(members);
+        added.addAll(members);
+        MemberTags.set(addedTags, members, tags);
+        MemberWeights.set(addedWeights, members, weight);
+    }
+
+    public void remove(Collection<ActorRef> members) {
+        added.removeAll(members);
+        removed.addAll(members);
+        if (!addedTags.isEmpty()) {
+            MemberTags.remove(addedTags, members);
+        }
+        if (!addedWeights.isEmpty()) {
+            MemberWeights.remove(addedWeights, members);
+        }
+    }
+
+    @JsonIgnore
+    public int size() {
+        return added.size() + removed.size();
+    }
+
+    /**
+     * The {@link Remove} and {@link Add} messages that forward the pending changes to the child
+     * node, in the order they need to be sent
+     */
+    public List<Object> toMessages() {
+        List<Object> messages = new ArrayList<>();
+        if (!removed.isEmpty()) {
+            messages.add(new Remove(removed));
+        }
+        if (!added.isEmpty()) {
+            messages.addAll(MemberWeights.toAdds(added, addedTags, addedWeights));
+        }
+        return messages;
+    }
+}
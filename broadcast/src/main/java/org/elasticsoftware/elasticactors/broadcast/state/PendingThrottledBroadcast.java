@@ -0,0 +1,43 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.broadcast.messages.ThrottledMessage;
+
+import java.util.LinkedList;
+
+/**
+ * A throttled message with the leaf nodes it still needs to be delivered to
+ */
+public final class PendingThrottledBroadcast {
+
+    private final ThrottledMessage message;
+    private final int cost;
+    private final LinkedList<ActorRef> leafNodes;
+
+    @JsonCreator
+    public PendingThrottledBroadcast(
+            @JsonProperty("message") ThrottledMessage message,
+            @JsonProperty("cost") int cost,
+            @JsonProperty("leafNodes") LinkedList<ActorRef> leafNodes) {
+        this.message = message;
+        this.cost = cost;
+        this.leafNodes = leafNodes;
+    }
+
+    public ThrottledMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * The number of tokens it takes to deliver the message to one leaf node
+     */
+    public int getCost() {
+        return cost;
+    }
+
+    public LinkedList<ActorRef> getLeafNodes() {
+        return leafNodes;
+    }
+}
@@ -0,0 +1,147 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.base.state.JacksonActorState;
+import org.elasticsoftware.elasticactors.broadcast.messages.BroadcastPriority;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
+@JsonInclude(NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public final class RateLimiterState extends JacksonActorState {
+
+    public static final long DEFAULT_TICK_MILLIS = 100L;
+    public static final int PERSISTED_TICK_INTERVAL = 10;
+
+    private final long tickMillis;
+    private final Map<String, TokenBucket> buckets;
+    private boolean tickScheduled;
+    private final Map<String, AdaptiveRate> adaptiveRates;
+    private transient int unpersistedTicks;
+    private transient boolean persistenceRequested;
+
+    public RateLimiterState(long tickMillis) {
+        this(tickMillis, new LinkedHashMap<>(), false, new HashMap<>());
+    }
+
+    @JsonCreator
+    public RateLimiterState(
+            @JsonProperty("tickMillis") long tickMillis,
+            @JsonProperty("buckets") Map<String, TokenBucket> buckets,
+            @JsonProperty("tickScheduled") boolean tickScheduled,
+            @JsonProperty("adaptiveRates") Map<String, AdaptiveRate> adaptiveRates) {
+        this.tickMillis = tickMillis;
+        this.buckets = buckets != null ? buckets : new LinkedHashMap<>();
+        this.tickScheduled = tickScheduled;
+        this.adaptiveRates = adaptiveRates != null ? adaptiveRates : new HashMap<>();
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * The token buckets with queued deliveries, keyed by message class
+     */
+    public Map<String, TokenBucket> getBuckets() {
+        return buckets;
+    }
+
+    public TokenBucket bucketFor(String messageClass, int maxPerSecond, BroadcastPriority priority, long now) {
+        TokenBucket bucket = buckets.computeIfAbsent(messageClass, k -> new TokenBucket(maxPerSecond, priority, now));
+        // the configured rate and priority may have changed in the meantime
+        bucket.setMaxPerSecond(maxPerSecond);
+        if (priority != null) {
+            bucket.setPriority(priority);
+        }
+        return bucket;
+    }
+
+    /**
+     * The rates of the message classes with an adaptive rate, keyed by message class. Unlike the
+     * token buckets these are kept when there is nothing left to deliver, so the next broadcast
+     * continues at the rate the previous one reached.
+     */
+    public Map<String, AdaptiveRate> getAdaptiveRates() {
+        return adaptiveRates;
+    }
+
+    /**
+     * @return the current rate of the message class, which is {@code maxPerSecond} unless the
+     * rate is adaptive
+     */
+    public int rateFor(String messageClass, int maxPerSecond, Integer minPerSecond, Integer targetLatencyMillis, long now) {
+        if (minPerSecond == null || targetLatencyMillis == null) {
+            adaptiveRates.remove(messageClass);
+            return maxPerSecond;
+        }
+        AdaptiveRate rate = adaptiveRates.get(messageClass);
+        if (rate == null) {
+            rate = new AdaptiveRate(minPerSecond, maxPerSecond, targetLatencyMillis, now);
+            adaptiveRates.put(messageClass, rate);
+        } else {
+            rate.configure(minPerSecond, maxPerSecond, targetLatencyMillis);
+        }
+        return rate.getCurrentPerSecond();
+    }
+
+    /**
+     * The number of leaf nodes that are still waiting for a queued delivery
+     */
+    @JsonIgnore
+    public int getPendingDeliveries() {
+        int pending = 0;
+        for (TokenBucket bucket : buckets.values()) {
+            for (PendingThrottledBroadcast broadcast : bucket.getQueue()) {
+                pending += broadcast.getLeafNodes().size();
+            }
+        }
+        return pending;
+    }
+
+    public boolean isTickScheduled() {
+        return tickScheduled;
+    }
+
+    public void setTickScheduled(boolean tickScheduled) {
+        this.tickScheduled = tickScheduled;
+    }
+
+    /**
+     * Requests the state to be persisted after the current tick, because a queued broadcast has
+     * been delivered to all of its leaf nodes or has expired
+     */
+    @JsonIgnore
+    public void setPersistenceRequested(boolean persistenceRequested) {
+        this.persistenceRequested = persistenceRequested;
+    }
+
+    /**
+     * Whether the state needs to be persisted after a tick. The progress of the queued broadcasts
+     * is persisted when one of them is done, and otherwise once every
+     * {@link #PERSISTED_TICK_INTERVAL} ticks. When the actor crashes in between, the leaf nodes
+     * that were served since the state was last persisted receive their message again.
+     */
+    @JsonIgnore
+    public boolean shouldPersistTick() {
+        if (persistenceRequested || ++unpersistedTicks >= PERSISTED_TICK_INTERVAL) {
+            markPersisted();
+            return true;
+        }
+        return false;
+    }
+
+    @JsonIgnore
+    public void markPersisted() {
+        this.persistenceRequested = false;
+        this.unpersistedTicks = 0;
+    }
+}
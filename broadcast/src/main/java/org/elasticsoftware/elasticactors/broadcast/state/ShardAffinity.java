@@ -0,0 +1,69 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.elasticsoftware.elasticactors.ActorRef;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helps placing the nodes of a {@link org.elasticsoftware.elasticactors.broadcast.Broadcaster}
+ * tree on the shards of their members, see {@link BroadcasterState#setShardAffinity(boolean)}.
+ * <br>
+ * The shard of an actor is selected by ElasticActors from the murmur3 hash of its actor id, so a
+ * node is placed on a shard by appending a suffix to its actor id until it hashes to that shard.
+ */
+public final class ShardAffinity {
+
+    private static final String SHARDS_SEGMENT = "/shards/";
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+    // on average a suffix is found after numberOfShards attempts
+    private static final int MAX_ATTEMPTS_PER_SHARD = 64;
+
+    private ShardAffinity() {
+    }
+
+    /**
+     * @return the shard encoded in the ref spec of the member (for instance
+     * {@code actor://cluster/system/shards/3/session-1}), or {@code -1} for temp and service actors
+     */
+    public static int shardOf(ActorRef member) {
+        String spec = member.toString();
+        int start = spec.indexOf(SHARDS_SEGMENT);
+        if (start < 0) {
+            return -1;
+        }
+        start += SHARDS_SEGMENT.length();
+        int shard = 0;
+        int i = start;
+        for (; i < spec.length() && Character.isDigit(spec.charAt(i)); i++) {
+            shard = shard * 10 + (spec.charAt(i) - '0');
+        }
+        return i > start && i < spec.length() && spec.charAt(i) == '/' ? shard : -1;
+    }
+
+    /**
+     * @return the shard ElasticActors creates the actor with the given id on
+     */
+    public static int shardOf(String actorId, int numberOfShards) {
+        return Math.abs(HASH_FUNCTION.hashString(actorId, StandardCharsets.UTF_8).asInt()) % numberOfShards;
+    }
+
+    /**
+     * @return the given actor id, with a suffix if needed so the actor is created on the given
+     * shard
+     */
+    public static String actorIdOnShard(String actorId, int shard, int numberOfShards) {
+        if (shardOf(actorId, numberOfShards) == shard) {
+            return actorId;
+        }
+        for (int attempt = 0; attempt < numberOfShards * MAX_ATTEMPTS_PER_SHARD; attempt++) {
+            String candidate = actorId + "~" + attempt;
+            if (shardOf(candidate, numberOfShards) == shard) {
+                return candidate;
+            }
+        }
+        // practically impossible, the node works on any shard
+        return actorId;
+    }
+}
@@ -2,20 +2,35 @@ package org.elasticsoftware.elasticactors.broadcast.state;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.util.Objects;
 
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
 /**
  * @author Joost van de Wijgerd
  */
+@JsonInclude(NON_NULL)
 public final class ThrottleConfig {
 
     private final Integer maxMessagesPerSecond;
+    private final Integer minMessagesPerSecond;
+    private final Integer targetLatencyMillis;
+
+    public ThrottleConfig(Integer maxMessagesPerSecond) {
+        this(maxMessagesPerSecond, null, null);
+    }
 
     @JsonCreator
-    public ThrottleConfig(@JsonProperty("maxMessagesPerSecond") Integer maxMessagesPerSecond) {
+    public ThrottleConfig(
+            @JsonProperty("maxMessagesPerSecond") Integer maxMessagesPerSecond,
+            @JsonProperty("minMessagesPerSecond") Integer minMessagesPerSecond,
+            @JsonProperty("targetLatencyMillis") Integer targetLatencyMillis) {
         this.maxMessagesPerSecond = maxMessagesPerSecond;
+        this.minMessagesPerSecond = minMessagesPerSecond;
+        this.targetLatencyMillis = targetLatencyMillis;
     }
 
     @JsonIgnore
@@ -23,10 +38,31 @@ public final class ThrottleConfig {
         return maxMessagesPerSecond != null && maxMessagesPerSecond > 0;
     }
 
+    /**
+     * See {@link org.elasticsoftware.elasticactors.broadcast.messages.Throttled#minPerSecond()}
+     */
+    @JsonIgnore
+    public boolean isAdaptive() {
+        return isValid()
+                && minMessagesPerSecond != null
+                && minMessagesPerSecond > 0
+                && minMessagesPerSecond < maxMessagesPerSecond
+                && targetLatencyMillis != null
+                && targetLatencyMillis > 0;
+    }
+
     public Integer getMaxMessagesPerSecond() {
         return maxMessagesPerSecond;
     }
 
+    public Integer getMinMessagesPerSecond() {
+        return minMessagesPerSecond;
+    }
+
+    public Integer getTargetLatencyMillis() {
+        return targetLatencyMillis;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -36,18 +72,22 @@ public final class ThrottleConfig {
             return false;
         }
         ThrottleConfig that = (ThrottleConfig) o;
-        return Objects.equals(maxMessagesPerSecond, that.maxMessagesPerSecond);
+        return Objects.equals(maxMessagesPerSecond, that.maxMessagesPerSecond)
+                && Objects.equals(minMessagesPerSecond, that.minMessagesPerSecond)
+                && Objects.equals(targetLatencyMillis, that.targetLatencyMillis);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(maxMessagesPerSecond);
+        return Objects.hash(maxMessagesPerSecond, minMessagesPerSecond, targetLatencyMillis);
     }
 
     @Override
     public String toString() {
         return "ThrottleConfig{" +
                 "maxMessagesPerSecond=" + maxMessagesPerSecond +
+                ", minMessagesPerSecond=" + minMessagesPerSecond +
+                ", targetLatencyMillis=" + targetLatencyMillis +
                 '}';
     }
 }
@@ -5,6 +5,7 @@ import org.elasticsoftware.elasticactors.broadcast.messages.LeafNodesResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
@@ -22,7 +23,12 @@ public final class ThrottledBroadcastSession {
     private final ActorRef sender;
     private final Set<ActorRef> leafNodes = new HashSet<>();
     private final ThrottleConfig throttleConfig;
+    private final Set<ActorRef> pendingNodes = new HashSet<>();
     private int receivedResponses = 0;
+    private int attempt = 0;
+    private int leafNodeCacheVersion;
+    private Long expiresAt;
+    private Set<String> tags;
 
     public ThrottledBroadcastSession(Object message, ActorRef sender, ThrottleConfig throttleConfig) {
         this(UUID.randomUUID().toString(), message, sender, throttleConfig);
@@ -68,19 +74,39 @@ public final class ThrottledBroadcastSession {
         return leafNodes;
     }
 
-    public void handleLeafNodesResponse(LeafNodesResponse response) {
-        if(response.getBroadcastId().equals(this.id)) {
+    /**
+     * Sets the nodes the session waits for
+     */
+    public void expect(Collection<ActorRef> nodes) {
+        this.pendingNodes.addAll(nodes);
+    }
+
+    /**
+     * The nodes that didn't return their leaf nodes yet
+     */
+    public Set<ActorRef> getPendingNodes() {
+        return pendingNodes;
+    }
+
+    public void handleLeafNodesResponse(LeafNodesResponse response, ActorRef node) {
+        if(!response.getBroadcastId().equals(this.id)) {
+            logger.trace(
+                    "Mismatching broadcast ids: own ({}) != received ({})",
+                    this.id,
+                    response.getBroadcastId());
+        } else if(!pendingNodes.remove(node)) {
+            // a late response to a request that was retried, or from a node that was replaced
+            logger.trace(
+                    "Ignoring response of node [{}] to broadcast session [{}]",
+                    node,
+                    this.id);
+        } else {
             logger.trace(
                     "Adding {} leaf nodes to broadcast session [{}]",
                     response.getLeafNodes().size(),
                     this.id);
             this.leafNodes.addAll(response.getLeafNodes());
             this.receivedResponses += 1;
-        } else {
-            logger.trace(
-                    "Mismatching broadcast ids: own ({}) != received ({})",
-                    this.id,
-                    response.getBroadcastId());
         }
     }
 
@@ -88,12 +114,56 @@ public final class ThrottledBroadcastSession {
         return receivedResponses;
     }
 
-    public boolean isReady(int numberOfNodes) {
-        return numberOfNodes == receivedResponses;
+    public boolean isReady() {
+        return pendingNodes.isEmpty();
+    }
+
+    /**
+     * The number of times the pending nodes have been asked again for their leaf nodes
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+
+    public void nextAttempt() {
+        attempt++;
     }
 
     public ThrottleConfig getThrottleConfig() {
         return throttleConfig;
     }
 
+    /**
+     * The version of the leaf node cache of the root when the session was started
+     */
+    public int getLeafNodeCacheVersion() {
+        return leafNodeCacheVersion;
+    }
+
+    public void setLeafNodeCacheVersion(int leafNodeCacheVersion) {
+        this.leafNodeCacheVersion = leafNodeCacheVersion;
+    }
+
+    /**
+     * The time after which the message is no longer delivered, {@code null} if it doesn't expire
+     */
+    public Long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * The tags of a filtered broadcast, {@code null} when the message is for all members
+     */
+    public Set<String> getTags() {
+        return tags;
+    }
+
+    public void setTags(Set<String> tags) {
+        this.tags = tags;
+    }
+
 }
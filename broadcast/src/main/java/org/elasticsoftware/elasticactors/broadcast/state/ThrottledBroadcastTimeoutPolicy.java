@@ -0,0 +1,27 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+/**
+ * What the root of a {@link org.elasticsoftware.elasticactors.broadcast.Broadcaster} tree does with
+ * a throttled broadcast when not all of its children returned their leaf nodes before the deadline
+ * (see {@link BroadcasterState#setThrottledBroadcastTimeoutMillis(long)}). Interior nodes always
+ * return the leaf nodes they collected so far to their parent when their own deadline expires.
+ */
+public enum ThrottledBroadcastTimeoutPolicy {
+
+    /**
+     * Deliver the message to the leaf nodes that were collected so far
+     */
+    DELIVER_PARTIAL,
+
+    /**
+     * Ask the children that didn't respond again, with a new deadline. When they still don't
+     * respond after the last retry, the message is delivered to the leaf nodes collected so far.
+     */
+    RETRY,
+
+    /**
+     * Don't deliver the message at all. The failure is logged and counted, see
+     * {@link BroadcasterState#getFailedThrottledBroadcasts()}.
+     */
+    FAIL
+}
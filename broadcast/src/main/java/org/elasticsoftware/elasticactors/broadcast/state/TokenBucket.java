@@ -0,0 +1,90 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.broadcast.messages.BroadcastPriority;
+
+import java.util.LinkedList;
+
+/**
+ * The budget of a throttled message class, shared by all broadcasts of that class. Tokens are
+ * added at {@code maxPerSecond} per second, and every message delivered to a member takes one.
+ */
+public final class TokenBucket {
+
+    private int maxPerSecond;
+    private BroadcastPriority priority;
+    private double tokens;
+    private long lastRefill;
+    private final LinkedList<PendingThrottledBroadcast> queue;
+
+    public TokenBucket(int maxPerSecond, BroadcastPriority priority, long now) {
+        this(maxPerSecond, priority, -1, now, new LinkedList<>());
+    }
+
+    @JsonCreator
+    public TokenBucket(
+            @JsonProperty("maxPerSecond") int maxPerSecond,
+            @JsonProperty("priority") BroadcastPriority priority,
+            @JsonProperty("tokens") double tokens,
+            @JsonProperty("lastRefill") long lastRefill,
+            @JsonProperty("queue") LinkedList<PendingThrottledBroadcast> queue) {
+        this.maxPerSecond = maxPerSecond;
+        this.priority = priority != null ? priority : BroadcastPriority.NORMAL;
+        this.tokens = tokens;
+        this.lastRefill = lastRefill;
+        this.queue = queue != null ? queue : new LinkedList<>();
+    }
+
+    public int getMaxPerSecond() {
+        return maxPerSecond;
+    }
+
+    public void setMaxPerSecond(int maxPerSecond) {
+        this.maxPerSecond = maxPerSecond;
+    }
+
+    public BroadcastPriority getPriority() {
+        return priority;
+    }
+
+    public void setPriority(BroadcastPriority priority) {
+        this.priority = priority;
+    }
+
+    public double getTokens() {
+        return tokens;
+    }
+
+    public long getLastRefill() {
+        return lastRefill;
+    }
+
+    public LinkedList<PendingThrottledBroadcast> getQueue() {
+        return queue;
+    }
+
+    /**
+     * Adds the tokens for the time that passed since the last refill. The bucket holds at most the
+     * tokens for one delivery to a leaf node plus the tokens that are added in one tick, so an
+     * idle bucket only allows a small burst. A new bucket starts full.
+     */
+    public void refill(long now, long tickMillis) {
+        PendingThrottledBroadcast head = queue.peek();
+        double capacity = (head != null ? head.getCost() : 0) + maxPerSecond * tickMillis / 1000.0d;
+        if (tokens < 0) {
+            tokens = capacity;
+        } else if (now > lastRefill) {
+            tokens = Math.min(capacity, tokens + maxPerSecond * (now - lastRefill) / 1000.0d);
+        }
+        lastRefill = now;
+    }
+
+    public boolean tryAcquire(int cost) {
+        if (tokens >= cost) {
+            tokens -= cost;
+            return true;
+        }
+        return false;
+    }
+}
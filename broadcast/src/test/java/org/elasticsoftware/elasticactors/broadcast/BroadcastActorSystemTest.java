@@ -4,28 +4,50 @@ import org.elasticsoftware.elasticactors.ActorRef;
 import org.elasticsoftware.elasticactors.ActorSystem;
 import org.elasticsoftware.elasticactors.base.actors.ActorDelegate;
 import org.elasticsoftware.elasticactors.base.actors.ReplyActor;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
 import org.elasticsoftware.elasticactors.broadcast.messages.Add;
+import org.elasticsoftware.elasticactors.broadcast.messages.BroadcastCompleted;
+import org.elasticsoftware.elasticactors.broadcast.messages.FilteredBroadcast;
 import org.elasticsoftware.elasticactors.broadcast.messages.Hello;
+import org.elasticsoftware.elasticactors.broadcast.messages.HelloExpiring;
+import org.elasticsoftware.elasticactors.broadcast.messages.HelloText;
 import org.elasticsoftware.elasticactors.broadcast.messages.HelloThrottled;
 import org.elasticsoftware.elasticactors.broadcast.messages.HelloThrottledMissingProperty;
 import org.elasticsoftware.elasticactors.broadcast.messages.HelloThrottledProperty;
+import org.elasticsoftware.elasticactors.broadcast.messages.LeafNodesRequest;
+import org.elasticsoftware.elasticactors.broadcast.messages.LeafNodesResponse;
+import org.elasticsoftware.elasticactors.broadcast.messages.Remove;
+import org.elasticsoftware.elasticactors.broadcast.messages.SizeRequest;
+import org.elasticsoftware.elasticactors.broadcast.messages.SizeResponse;
+import org.elasticsoftware.elasticactors.broadcast.messages.ThrottledMessage;
+import org.elasticsoftware.elasticactors.broadcast.messages.TrackedBroadcast;
 import org.elasticsoftware.elasticactors.broadcast.messages.UpdateThrottleConfig;
 import org.elasticsoftware.elasticactors.broadcast.messages.rehash.RehashComplete;
 import org.elasticsoftware.elasticactors.broadcast.messages.rehash.RehashRequest;
+import org.elasticsoftware.elasticactors.broadcast.messages.rehash.ResizeRequest;
 import org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState;
+import org.elasticsoftware.elasticactors.broadcast.state.BucketPlacement;
+import org.elasticsoftware.elasticactors.broadcast.state.ShardAffinity;
 import org.elasticsoftware.elasticactors.broadcast.state.ThrottleConfig;
 import org.elasticsoftware.elasticactors.test.TestActorSystem;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.IOException;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 import static java.lang.String.format;
@@ -60,13 +82,79 @@ public class BroadcastActorSystemTest {
         // @todo: the default shard cache is set to 1024!
         int NUM_SESSIONS = 1000;
 
-        List<ActorRef> sessions = new LinkedList<>();
-        // create a lot of session actors
-        for (int i = 0; i < NUM_SESSIONS; i++) {
-            sessions.add(broadcastActorSystem.actorOf(format("session-%d", i + 1), SessionActor.class));
-        }
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
+
+        final CountDownLatch waitLatch = new CountDownLatch(NUM_SESSIONS);
+
+        // reply actor
+        ActorRef replyActor = broadcastActorSystem.tempActorOf(ReplyActor.class, new ActorDelegate<Hello>(false) {
+            @Override
+            public ActorDelegate<Hello> getBody() {
+                return this;
+            }
+
+            @Override
+            public void onReceive(ActorRef sender, Hello message) throws Exception {
+                waitLatch.countDown();
+            }
+        });
+
+        // add them to the session list
+        sessionList.tell(new Add(sessions),replyActor);
+
+        // now send a message
+        sessionList.tell(new Hello("How are you?"),replyActor);
+
+        // wait until we're done
+        assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test(enabled = true)
+    public void testPreSerializedBroadcast() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        BroadcasterState initialState = new BroadcasterState(8, 32);
+        initialState.setPreSerializeBroadcasts(true);
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionPreSerializedList", Broadcaster.class, initialState);
+
+        // @todo: the default shard cache is set to 1024!
+        int NUM_SESSIONS = 1000;
+
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
+
+        final CountDownLatch waitLatch = new CountDownLatch(NUM_SESSIONS);
+
+        // reply actor
+        ActorRef replyActor = broadcastActorSystem.tempActorOf(
+                ReplyActor.class,
+                ActorDelegate.builder()
+                        .deleteAfterReceive(false)
+                        .onReceive(Hello.class, waitLatch::countDown)
+                        .build());
+
+        // add them to the session list
+        sessionList.tell(new Add(sessions),replyActor);
+
+        // now send a message
+        sessionList.tell(new Hello("How are you?"),replyActor);
+
+        // wait until we're done
+        assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test(enabled = true)
+    public void testAddingMultipleTimes() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionList",Broadcaster.class,new BroadcasterState(8,32));
+
+        // @todo: the default shard cache is set to 1024!
+        int NUM_SESSIONS = 1000;
+
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
 
         final CountDownLatch waitLatch = new CountDownLatch(NUM_SESSIONS);
+        final AtomicInteger counter = new AtomicInteger();
 
         // reply actor
         ActorRef replyActor = broadcastActorSystem.tempActorOf(ReplyActor.class, new ActorDelegate<Hello>(false) {
@@ -78,137 +166,897 @@ public class BroadcastActorSystemTest {
             @Override
             public void onReceive(ActorRef sender, Hello message) throws Exception {
                 waitLatch.countDown();
+                counter.incrementAndGet();
+            }
+        });
+
+        // add them to the session list twice (testing for the same actoref being added to two separate buckets)
+        sessionList.tell(new Add(sessions),replyActor);
+        sessionList.tell(new Add(sessions),replyActor);
+
+        // now send a message
+        sessionList.tell(new Hello("How are you?"),replyActor);
+
+        // wait for a while for all messages to be processed
+        assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+
+        // give the system a chance to process any extra messages
+        // no guarantees here, this test might succeed on a very slow machine
+        // even when there's a problem with the code
+        Thread.sleep(2000);
+
+        // make sure no extra replies have been processed
+        assertEquals(counter.intValue(), NUM_SESSIONS);
+    }
+
+    @Test
+    public void testTreeAfterRehash() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionList",Broadcaster.class,new BroadcasterState(8,32));
+
+        // @todo: the default shard cache is set to 1024!
+        int NUM_SESSIONS = 1000;
+
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
+
+        final CountDownLatch waitLatch = new CountDownLatch(NUM_SESSIONS);
+        final AtomicInteger counter = new AtomicInteger();
+
+        // reply actor
+        ActorRef replyActor = broadcastActorSystem.tempActorOf(ReplyActor.class, new ActorDelegate<Hello>(false) {
+            @Override
+            public ActorDelegate<Hello> getBody() {
+                return this;
+            }
+
+            @Override
+            public void onReceive(ActorRef sender, Hello message) throws Exception {
+                waitLatch.countDown();
+                counter.incrementAndGet();
+            }
+        });
+
+        final CountDownLatch rehashLatch = new CountDownLatch(1);
+
+        // reply actor for rehashing
+        ActorRef rehashingReplyActor = broadcastActorSystem.tempActorOf(ReplyActor.class, new ActorDelegate<RehashComplete>(false) {
+            @Override
+            public ActorDelegate<RehashComplete> getBody() {
+                return this;
+            }
+
+            @Override
+            public void onReceive(ActorRef sender, RehashComplete message) throws Exception {
+                rehashLatch.countDown();
+            }
+        });
+
+        // add them to the session list twice (testing for the same actoref being added to two separate buckets)
+        sessionList.tell(new Add(sessions),replyActor);
+
+        // send the rehash command & wait for completion
+        sessionList.tell(new RehashRequest(), rehashingReplyActor);
+        assertTrue(rehashLatch.await(10, TimeUnit.SECONDS));
+
+        // now send a message
+        sessionList.tell(new Hello("How are you?"),replyActor);
+
+        // wait for a while for all messages to be processed
+        assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+
+        // give the system a chance to process any extra messages
+        // no guarantees here, this test might succeed on a very slow machine
+        // even when there's a problem with the code
+        Thread.sleep(2000);
+
+        // make sure no extra replies have been processed
+        assertEquals(counter.intValue(), NUM_SESSIONS);
+    }
+
+    @Test
+    public void testBroadcastDuringRehash() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionRehashList", Broadcaster.class, new BroadcasterState(8, 32));
+
+        // @todo: the default shard cache is set to 1024!
+        int NUM_SESSIONS = 1000;
+
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
+
+        final int expectedReplies = 2 * NUM_SESSIONS;
+        ReplyCounter replies = new ReplyCounter(broadcastActorSystem, expectedReplies);
+
+        final CountDownLatch rehashLatch = new CountDownLatch(1);
+
+        // reply actor for rehashing
+        ActorRef rehashingReplyActor = broadcastActorSystem.tempActorOf(
+                ReplyActor.class,
+                ActorDelegate.builder()
+                        .deleteAfterReceive(false)
+                        .onReceive(RehashComplete.class, rehashLatch::countDown)
+                        .build());
+
+        sessionList.tell(new Add(sessions), replies.getRef());
+
+        // the old tree keeps serving broadcasts while the new one is built
+        sessionList.tell(new RehashRequest(), rehashingReplyActor);
+        sessionList.tell(new Hello("How are you?"), replies.getRef());
+        assertTrue(rehashLatch.await(10, TimeUnit.SECONDS));
+
+        sessionList.tell(new Hello("How are you now?"), replies.getRef());
+
+        replies.awaitReplies();
+    }
+
+    @Test
+    public void testTreeAfterResize() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        ActorRef sessionList = broadcastActorSystem.actorOf(
+                "sessionResizeList",
+                Broadcaster.class,
+                new BroadcasterState(8, 32, BucketPlacement.JUMP_CONSISTENT_HASH));
+
+        // @todo: the default shard cache is set to 1024!
+        int NUM_SESSIONS = 1000;
+
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
+
+        ReplyCounter replies = new ReplyCounter(broadcastActorSystem, NUM_SESSIONS);
+
+        final CountDownLatch resizeLatch = new CountDownLatch(1);
+        final AtomicInteger movedMembers = new AtomicInteger();
+
+        // reply actor for resizing
+        ActorRef resizeReplyActor = broadcastActorSystem.tempActorOf(ReplyActor.class, new ActorDelegate<RehashComplete>(false) {
+            @Override
+            public ActorDelegate<RehashComplete> getBody() {
+                return this;
+            }
+
+            @Override
+            public void onReceive(ActorRef sender, RehashComplete message) throws Exception {
+                movedMembers.set(message.getMovedMembers());
+                resizeLatch.countDown();
+            }
+        });
+
+        sessionList.tell(new Add(sessions), replies.getRef());
+
+        // grow the tree & wait for completion
+        sessionList.tell(new ResizeRequest(12, 32), resizeReplyActor);
+        assertTrue(resizeLatch.await(10, TimeUnit.SECONDS));
+
+        // only the members of the 4 new buckets move, where MODULO would move two thirds of them
+        int expectedMovedMembers = NUM_SESSIONS * 4 / 12;
+        assertTrue(
+                Math.abs(movedMembers.intValue() - expectedMovedMembers) < NUM_SESSIONS / 10,
+                format("moved %d members, expected about %d", movedMembers.intValue(), expectedMovedMembers));
+
+        // now send a message
+        sessionList.tell(new Hello("How are you?"), replies.getRef());
+
+        replies.awaitReplies();
+    }
+
+    @Test
+    public void testResizeIsRefusedWithModuloPlacement() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionModuloList", Broadcaster.class, new BroadcasterState(8, 32));
+
+        int NUM_SESSIONS = 500;
+
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
+        ReplyCounter replies = new ReplyCounter(broadcastActorSystem, NUM_SESSIONS);
+
+        final CountDownLatch resizeLatch = new CountDownLatch(1);
+
+        // reply actor for resizing
+        ActorRef resizeReplyActor = broadcastActorSystem.tempActorOf(
+                ReplyActor.class,
+                ActorDelegate.builder()
+                        .onReceive(RehashComplete.class, resizeLatch::countDown)
+                        .build());
+
+        sessionList.tell(new Add(sessions), replies.getRef());
+        sessionList.tell(new ResizeRequest(12, 32), resizeReplyActor);
+        assertFalse(resizeLatch.await(2, TimeUnit.SECONDS));
+
+        // the tree is left as it was
+        sessionList.tell(new Hello("How are you?"), replies.getRef());
+
+        replies.awaitReplies();
+    }
+
+    @Test
+    public void testCoalescedMembershipChanges() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+        RecordingBroadcasterMetrics metrics = BroadcastTestConfiguration.getBean(RecordingBroadcasterMetrics.class);
+
+        // @todo: the default shard cache is set to 1024!
+        int NUM_SESSIONS = 1000;
+
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
+
+        // the same changes without coalescing, to compare the number of forwarded messages with
+        ActorRef uncoalescedList = broadcastActorSystem.actorOf("sessionUncoalescedList", Broadcaster.class, new BroadcasterState(8, 32));
+        sendMembershipChanges(uncoalescedList, sessions);
+        Thread.sleep(1000);
+        int uncoalescedMessages = metrics.getMembershipChangesForwarded();
+
+        BroadcasterState initialState = new BroadcasterState(8, 32);
+        initialState.setCoalesceWindowMillis(100);
+        initialState.setCoalesceMaxMembers(250);
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionCoalescedList", Broadcaster.class, initialState);
+        sendMembershipChanges(sessionList, sessions);
+
+        // give the coalescing window a chance to expire
+        Thread.sleep(1000);
+
+        int coalescedMessages = metrics.getMembershipChangesForwarded() - uncoalescedMessages;
+        assertTrue(coalescedMessages > 0);
+        assertTrue(
+                2 * coalescedMessages < uncoalescedMessages,
+                format("%d coalesced messages, %d without coalescing", coalescedMessages, uncoalescedMessages));
+
+        final int expectedReplies = NUM_SESSIONS - 50;
+        ReplyCounter replies = new ReplyCounter(broadcastActorSystem, expectedReplies);
+
+        // now send a message
+        sessionList.tell(new Hello("How are you?"), replies.getRef());
+
+        replies.awaitReplies();
+    }
+
+    @Test
+    public void testFilteredBroadcast() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionFilteredList", Broadcaster.class, new BroadcasterState(8, 32));
+
+        // @todo: the default shard cache is set to 1024!
+        int NUM_SESSIONS = 1000;
+
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
+
+        // tag every fourth batch of sessions, the rest has no tags
+        int expectedReplies = 0;
+        for (int i = 0; i < NUM_SESSIONS; i += 50) {
+            if (i % 200 == 0) {
+                sessionList.tell(new Add(sessions.subList(i, i + 50), Collections.singleton("region:eu")));
+                expectedReplies += 50;
+            } else {
+                sessionList.tell(new Add(sessions.subList(i, i + 50)));
+            }
+        }
+
+        ReplyCounter replies = new ReplyCounter(broadcastActorSystem, expectedReplies);
+
+        // now send a message to the tagged sessions only
+        sessionList.tell(new FilteredBroadcast(new Hello("How are you?"), "region:eu"), replies.getRef());
+
+        replies.awaitReplies();
+    }
+
+    @Test
+    public void testChunkedLeafDelivery() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        // a single leaf node that delivers to 64 members at a time
+        BroadcasterState initialState = new BroadcasterState(8, 1000);
+        initialState.setLeafDeliveryChunkSize(64);
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionChunkedList", Broadcaster.class, initialState);
+
+        // @todo: the default shard cache is set to 1024!
+        int NUM_SESSIONS = 1000;
+
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
+
+        sessionList.tell(new Add(sessions));
+
+        // the second broadcast is queued behind the first one
+        final int expectedReplies = 2 * NUM_SESSIONS;
+        ReplyCounter replies = new ReplyCounter(broadcastActorSystem, expectedReplies);
+
+        sessionList.tell(new Hello("How are you?"), replies.getRef());
+        sessionList.tell(new Hello("How are you now?"), replies.getRef());
+
+        replies.awaitReplies();
+    }
+
+    @Test
+    public void testTrackedBroadcast() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionTrackedList", Broadcaster.class, new BroadcasterState(8, 32));
+
+        // @todo: the default shard cache is set to 1024!
+        int NUM_SESSIONS = 1000;
+
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
+
+        sessionList.tell(new Add(sessions));
+
+        final CountDownLatch waitLatch = new CountDownLatch(1);
+        final AtomicReference<BroadcastCompleted> completed = new AtomicReference<>();
+
+        // reply actor
+        ActorRef replyActor = broadcastActorSystem.tempActorOf(ReplyActor.class, new ActorDelegate<Object>(false) {
+            @Override
+            public ActorDelegate<Object> getBody() {
+                return this;
+            }
+
+            @Override
+            public void onReceive(ActorRef sender, Object message) throws Exception {
+                if (message instanceof BroadcastCompleted) {
+                    completed.set((BroadcastCompleted) message);
+                    waitLatch.countDown();
+                }
+            }
+        });
+
+        sessionList.tell(trackedBroadcast("tracked", new Hello("How are you?")), replyActor);
+
+        assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+        assertEquals(completed.get().getBroadcastId(), "tracked");
+        assertTrue(completed.get().isComplete());
+        assertEquals(completed.get().getMembers(), NUM_SESSIONS);
+        // the root and at least one level of children
+        assertTrue(completed.get().getLevelLatencyMillis().size() >= 2);
+    }
+
+    @Test
+    public void testTrackedChunkedLeafDelivery() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        // a single leaf node that delivers to 64 members at a time
+        BroadcasterState initialState = new BroadcasterState(8, 1000);
+        initialState.setLeafDeliveryChunkSize(64);
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionTrackedChunkedList", Broadcaster.class, initialState);
+
+        final int NUM_MEMBERS = 500;
+        final AtomicInteger received = new AtomicInteger();
+
+        List<ActorRef> members = new LinkedList<>();
+        for (int i = 0; i < NUM_MEMBERS; i++) {
+            members.add(broadcastActorSystem.tempActorOf(
+                    ReplyActor.class,
+                    ActorDelegate.builder()
+                            .deleteAfterReceive(false)
+                            .onReceive(Hello.class, received::incrementAndGet)
+                            .build()));
+        }
+
+        sessionList.tell(new Add(members));
+
+        final CountDownLatch waitLatch = new CountDownLatch(2);
+        final List<BroadcastCompleted> completed = Collections.synchronizedList(new LinkedList<>());
+
+        ActorRef replyActor = broadcastActorSystem.tempActorOf(ReplyActor.class, new ActorDelegate<BroadcastCompleted>(false) {
+            @Override
+            public ActorDelegate<BroadcastCompleted> getBody() {
+                return this;
+            }
+
+            @Override
+            public void onReceive(ActorRef sender, BroadcastCompleted message) throws Exception {
+                completed.add(message);
+                waitLatch.countDown();
             }
         });
 
-        // add them to the session list
-        sessionList.tell(new Add(sessions),replyActor);
+        // the second broadcast is queued behind the first one
+        sessionList.tell(trackedBroadcast("first", new Hello("How are you?")), replyActor);
+        sessionList.tell(trackedBroadcast("second", new Hello("How are you now?")), replyActor);
+
+        assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+        // the broadcasts are acknowledged in order, once their last chunk has been sent
+        assertEquals(completed.get(0).getBroadcastId(), "first");
+        assertEquals(completed.get(1).getBroadcastId(), "second");
+        for (BroadcastCompleted broadcastCompleted : completed) {
+            assertTrue(broadcastCompleted.isComplete());
+            assertEquals(broadcastCompleted.getMembers(), NUM_MEMBERS);
+        }
+
+        Thread.sleep(1000);
+        assertEquals(received.intValue(), 2 * NUM_MEMBERS);
+    }
+
+    @Test
+    public void testExactSize() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        BroadcasterState initialState = new BroadcasterState(8, 32);
+        initialState.setSizeReportIntervalMillis(50);
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionSizeList", Broadcaster.class, initialState);
+
+        // @todo: the default shard cache is set to 1024!
+        int NUM_SESSIONS = 1000;
+
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
+
+        // duplicate adds and removes of unknown members should not change the size
+        sessionList.tell(new Add(sessions));
+        sessionList.tell(new Add(sessions.subList(0, 200)));
+        sessionList.tell(new Remove(sessions.subList(0, 100)));
+        sessionList.tell(new Remove(sessions.subList(0, 100)));
+
+        // give the size reports a chance to reach the root
+        Thread.sleep(1000);
+
+        final CountDownLatch waitLatch = new CountDownLatch(1);
+        final AtomicInteger size = new AtomicInteger();
+
+        ActorRef replyActor = broadcastActorSystem.tempActorOf(ReplyActor.class, new ActorDelegate<SizeResponse>(false) {
+            @Override
+            public ActorDelegate<SizeResponse> getBody() {
+                return this;
+            }
+
+            @Override
+            public void onReceive(ActorRef sender, SizeResponse message) throws Exception {
+                assertTrue(message.isExact());
+                size.set(message.getSize());
+                waitLatch.countDown();
+            }
+        });
+
+        sessionList.tell(new SizeRequest(), replyActor);
+
+        assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+        assertEquals(size.intValue(), NUM_SESSIONS - 100);
+    }
+
+    @Test
+    public void testMergeUnderfullSubtrees() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        BroadcasterState initialState = new BroadcasterState(8, 32);
+        initialState.setSizeReportIntervalMillis(10);
+        initialState.setMergeThreshold(16);
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionMergeList", Broadcaster.class, initialState);
+
+        // @todo: the default shard cache is set to 1024!
+        int NUM_SESSIONS = 1000;
+
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
+
+        // grow the tree, then shrink it so the subtrees merge back
+        sessionList.tell(new Add(sessions));
+        Thread.sleep(500);
+        sessionList.tell(new Remove(sessions.subList(10, NUM_SESSIONS)));
+        Thread.sleep(1000);
+
+        // the remaining members should still receive every broadcast exactly once
+        final int expectedReplies = 10;
+        ReplyCounter replies = new ReplyCounter(broadcastActorSystem, expectedReplies);
+
+        // adding members after the merge should work as before
+        sessionList.tell(new Add(sessions.subList(10, 20)));
+        sessionList.tell(new Remove(sessions.subList(10, 20)));
+
+        sessionList.tell(new Hello("How are you?"), replies.getRef());
+
+        replies.awaitReplies();
+    }
+
+    @Test
+    public void testWeightedMembers() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        BroadcasterState initialState = new BroadcasterState(4, 100);
+        initialState.setSizeReportIntervalMillis(10);
+        initialState.setMergeThreshold(50);
+        ActorRef sessionList = broadcastActorSystem.actorOf("weightedSessionList", Broadcaster.class, initialState);
+
+        int NUM_SESSIONS = 200;
+
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
+
+        // the heavy members split the tree on their own, and their weight keeps it from merging
+        sessionList.tell(new Add(sessions.subList(0, 40), null, 25));
+        sessionList.tell(new Add(sessions.subList(40, NUM_SESSIONS)));
+        Thread.sleep(500);
+        sessionList.tell(new Remove(sessions.subList(40, NUM_SESSIONS)));
+        Thread.sleep(500);
+
+        final int expectedReplies = 40;
+        ReplyCounter replies = new ReplyCounter(broadcastActorSystem, expectedReplies);
+
+        sessionList.tell(new Hello("How are you?"), replies.getRef());
+
+        replies.awaitReplies();
+    }
+
+    @Test
+    public void testDeadMemberEviction() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        BroadcasterState initialState = new BroadcasterState(8, 32);
+        initialState.setDeadMemberEvictionThreshold(2);
+        ActorRef sessionList = broadcastActorSystem.actorOf("evictingSessionList", Broadcaster.class, initialState);
+
+        final int NUM_LIVE_MEMBERS = 10;
+        final AtomicInteger counter = new AtomicInteger();
+
+        List<ActorRef> members = new LinkedList<>();
+        for (int i = 0; i < NUM_LIVE_MEMBERS; i++) {
+            members.add(broadcastActorSystem.tempActorOf(
+                    ReplyActor.class,
+                    ActorDelegate.builder()
+                            .deleteAfterReceive(false)
+                            .onReceive(Hello.class, counter::incrementAndGet)
+                            .build()));
+        }
+        // members that were never created, as if they stopped without removing themselves
+        for (int i = 0; i < 50; i++) {
+            members.add(broadcastActorSystem.actorFor(format("dead-session-%d", i + 1)));
+        }
+
+        sessionList.tell(new Add(members));
+        Thread.sleep(500);
+
+        // broadcasts without a sender are sent by the dead member detectors of the leaf nodes
+        sessionList.tell(new Hello("Are you there?"));
+        sessionList.tell(new Hello("Are you there?"));
+        Thread.sleep(2000);
+
+        assertEquals(counter.intValue(), 2 * NUM_LIVE_MEMBERS);
+
+        final CountDownLatch waitLatch = new CountDownLatch(1);
+        final AtomicInteger size = new AtomicInteger();
+
+        ActorRef replyActor = broadcastActorSystem.tempActorOf(ReplyActor.class, new ActorDelegate<SizeResponse>(false) {
+            @Override
+            public ActorDelegate<SizeResponse> getBody() {
+                return this;
+            }
+
+            @Override
+            public void onReceive(ActorRef sender, SizeResponse message) throws Exception {
+                size.set(message.getSize());
+                waitLatch.countDown();
+            }
+        });
+
+        sessionList.tell(new SizeRequest(), replyActor);
+
+        assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+        assertEquals(size.intValue(), NUM_LIVE_MEMBERS);
+    }
+
+    @Test
+    public void testDeadMemberEvictionWithReplyingMembers() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        BroadcasterState initialState = new BroadcasterState(8, 32);
+        initialState.setDeadMemberEvictionThreshold(2);
+        ActorRef sessionList = broadcastActorSystem.actorOf("evictingSessionList", Broadcaster.class, initialState);
+
+        final AtomicInteger counter = new AtomicInteger();
+
+        // the sessions reply to the sender of every broadcast they receive
+        List<ActorRef> members = new LinkedList<>();
+        for (int i = 0; i < 10; i++) {
+            members.add(broadcastActorSystem.actorOf(format("session-%d", i + 1), SessionActor.class));
+        }
+        ActorRef countingMember = broadcastActorSystem.tempActorOf(
+                ReplyActor.class,
+                ActorDelegate.builder()
+                        .deleteAfterReceive(false)
+                        .onReceive(Hello.class, counter::incrementAndGet)
+                        .build());
+        members.add(countingMember);
+        for (int i = 0; i < 50; i++) {
+            members.add(broadcastActorSystem.actorFor(format("dead-session-%d", i + 1)));
+        }
+
+        sessionList.tell(new Add(members));
+        Thread.sleep(500);
+
+        sessionList.tell(new Hello("Are you there?"));
+        sessionList.tell(new Hello("Are you there?"));
+        Thread.sleep(2000);
+
+        // the replies of the sessions are not broadcast again
+        assertEquals(counter.intValue(), 2);
+
+        // neither are messages the members send to the leaf node themselves
+        sessionList.tell(new Hello("I'm fine thank you"), members.get(0));
+        Thread.sleep(500);
+
+        assertEquals(counter.intValue(), 2);
+
+        final CountDownLatch waitLatch = new CountDownLatch(1);
+        final AtomicInteger size = new AtomicInteger();
+
+        ActorRef replyActor = broadcastActorSystem.tempActorOf(ReplyActor.class, new ActorDelegate<SizeResponse>(false) {
+            @Override
+            public ActorDelegate<SizeResponse> getBody() {
+                return this;
+            }
+
+            @Override
+            public void onReceive(ActorRef sender, SizeResponse message) throws Exception {
+                size.set(message.getSize());
+                waitLatch.countDown();
+            }
+        });
+
+        sessionList.tell(new SizeRequest(), replyActor);
+
+        assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+        assertEquals(size.intValue(), 11);
+    }
+
+    @Test
+    public void testShardAffinity() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        BroadcasterState initialState = new BroadcasterState(4, 8);
+        initialState.setShardAffinity(true);
+        ActorRef sessionList = broadcastActorSystem.actorOf("shardLocalSessionList", Broadcaster.class, initialState);
+
+        int NUM_SESSIONS = 500;
+
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
+
+        sessionList.tell(new Add(sessions));
+        sessionList.tell(new Remove(sessions.subList(0, 100)));
+
+        final int expectedReplies = NUM_SESSIONS - 100;
+        ReplyCounter replies = new ReplyCounter(broadcastActorSystem, expectedReplies);
+
+        sessionList.tell(new Hello("How are you?"), replies.getRef());
 
-        // now send a message
-        sessionList.tell(new Hello("How are you?"),replyActor);
+        replies.awaitReplies();
 
-        // wait until we're done
-        assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+        // every leaf node lives on the shard of all of its members
+        final CountDownLatch leafNodesLatch = new CountDownLatch(1);
+        final AtomicReference<Set<ActorRef>> leafNodes = new AtomicReference<>();
+        ActorRef leafNodesReplyActor = broadcastActorSystem.tempActorOf(
+                ReplyActor.class,
+                new ActorDelegate<LeafNodesResponse>(false) {
+                    @Override
+                    public ActorDelegate<LeafNodesResponse> getBody() {
+                        return this;
+                    }
+
+                    @Override
+                    public void onReceive(ActorRef sender, LeafNodesResponse message) throws Exception {
+                        leafNodes.set(message.getLeafNodes());
+                        leafNodesLatch.countDown();
+                    }
+                });
+        sessionList.tell(new LeafNodesRequest("shards", 10000L, null), leafNodesReplyActor);
+        assertTrue(leafNodesLatch.await(10, TimeUnit.SECONDS));
+
+        final CountDownLatch memberLatch = new CountDownLatch(expectedReplies);
+        final AtomicInteger misplacedMembers = new AtomicInteger();
+        for (ActorRef leafNode : leafNodes.get()) {
+            final int leafShard = ShardAffinity.shardOf(leafNode);
+            assertTrue(leafShard >= 0);
+            // the sessions reply to the sender of the broadcast, which is sent to the leaf node only
+            ActorRef leafReplyActor = broadcastActorSystem.tempActorOf(ReplyActor.class, new ActorDelegate<Hello>(false) {
+                @Override
+                public ActorDelegate<Hello> getBody() {
+                    return this;
+                }
+
+                @Override
+                public void onReceive(ActorRef sender, Hello message) throws Exception {
+                    if (ShardAffinity.shardOf(sender) != leafShard) {
+                        misplacedMembers.incrementAndGet();
+                    }
+                    memberLatch.countDown();
+                }
+            });
+            leafNode.tell(new Hello("Which shard are you on?"), leafReplyActor);
+        }
+
+        assertTrue(memberLatch.await(10, TimeUnit.SECONDS));
+        assertEquals(misplacedMembers.intValue(), 0);
+
+        // resizing would mix the shards, so the tree refuses it
+        final CountDownLatch resizeLatch = new CountDownLatch(1);
+        ActorRef resizeReplyActor = broadcastActorSystem.tempActorOf(
+                ReplyActor.class,
+                ActorDelegate.builder()
+                        .onReceive(RehashComplete.class, resizeLatch::countDown)
+                        .build());
+        sessionList.tell(new ResizeRequest(8, 16), resizeReplyActor);
+
+        assertFalse(resizeLatch.await(2, TimeUnit.SECONDS));
     }
 
-    @Test(enabled = true)
-    public void testAddingMultipleTimes() throws Exception {
+    @Test
+    public void testDeduplication() throws Exception {
         ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
 
-        ActorRef sessionList = broadcastActorSystem.actorOf("sessionList",Broadcaster.class,new BroadcasterState(8,32));
+        BroadcasterState initialState = new BroadcasterState(8, 32);
+        initialState.setDeduplicationWindowMillis(TimeUnit.MINUTES.toMillis(1));
+        ActorRef sessionList = broadcastActorSystem.actorOf("deduplicatingSessionList", Broadcaster.class, initialState);
 
-        // @todo: the default shard cache is set to 1024!
-        int NUM_SESSIONS = 1000;
+        int NUM_SESSIONS = 500;
 
-        List<ActorRef> sessions = new LinkedList<>();
-        // create a lot of session actors
-        for (int i = 0; i < NUM_SESSIONS; i++) {
-            sessions.add(broadcastActorSystem.actorOf(format("session-%d", i + 1), SessionActor.class));
-        }
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
 
-        final CountDownLatch waitLatch = new CountDownLatch(NUM_SESSIONS);
+        sessionList.tell(new Add(sessions));
+
+        final CountDownLatch waitLatch = new CountDownLatch(1);
         final AtomicInteger counter = new AtomicInteger();
 
         // reply actor
-        ActorRef replyActor = broadcastActorSystem.tempActorOf(ReplyActor.class, new ActorDelegate<Hello>(false) {
+        ActorRef replyActor = broadcastActorSystem.tempActorOf(ReplyActor.class, new ActorDelegate<Object>(false) {
             @Override
-            public ActorDelegate<Hello> getBody() {
+            public ActorDelegate<Object> getBody() {
                 return this;
             }
 
             @Override
-            public void onReceive(ActorRef sender, Hello message) throws Exception {
-                waitLatch.countDown();
-                counter.incrementAndGet();
+            public void onReceive(ActorRef sender, Object message) throws Exception {
+                if (message instanceof Hello) {
+                    counter.incrementAndGet();
+                } else if (message instanceof BroadcastCompleted) {
+                    waitLatch.countDown();
+                }
             }
         });
 
-        // add them to the session list twice (testing for the same actoref being added to two separate buckets)
-        sessionList.tell(new Add(sessions),replyActor);
-        sessionList.tell(new Add(sessions),replyActor);
-
-        // now send a message
-        sessionList.tell(new Hello("How are you?"),replyActor);
+        // the same broadcast delivered twice, as if it was replayed
+        sessionList.tell(trackedBroadcast("replayed", new Hello("How are you?")), replyActor);
+        sessionList.tell(trackedBroadcast("replayed", new Hello("How are you?")), replyActor);
+        // a new broadcast of an equal message
+        sessionList.tell(new Hello("How are you?"), replyActor);
 
-        // wait for a while for all messages to be processed
         assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
 
         // give the system a chance to process any extra messages
-        // no guarantees here, this test might succeed on a very slow machine
-        // even when there's a problem with the code
         Thread.sleep(2000);
 
-        // make sure no extra replies have been processed
-        assertEquals(counter.intValue(), NUM_SESSIONS);
+        assertEquals(counter.intValue(), 2 * NUM_SESSIONS);
     }
 
     @Test
-    public void testTreeAfterRehash() throws Exception {
+    public void testMetrics() throws Exception {
         ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+        RecordingBroadcasterMetrics metrics = BroadcastTestConfiguration.getBean(RecordingBroadcasterMetrics.class);
 
-        ActorRef sessionList = broadcastActorSystem.actorOf("sessionList",Broadcaster.class,new BroadcasterState(8,32));
+        BroadcasterState initialState = new BroadcasterState(8, 8);
+        initialState.setDeadMemberEvictionThreshold(2);
+        initialState.setDeduplicationWindowMillis(TimeUnit.MINUTES.toMillis(1));
+        ActorRef sessionList = broadcastActorSystem.actorOf("measuredSessionList", Broadcaster.class, initialState);
 
-        // @todo: the default shard cache is set to 1024!
-        int NUM_SESSIONS = 1000;
+        final int NUM_LIVE_MEMBERS = 20;
+        final int NUM_DEAD_MEMBERS = 10;
+        final AtomicInteger counter = new AtomicInteger();
 
-        List<ActorRef> sessions = new LinkedList<>();
-        // create a lot of session actors
-        for (int i = 0; i < NUM_SESSIONS; i++) {
-            sessions.add(broadcastActorSystem.actorOf(format("session-%d", i + 1), SessionActor.class));
+        List<ActorRef> members = new LinkedList<>();
+        for (int i = 0; i < NUM_LIVE_MEMBERS; i++) {
+            members.add(broadcastActorSystem.tempActorOf(
+                    ReplyActor.class,
+                    ActorDelegate.builder()
+                            .deleteAfterReceive(false)
+                            .onReceive(Hello.class, counter::incrementAndGet)
+                            .build()));
+        }
+        for (int i = 0; i < NUM_DEAD_MEMBERS; i++) {
+            members.add(broadcastActorSystem.actorFor(format("dead-session-%d", i + 1)));
         }
 
-        final CountDownLatch waitLatch = new CountDownLatch(NUM_SESSIONS);
-        final AtomicInteger counter = new AtomicInteger();
+        // more members than fit in a bucket, so the root splits into leaf nodes
+        sessionList.tell(new Add(members));
+        Thread.sleep(500);
 
-        // reply actor
-        ActorRef replyActor = broadcastActorSystem.tempActorOf(ReplyActor.class, new ActorDelegate<Hello>(false) {
-            @Override
-            public ActorDelegate<Hello> getBody() {
-                return this;
-            }
+        // the dead members are evicted after two failed deliveries
+        sessionList.tell(new Hello("Are you there?"));
+        sessionList.tell(new Hello("Are you there?"));
+        Thread.sleep(2000);
 
-            @Override
-            public void onReceive(ActorRef sender, Hello message) throws Exception {
-                waitLatch.countDown();
-                counter.incrementAndGet();
-            }
-        });
+        assertEquals(counter.intValue(), 2 * NUM_LIVE_MEMBERS);
+        assertEquals(metrics.getBroadcasts(), 2);
+        assertEquals(metrics.getDeliveredMembers(), 2 * (NUM_LIVE_MEMBERS + NUM_DEAD_MEMBERS));
+        assertEquals(metrics.getMembersEvicted(), NUM_DEAD_MEMBERS);
+        assertEquals(metrics.getDuplicatesDropped(), 0);
+        // every leaf node reports every broadcast it delivers
+        int leafNodes = metrics.getLeafDeliveries() / 2;
+        assertTrue(leafNodes > 1);
+        assertEquals(metrics.getLeafDeliveries(), 2 * leafNodes);
+
+        // the same tracked broadcast twice, as if it was replayed
+        for (int i = 0; i < 2; i++) {
+            final CountDownLatch waitLatch = new CountDownLatch(1);
+            ActorRef replyActor = broadcastActorSystem.tempActorOf(
+                    ReplyActor.class,
+                    ActorDelegate.builder()
+                            .onReceive(BroadcastCompleted.class, waitLatch::countDown)
+                            .build());
+            sessionList.tell(trackedBroadcast("replayed", new Hello("How are you?")), replyActor);
+            assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+        }
 
-        final CountDownLatch rehashLatch = new CountDownLatch(1);
+        // give the system a chance to process any extra messages
+        Thread.sleep(500);
+
+        assertEquals(counter.intValue(), 3 * NUM_LIVE_MEMBERS);
+        assertEquals(metrics.getBroadcasts(), 4);
+        assertEquals(metrics.getTrackedBroadcastsCompleted(), 2);
+        // the first one is delivered to the remaining members, every leaf node drops the second one
+        assertEquals(metrics.getDeliveredMembers(), 2 * (NUM_LIVE_MEMBERS + NUM_DEAD_MEMBERS) + NUM_LIVE_MEMBERS);
+        assertEquals(metrics.getLeafDeliveries(), 3 * leafNodes);
+        assertEquals(metrics.getDuplicatesDropped(), leafNodes);
+        assertEquals(metrics.getMembersEvicted(), NUM_DEAD_MEMBERS);
+    }
+
+    @Test
+    public void testBroadcastSubscriber() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        ActorRef sessionList = broadcastActorSystem.actorOf("subscribedSessionList", Broadcaster.class, new BroadcasterState(8, 32));
+
+        final int NUM_MEMBERS = 200;
+        final int NUM_BROADCASTS = 20;
+        final int MAX_IN_FLIGHT = 4;
+        final CountDownLatch waitLatch = new CountDownLatch(NUM_MEMBERS * NUM_BROADCASTS);
+
+        List<ActorRef> members = new LinkedList<>();
+        for (int i = 0; i < NUM_MEMBERS; i++) {
+            members.add(broadcastActorSystem.tempActorOf(
+                    ReplyActor.class,
+                    ActorDelegate.builder()
+                            .deleteAfterReceive(false)
+                            .onReceive(Hello.class, waitLatch::countDown)
+                            .build()));
+        }
+
+        sessionList.tell(new Add(members));
+        Thread.sleep(500);
+
+        final AtomicInteger published = new AtomicInteger();
+        final AtomicInteger maxRequested = new AtomicInteger();
+        BroadcastSubscriber broadcastSubscriber = new BroadcastSubscriber(
+                broadcastActorSystem,
+                sessionList,
+                MAX_IN_FLIGHT,
+                BroadcastTestConfiguration.getBean(JacksonSerializationFramework.class));
+
+        Publisher<Object> publisher = subscriber -> subscriber.onSubscribe(new Subscription() {
+            private long requested;
 
-        // reply actor for rehashing
-        ActorRef rehashingReplyActor = broadcastActorSystem.tempActorOf(ReplyActor.class, new ActorDelegate<RehashComplete>(false) {
             @Override
-            public ActorDelegate<RehashComplete> getBody() {
-                return this;
+            public synchronized void request(long n) {
+                requested += n;
+                // the demand never exceeds the broadcasts in progress
+                maxRequested.accumulateAndGet((int) requested + broadcastSubscriber.getInFlight(), Math::max);
+                while (requested > 0 && published.get() < NUM_BROADCASTS) {
+                    requested--;
+                    published.incrementAndGet();
+                    subscriber.onNext(new Hello("How are you?"));
+                }
+                if (published.get() == NUM_BROADCASTS && !broadcastSubscriber.isDone()) {
+                    subscriber.onComplete();
+                }
             }
 
             @Override
-            public void onReceive(ActorRef sender, RehashComplete message) throws Exception {
-                rehashLatch.countDown();
+            public void cancel() {
             }
         });
 
-        // add them to the session list twice (testing for the same actoref being added to two separate buckets)
-        sessionList.tell(new Add(sessions),replyActor);
-
-        // send the rehash command & wait for completion
-        sessionList.tell(new RehashRequest(), rehashingReplyActor);
-        assertTrue(rehashLatch.await(10, TimeUnit.SECONDS));
-
-        // now send a message
-        sessionList.tell(new Hello("How are you?"),replyActor);
+        publisher.subscribe(broadcastSubscriber);
 
-        // wait for a while for all messages to be processed
         assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+        assertEquals(published.get(), NUM_BROADCASTS);
+        assertTrue(maxRequested.get() <= MAX_IN_FLIGHT);
 
-        // give the system a chance to process any extra messages
-        // no guarantees here, this test might succeed on a very slow machine
-        // even when there's a problem with the code
-        Thread.sleep(2000);
+        // give the system a chance to process the last completions
+        Thread.sleep(1000);
 
-        // make sure no extra replies have been processed
-        assertEquals(counter.intValue(), NUM_SESSIONS);
+        assertEquals(broadcastSubscriber.getInFlight(), 0);
     }
 
     @Test(enabled = true)
@@ -222,11 +1070,7 @@ public class BroadcastActorSystemTest {
         // @todo: the default shard cache is set to 1024!
         int NUM_SESSIONS = 1000;
 
-        List<ActorRef> sessions = new LinkedList<>();
-        // create a lot of session actors
-        for (int i = 0; i < NUM_SESSIONS; i++) {
-            sessions.add(broadcastActorSystem.actorOf(format("session-%d", i + 1), SessionActor.class));
-        }
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
 
         final CountDownLatch waitLatch = new CountDownLatch(NUM_SESSIONS);
 
@@ -286,6 +1130,232 @@ public class BroadcastActorSystemTest {
         assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testThrottledBroadcastWithOwnSerializationFramework() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionTextList", Broadcaster.class, new BroadcasterState(8, 32));
+
+        final int NUM_MEMBERS = 100;
+        final CountDownLatch waitLatch = new CountDownLatch(NUM_MEMBERS);
+        final AtomicReference<String> received = new AtomicReference<>();
+
+        List<ActorRef> members = new LinkedList<>();
+        for (int i = 0; i < NUM_MEMBERS; i++) {
+            members.add(broadcastActorSystem.tempActorOf(ReplyActor.class, new ActorDelegate<HelloText>(false) {
+                @Override
+                public ActorDelegate<HelloText> getBody() {
+                    return this;
+                }
+
+                @Override
+                public void onReceive(ActorRef sender, HelloText message) throws Exception {
+                    received.set(message.getMessage());
+                    waitLatch.countDown();
+                }
+            }));
+        }
+
+        sessionList.tell(new Add(members));
+
+        // the throttled message is serialized with the framework of HelloText, not with Jackson
+        sessionList.tell(new HelloText("How are you?"));
+
+        assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+        assertEquals(received.get(), "How are you?");
+    }
+
+    @Test
+    public void testLegacyThrottledMessage() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        final int NUM_MEMBERS = 10;
+        final CountDownLatch waitLatch = new CountDownLatch(NUM_MEMBERS);
+
+        List<ActorRef> members = new LinkedList<>();
+        for (int i = 0; i < NUM_MEMBERS; i++) {
+            members.add(broadcastActorSystem.tempActorOf(
+                    ReplyActor.class,
+                    ActorDelegate.builder()
+                            .deleteAfterReceive(false)
+                            .onReceive(Hello.class, waitLatch::countDown)
+                            .build()));
+        }
+
+        ActorRef leafNode = broadcastActorSystem.actorOf(
+                "sessionLegacyThrottledList",
+                Broadcaster.class,
+                new BroadcasterState(8, 32, members));
+
+        // sent by a version that carried every message as JSON in messageData
+        leafNode.tell(new ThrottledMessage(
+                null,
+                Hello.class.getName(),
+                "{\"message\":\"How are you?\"}"));
+
+        assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testConcurrentThrottledBroadcastsShareBudget() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionSharedBudgetList", Broadcaster.class, new BroadcasterState(8, 32));
+
+        int NUM_SESSIONS = 100;
+
+        List<ActorRef> sessions = new LinkedList<>();
+        // create a lot of session actors
+        for (int i = 0; i < NUM_SESSIONS; i++) {
+            sessions.add(broadcastActorSystem.actorOf(format("session-%d", i + 1), SessionThrottledActor.class));
+        }
+
+        final CountDownLatch waitLatch = new CountDownLatch(2 * NUM_SESSIONS);
+
+        // reply actor
+        ActorRef replyActor = broadcastActorSystem.tempActorOf(
+                ReplyActor.class,
+                ActorDelegate.builder()
+                        .deleteAfterReceive(false)
+                        .onReceive(HelloThrottled.class, waitLatch::countDown)
+                        .build());
+
+        // add them to the session list
+        sessionList.tell(new Add(sessions), replyActor);
+
+        long start = System.currentTimeMillis();
+
+        // 8 leaf nodes of 32 members per broadcast at 500 messages/sec take more than a second together
+        sessionList.tell(new HelloThrottled("How are you?"), replyActor);
+        sessionList.tell(new HelloThrottled("How are you now?"), replyActor);
+
+        assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 500);
+    }
+
+    @Test
+    public void testThrottledBroadcastWithUnresponsiveNode() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        int NUM_SESSIONS = 10;
+
+        List<ActorRef> sessions = new LinkedList<>();
+        for (int i = 0; i < NUM_SESSIONS; i++) {
+            sessions.add(broadcastActorSystem.actorOf(format("session-%d", i + 1), SessionThrottledActor.class));
+        }
+
+        final CountDownLatch waitLatch = new CountDownLatch(NUM_SESSIONS);
+
+        ActorRef replyActor = broadcastActorSystem.tempActorOf(
+                ReplyActor.class,
+                ActorDelegate.builder()
+                        .deleteAfterReceive(false)
+                        .onReceive(HelloThrottled.class, waitLatch::countDown)
+                        .build());
+
+        // a node that never returns its leaf nodes
+        ActorRef unresponsiveNode = broadcastActorSystem.tempActorOf(
+                ReplyActor.class,
+                ActorDelegate.builder().deleteAfterReceive(false).build());
+        ActorRef leafNode = broadcastActorSystem.actorOf(
+                "sessionPartialList/0",
+                Broadcaster.class,
+                new BroadcasterState(8, 32, sessions));
+
+        BroadcasterState initialState = new BroadcasterState(8, 32);
+        initialState.setLeafNode(false);
+        initialState.getNodes().add(leafNode);
+        initialState.getNodes().add(unresponsiveNode);
+        initialState.setThrottledBroadcastTimeoutMillis(500);
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionPartialList", Broadcaster.class, initialState);
+
+        sessionList.tell(new HelloThrottled("How are you?"), replyActor);
+
+        // the members of the responsive leaf node still get the message
+        assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testExpiredThrottledBroadcastIsDropped() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionExpiringList", Broadcaster.class, new BroadcasterState(8, 32));
+
+        int NUM_SESSIONS = 100;
+
+        List<ActorRef> sessions = new LinkedList<>();
+        for (int i = 0; i < NUM_SESSIONS; i++) {
+            sessions.add(broadcastActorSystem.actorOf(format("session-%d", i + 1), SessionExpiringActor.class));
+        }
+
+        final AtomicInteger counter = new AtomicInteger();
+
+        ActorRef replyActor = broadcastActorSystem.tempActorOf(
+                ReplyActor.class,
+                ActorDelegate.builder()
+                        .deleteAfterReceive(false)
+                        .onReceive(HelloExpiring.class, counter::incrementAndGet)
+                        .build());
+
+        sessionList.tell(new Add(sessions), replyActor);
+
+        // at 32 messages/sec only the first leaf node is reached before the message expires
+        sessionList.tell(new HelloExpiring("How are you?"), replyActor);
+
+        Thread.sleep(3000);
+
+        assertTrue(counter.intValue() > 0);
+        assertTrue(counter.intValue() < NUM_SESSIONS);
+    }
+
+    @Test
+    public void testThrottledWithCachedLeafNodes() throws Exception {
+        ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
+
+        ActorRef sessionList = broadcastActorSystem.actorOf("sessionCachedLeafNodesList", Broadcaster.class, new BroadcasterState(8, 32));
+
+        int NUM_SESSIONS = 300;
+
+        List<ActorRef> sessions = new LinkedList<>();
+        // create a lot of session actors
+        for (int i = 0; i < NUM_SESSIONS; i++) {
+            sessions.add(broadcastActorSystem.actorOf(format("session-%d", i + 1), SessionThrottledActor.class));
+        }
+
+        final CountDownLatch firstLatch = new CountDownLatch(100);
+        final CountDownLatch secondLatch = new CountDownLatch(100 + NUM_SESSIONS);
+        final AtomicInteger counter = new AtomicInteger();
+
+        // reply actor
+        ActorRef replyActor = broadcastActorSystem.tempActorOf(
+                ReplyActor.class,
+                ActorDelegate.builder()
+                        .deleteAfterReceive(false)
+                        .onReceive(HelloThrottled.class, () -> {
+                            firstLatch.countDown();
+                            secondLatch.countDown();
+                            counter.incrementAndGet();
+                        })
+                        .build());
+
+        // the first broadcast collects the leaf nodes
+        sessionList.tell(new Add(sessions.subList(0, 100)), replyActor);
+        sessionList.tell(new HelloThrottled("How are you?"), replyActor);
+        assertTrue(firstLatch.await(10, TimeUnit.SECONDS));
+
+        // split the leaf nodes, the root is notified of the new ones
+        sessionList.tell(new Add(sessions.subList(100, NUM_SESSIONS)), replyActor);
+        Thread.sleep(500);
+
+        sessionList.tell(new HelloThrottled("How are you now?"), replyActor);
+        assertTrue(secondLatch.await(15, TimeUnit.SECONDS));
+
+        // give the system a chance to process any extra messages
+        Thread.sleep(2000);
+
+        assertEquals(counter.intValue(), 100 + NUM_SESSIONS);
+    }
+
     @Test(enabled = true)
     public void testThrottled_property() throws Exception {
         ActorSystem broadcastActorSystem = testActorSystem.getActorSystem();
@@ -369,11 +1439,7 @@ public class BroadcastActorSystemTest {
         // @todo: the default shard cache is set to 1024!
         int NUM_SESSIONS = 1000;
 
-        List<ActorRef> sessions = new LinkedList<>();
-        // create a lot of session actors
-        for (int i = 0; i < NUM_SESSIONS; i++) {
-            sessions.add(broadcastActorSystem.actorOf(format("session-%d", i + 1), SessionActor.class));
-        }
+        List<ActorRef> sessions = createSessions(broadcastActorSystem, NUM_SESSIONS);
 
         final CountDownLatch waitLatch1 = new CountDownLatch(NUM_SESSIONS);
 
@@ -428,4 +1494,72 @@ public class BroadcastActorSystemTest {
 
         assertTrue(waitLatch2.await(10, TimeUnit.SECONDS));
     }
+
+    private static TrackedBroadcast trackedBroadcast(String broadcastId, Object message) throws IOException {
+        return TrackedBroadcast.of(
+                broadcastId,
+                message,
+                BroadcastTestConfiguration.getBean(JacksonSerializationFramework.class));
+    }
+
+    /**
+     * Adds the sessions in small batches, then removes 100 and adds half of those back again
+     */
+    private static void sendMembershipChanges(ActorRef sessionList, List<ActorRef> sessions) {
+        for (int i = 0; i < sessions.size(); i += 50) {
+            sessionList.tell(new Add(sessions.subList(i, i + 50)));
+        }
+        sessionList.tell(new Remove(sessions.subList(0, 100)));
+        sessionList.tell(new Add(sessions.subList(0, 50)));
+    }
+
+    private static List<ActorRef> createSessions(ActorSystem actorSystem, int numberOfSessions) throws Exception {
+        List<ActorRef> sessions = new LinkedList<>();
+        // create a lot of session actors
+        for (int i = 0; i < numberOfSessions; i++) {
+            sessions.add(actorSystem.actorOf(format("session-%d", i + 1), SessionActor.class));
+        }
+        return sessions;
+    }
+
+    /**
+     * Counts the replies of the sessions to the broadcasts sent with {@link #getRef()} as the sender
+     */
+    private static final class ReplyCounter {
+        private final int expectedReplies;
+        private final CountDownLatch waitLatch;
+        private final AtomicInteger counter = new AtomicInteger();
+        private final ActorRef ref;
+
+        private ReplyCounter(ActorSystem actorSystem, int expectedReplies) throws Exception {
+            this.expectedReplies = expectedReplies;
+            this.waitLatch = new CountDownLatch(expectedReplies);
+            this.ref = actorSystem.tempActorOf(
+                    ReplyActor.class,
+                    ActorDelegate.builder()
+                            .deleteAfterReceive(false)
+                            .onReceive(Hello.class, () -> {
+                                waitLatch.countDown();
+                                counter.incrementAndGet();
+                            })
+                            .build());
+        }
+
+        private ActorRef getRef() {
+            return ref;
+        }
+
+        private void awaitReplies() throws InterruptedException {
+            // wait for a while for all messages to be processed
+            assertTrue(waitLatch.await(10, TimeUnit.SECONDS));
+
+            // give the system a chance to process any extra messages
+            // no guarantees here, this test might succeed on a very slow machine
+            // even when there's a problem with the code
+            Thread.sleep(2000);
+
+            // make sure no extra replies have been processed
+            assertEquals(counter.intValue(), expectedReplies);
+        }
+    }
 }
@@ -1,11 +1,38 @@
 package org.elasticsoftware.elasticactors.broadcast;
 
+import org.elasticsoftware.elasticactors.broadcast.serialization.TextSerializationFramework;
 import org.elasticsoftware.elasticactors.test.configuration.TestConfiguration;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.PropertySource;
 
+import java.io.IOException;
+
 @Import(TestConfiguration.class)
 @PropertySource("classpath:application-test.properties")
-public class BroadcastTestConfiguration {
+public class BroadcastTestConfiguration implements ApplicationContextAware {
+
+    private static volatile ApplicationContext applicationContext;
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        BroadcastTestConfiguration.applicationContext = applicationContext;
+    }
+
+    @Bean
+    public TextSerializationFramework textSerializationFramework() throws IOException {
+        return TextSerializationFramework.create();
+    }
+
+    @Bean
+    public RecordingBroadcasterMetrics broadcasterMetrics() {
+        return new RecordingBroadcasterMetrics();
+    }
 
+    static <T> T getBean(Class<T> beanClass) {
+        return applicationContext.getBean(beanClass);
+    }
 }
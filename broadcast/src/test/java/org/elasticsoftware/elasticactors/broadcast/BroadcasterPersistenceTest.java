@@ -0,0 +1,76 @@
+package org.elasticsoftware.elasticactors.broadcast;
+
+import org.elasticsoftware.elasticactors.broadcast.messages.Add;
+import org.elasticsoftware.elasticactors.broadcast.messages.Checkpoint;
+import org.elasticsoftware.elasticactors.broadcast.messages.FlushMembers;
+import org.elasticsoftware.elasticactors.broadcast.messages.Remove;
+import org.elasticsoftware.elasticactors.broadcast.messages.ReportSize;
+import org.elasticsoftware.elasticactors.broadcast.messages.SizeReport;
+import org.elasticsoftware.elasticactors.broadcast.state.BroadcasterState;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class BroadcasterPersistenceTest {
+
+    @Test
+    public void testPersistsMembershipChangesWithoutCheckpoints() {
+        Broadcaster broadcaster = new Broadcaster();
+        BroadcasterState state = new BroadcasterState(8, 32);
+
+        assertTrue(broadcaster.shouldUpdateState(state, new Add(Collections.emptySet())));
+        assertTrue(broadcaster.shouldUpdateState(state, new Remove(Collections.emptySet())));
+    }
+
+    @Test
+    public void testPersistsSizeReportsOnlyAtCheckpoints() {
+        Broadcaster broadcaster = new Broadcaster();
+        BroadcasterState state = new BroadcasterState(8, 32);
+
+        assertFalse(broadcaster.shouldUpdateState(state, new ReportSize()));
+        assertFalse(broadcaster.shouldUpdateState(state, new SizeReport(10, 10)));
+        assertTrue(broadcaster.shouldUpdateState(state, new Checkpoint()));
+    }
+
+    @Test
+    public void testPersistsMembershipChangesOnlyAtCheckpoints() {
+        Broadcaster broadcaster = new Broadcaster();
+        BroadcasterState state = new BroadcasterState(8, 32);
+        state.setCheckpointIntervalMillis(1000L);
+
+        for (int i = 0; i < 10; i++) {
+            state.incrementUncheckpointedChanges();
+            assertFalse(broadcaster.shouldUpdateState(state, new Add(Collections.emptySet())));
+            state.incrementUncheckpointedChanges();
+            assertFalse(broadcaster.shouldUpdateState(state, new Remove(Collections.emptySet())));
+        }
+        assertFalse(broadcaster.shouldUpdateState(state, new FlushMembers()));
+        assertFalse(broadcaster.shouldUpdateState(state, new ReportSize()));
+        assertFalse(broadcaster.shouldUpdateState(state, new SizeReport(10, 10)));
+
+        assertTrue(broadcaster.shouldUpdateState(state, new Checkpoint()));
+    }
+
+    @Test
+    public void testPersistsMembershipChangesAtCheckpointMaxChanges() {
+        Broadcaster broadcaster = new Broadcaster();
+        BroadcasterState state = new BroadcasterState(8, 32);
+        state.setCheckpointIntervalMillis(1000L);
+        state.setCheckpointMaxChanges(3);
+
+        state.incrementUncheckpointedChanges();
+        assertFalse(broadcaster.shouldUpdateState(state, new Add(Collections.emptySet())));
+        state.incrementUncheckpointedChanges();
+        assertFalse(broadcaster.shouldUpdateState(state, new Remove(Collections.emptySet())));
+        state.incrementUncheckpointedChanges();
+        assertTrue(broadcaster.shouldUpdateState(state, new Add(Collections.emptySet())));
+        assertEquals(state.getUncheckpointedChanges(), 0);
+
+        state.incrementUncheckpointedChanges();
+        assertFalse(broadcaster.shouldUpdateState(state, new Remove(Collections.emptySet())));
+    }
+}
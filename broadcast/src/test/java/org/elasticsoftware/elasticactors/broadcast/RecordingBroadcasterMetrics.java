@@ -0,0 +1,76 @@
+package org.elasticsoftware.elasticactors.broadcast;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the metrics reported by the {@link Broadcaster} trees of the test actor system
+ */
+public class RecordingBroadcasterMetrics implements BroadcasterMetrics {
+
+    private final AtomicInteger broadcasts = new AtomicInteger();
+    private final AtomicInteger leafDeliveries = new AtomicInteger();
+    private final AtomicInteger deliveredMembers = new AtomicInteger();
+    private final AtomicInteger trackedBroadcastsCompleted = new AtomicInteger();
+    private final AtomicInteger duplicatesDropped = new AtomicInteger();
+    private final AtomicInteger membersEvicted = new AtomicInteger();
+    private final AtomicInteger membershipChangesForwarded = new AtomicInteger();
+
+    @Override
+    public void broadcast(int members) {
+        broadcasts.incrementAndGet();
+    }
+
+    @Override
+    public void leafDelivery(int members) {
+        leafDeliveries.incrementAndGet();
+        deliveredMembers.addAndGet(members);
+    }
+
+    @Override
+    public void trackedBroadcastCompleted(long durationMillis, int members, int depth, boolean complete) {
+        trackedBroadcastsCompleted.incrementAndGet();
+    }
+
+    @Override
+    public void membersEvicted(int members) {
+        membersEvicted.addAndGet(members);
+    }
+
+    @Override
+    public void duplicateBroadcastDropped() {
+        duplicatesDropped.incrementAndGet();
+    }
+
+    @Override
+    public void membershipChangesForwarded(int messages) {
+        membershipChangesForwarded.addAndGet(messages);
+    }
+
+    public int getBroadcasts() {
+        return broadcasts.get();
+    }
+
+    public int getLeafDeliveries() {
+        return leafDeliveries.get();
+    }
+
+    public int getDeliveredMembers() {
+        return deliveredMembers.get();
+    }
+
+    public int getTrackedBroadcastsCompleted() {
+        return trackedBroadcastsCompleted.get();
+    }
+
+    public int getDuplicatesDropped() {
+        return duplicatesDropped.get();
+    }
+
+    public int getMembersEvicted() {
+        return membersEvicted.get();
+    }
+
+    public int getMembershipChangesForwarded() {
+        return membershipChangesForwarded.get();
+    }
+}
@@ -0,0 +1,25 @@
+package org.elasticsoftware.elasticactors.broadcast;
+
+import org.elasticsoftware.elasticactors.Actor;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.TypedActor;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.broadcast.messages.HelloExpiring;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@Actor(serializationFramework = JacksonSerializationFramework.class)
+public class SessionExpiringActor extends TypedActor<HelloExpiring> {
+
+    private final static Logger staticLogger = LoggerFactory.getLogger(SessionExpiringActor.class);
+
+    @Override
+    public void onReceive(ActorRef sender, HelloExpiring message) throws Exception {
+        sender.tell(new HelloExpiring("I'm fine thank you"), getSelf());
+    }
+
+    @Override
+    protected Logger initLogger() {
+        return staticLogger;
+    }
+}
@@ -0,0 +1,24 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.elasticsoftware.elasticactors.base.serialization.JacksonSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+@Message(serializationFramework = JacksonSerializationFramework.class, durable = false)
+@Throttled(maxPerSecond = "32")
+@Priority(value = BroadcastPriority.LOW, timeToLiveMillis = 500)
+public final class HelloExpiring {
+
+    private final String message;
+
+    @JsonCreator
+    public HelloExpiring(@JsonProperty("message") String message) {
+        this.message = message;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+}
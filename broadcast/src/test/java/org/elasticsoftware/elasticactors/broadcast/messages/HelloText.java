@@ -0,0 +1,20 @@
+package org.elasticsoftware.elasticactors.broadcast.messages;
+
+import org.elasticsoftware.elasticactors.broadcast.serialization.TextSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.Message;
+
+@Message(serializationFramework = TextSerializationFramework.class, durable = false, immutable = true)
+@Throttled(maxPerSecond = "500")
+public final class HelloText {
+
+    private final String message;
+
+    public HelloText(String message) {
+        this.message = message;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+}
@@ -0,0 +1,141 @@
+package org.elasticsoftware.elasticactors.broadcast.serialization;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.base.serialization.ObjectMapperBuilder;
+import org.elasticsoftware.elasticactors.broadcast.messages.rehash.RehashResponse;
+import org.elasticsoftware.elasticactors.cluster.ActorRefFactory;
+import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessageRefFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class CompactActorRefSetSerializerTest {
+
+    private static final String SHARD_1 = "actor://cluster/system/shards/1/";
+    private static final String SHARD_2 = "actor://cluster/system/shards/2/";
+    private static final String NODE = "actor://cluster/system/nodes/node-1/";
+
+    private final Map<String, ActorRef> actorRefs = new HashMap<>();
+    private ActorRefFactory actorRefFactory;
+    private ObjectMapper objectMapper;
+
+    @BeforeMethod
+    public void setUp() {
+        actorRefFactory = mock(ActorRefFactory.class);
+        when(actorRefFactory.create(anyString())).thenAnswer(invocation -> actorRefs.get(invocation.<String>getArgument(0)));
+        objectMapper = new ObjectMapperBuilder(actorRefFactory, mock(ScheduledMessageRefFactory.class), "1.0.0").build();
+        CompactActorRefSetSerializer.setCompactFormat(objectMapper, true);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        actorRefs.clear();
+    }
+
+    @Test
+    public void testRoundTripWithMixedPrefixes() throws Exception {
+        Set<ActorRef> members = new HashSet<>();
+        members.add(actorRef(SHARD_1, "session-1"));
+        members.add(actorRef(SHARD_1, "session-12"));
+        members.add(actorRef(SHARD_2, "session-2"));
+        // temp actor
+        members.add(actorRef(NODE, "6f1c1a9e-3c59-4a2b-9d5a-2f1e2a1b3c4d"));
+        // service actor whose spec doesn't end with its actor id
+        members.add(actorRef("actor://cluster/system/services/sessionService", "sessionService/sessions"));
+        // actor ids that contain a '/', like the children of a broadcaster
+        members.add(actorRef(SHARD_2, "sessionList/3/1"));
+
+        String json = objectMapper.writeValueAsString(new RehashResponse(members, null, null));
+        JsonNode written = objectMapper.readTree(json).get("members");
+        assertTrue(written.isObject());
+        assertEquals(written.get(SHARD_1).size(), 2);
+        assertEquals(written.get(SHARD_2).size(), 2);
+
+        RehashResponse read = objectMapper.readValue(json, RehashResponse.class);
+        assertEquals(specs(read.getMembers()), specs(members));
+    }
+
+    @Test
+    public void testRoundTripOfTagsAndWeights() throws Exception {
+        ActorRef member1 = actorRef(SHARD_1, "session-1");
+        ActorRef member2 = actorRef(SHARD_2, "session-2");
+        Map<String, Set<ActorRef>> memberTags = new HashMap<>();
+        memberTags.put("premium", new HashSet<>(Collections.singleton(member1)));
+        Map<Integer, Set<ActorRef>> memberWeights = new HashMap<>();
+        memberWeights.put(5, new HashSet<>(Collections.singleton(member2)));
+
+        String json = objectMapper.writeValueAsString(new RehashResponse(
+                new HashSet<>(memberTags.get("premium")),
+                memberTags,
+                memberWeights));
+
+        RehashResponse read = objectMapper.readValue(json, RehashResponse.class);
+        assertEquals(specs(read.getMemberTags().get("premium")), specs(memberTags.get("premium")));
+        assertEquals(specs(read.getMemberWeights().get(5)), specs(memberWeights.get(5)));
+    }
+
+    @Test
+    public void testRoundTripOfEmptySet() throws Exception {
+        String json = objectMapper.writeValueAsString(new RehashResponse(new HashSet<>(), null, null));
+        RehashResponse read = objectMapper.readValue(json, RehashResponse.class);
+        assertTrue(read.getMembers().isEmpty());
+    }
+
+    @Test
+    public void testWritesArrayUnlessEnabled() throws Exception {
+        // the format is enabled per actor system, so other mappers aren't affected
+        ObjectMapper objectMapper = new ObjectMapperBuilder(actorRefFactory, mock(ScheduledMessageRefFactory.class), "1.0.0").build();
+        Set<ActorRef> members = new HashSet<>();
+        members.add(actorRef(SHARD_1, "session-1"));
+        members.add(actorRef(SHARD_2, "sessionList/3/1"));
+
+        String json = objectMapper.writeValueAsString(new RehashResponse(members, null, null));
+        assertTrue(objectMapper.readTree(json).get("members").isArray());
+
+        RehashResponse read = objectMapper.readValue(json, RehashResponse.class);
+        assertEquals(specs(read.getMembers()), specs(members));
+    }
+
+    @Test
+    public void testReadsArrayFormat() throws Exception {
+        actorRef(SHARD_1, "session-1");
+        actorRef(NODE, "temp-1");
+        String json = "{\"members\":[\"" + SHARD_1 + "session-1\",\"" + NODE + "temp-1\"]}";
+
+        RehashResponse read = objectMapper.readValue(json, RehashResponse.class);
+        assertEquals(specs(read.getMembers()), new TreeSet<>(actorRefs.keySet()));
+    }
+
+    private ActorRef actorRef(String prefix, String actorId) {
+        String spec = prefix.endsWith("/") ? prefix + actorId : prefix;
+        ActorRef actorRef = mock(ActorRef.class);
+        when(actorRef.getActorId()).thenReturn(actorId);
+        when(actorRef.toString()).thenReturn(spec);
+        actorRefs.put(spec, actorRef);
+        return actorRef;
+    }
+
+    private static Set<String> specs(Collection<ActorRef> actorRefs) {
+        Set<String> specs = new TreeSet<>();
+        for (ActorRef actorRef : actorRefs) {
+            specs.add(actorRef.toString());
+        }
+        return specs;
+    }
+}
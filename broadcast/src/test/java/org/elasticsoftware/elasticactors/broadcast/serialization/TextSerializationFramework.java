@@ -0,0 +1,37 @@
+package org.elasticsoftware.elasticactors.broadcast.serialization;
+
+import org.elasticsoftware.elasticactors.broadcast.messages.HelloText;
+import org.elasticsoftware.elasticactors.serialization.MessageDeserializer;
+import org.elasticsoftware.elasticactors.serialization.MessageSerializer;
+import org.elasticsoftware.elasticactors.serialization.SerializationFramework;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * A serialization framework other than the Jackson one, which writes a {@link HelloText} as plain
+ * text. Only the message serialization is implemented.
+ */
+public abstract class TextSerializationFramework implements SerializationFramework {
+
+    @SuppressWarnings("unchecked")
+    public static TextSerializationFramework create() throws IOException {
+        MessageSerializer<HelloText> serializer = mock(MessageSerializer.class);
+        when(serializer.serialize(any(HelloText.class))).thenAnswer(
+                invocation -> ByteBuffer.wrap(invocation.<HelloText>getArgument(0).getMessage().getBytes(UTF_8)));
+        MessageDeserializer<HelloText> deserializer = mock(MessageDeserializer.class);
+        when(deserializer.getMessageClass()).thenReturn(HelloText.class);
+        when(deserializer.deserialize(any(ByteBuffer.class))).thenAnswer(
+                invocation -> new HelloText(UTF_8.decode(invocation.<ByteBuffer>getArgument(0)).toString()));
+
+        TextSerializationFramework serializationFramework = mock(TextSerializationFramework.class);
+        when(serializationFramework.getSerializer(HelloText.class)).thenReturn(serializer);
+        when(serializationFramework.getDeserializer(HelloText.class)).thenReturn(deserializer);
+        return serializationFramework;
+    }
+}
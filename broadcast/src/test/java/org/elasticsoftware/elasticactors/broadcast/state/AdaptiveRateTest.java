@@ -0,0 +1,63 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class AdaptiveRateTest {
+
+    @Test
+    public void testRampsUpWithinTargetLatency() {
+        AdaptiveRate rate = new AdaptiveRate(100, 1100, 500, 0L);
+        assertEquals(rate.getCurrentPerSecond(), 100);
+        for (long now = 100; now <= AdaptiveRate.RAMP_UP_MILLIS; now += 100) {
+            rate.update(50, now);
+        }
+        assertEquals(rate.getCurrentPerSecond(), 1100);
+        // never above the maximum
+        rate.update(50, AdaptiveRate.RAMP_UP_MILLIS + 1000);
+        assertEquals(rate.getCurrentPerSecond(), 1100);
+    }
+
+    @Test
+    public void testHalvesOncePerIntervalAboveTargetLatency() {
+        AdaptiveRate rate = new AdaptiveRate(100, 1000, 500, 0L);
+        for (long now = 100; now <= AdaptiveRate.RAMP_UP_MILLIS + 1000; now += 100) {
+            rate.update(50, now);
+        }
+        assertEquals(rate.getCurrentPerSecond(), 1000);
+
+        long now = AdaptiveRate.RAMP_UP_MILLIS + 2000;
+        rate.update(800, now);
+        assertEquals(rate.getCurrentPerSecond(), 500);
+        // the messages sent at the previous rate don't lower it again
+        rate.update(800, now + 10);
+        assertEquals(rate.getCurrentPerSecond(), 500);
+        rate.update(800, now + AdaptiveRate.DECREASE_INTERVAL_MILLIS);
+        assertEquals(rate.getCurrentPerSecond(), 250);
+        rate.update(800, now + 2 * AdaptiveRate.DECREASE_INTERVAL_MILLIS);
+        rate.update(800, now + 3 * AdaptiveRate.DECREASE_INTERVAL_MILLIS);
+        // never below the minimum
+        assertEquals(rate.getCurrentPerSecond(), 100);
+    }
+
+    @Test
+    public void testConfigureKeepsRateWithinBounds() {
+        AdaptiveRate rate = new AdaptiveRate(100, 1000, 500, 0L);
+        rate.configure(200, 1000, 500);
+        assertEquals(rate.getCurrentPerSecond(), 200);
+        rate.configure(50, 150, 500);
+        assertEquals(rate.getCurrentPerSecond(), 150);
+    }
+
+    @Test
+    public void testSamplesOncePerInterval() {
+        AdaptiveRate rate = new AdaptiveRate(100, 1000, 500, 0L);
+        assertTrue(rate.shouldSample(1000, 100));
+        assertFalse(rate.shouldSample(1000, 100));
+        assertFalse(rate.shouldSample(1099, 100));
+        assertTrue(rate.shouldSample(1100, 100));
+    }
+}
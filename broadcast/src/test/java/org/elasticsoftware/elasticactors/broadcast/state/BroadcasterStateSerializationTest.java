@@ -0,0 +1,127 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.base.serialization.ObjectMapperBuilder;
+import org.elasticsoftware.elasticactors.cluster.ActorRefFactory;
+import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessageRefFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class BroadcasterStateSerializationTest {
+
+    private ObjectMapper objectMapper;
+
+    @BeforeMethod
+    public void setUp() {
+        objectMapper = new ObjectMapperBuilder(mock(ActorRefFactory.class), mock(ScheduledMessageRefFactory.class), "1.0.0").build();
+    }
+
+    @Test
+    public void testReadsLegacyStateWithDefaults() throws Exception {
+        String json = "{\"bucketsPerNode\":8,\"bucketSize\":32,\"nodes\":[],\"leaves\":[],\"size\":0,"
+                + "\"leafNode\":true,\"reportedSize\":12}";
+
+        BroadcasterState state = objectMapper.readValue(json, BroadcasterState.class);
+
+        assertEquals(state.getBucketsPerNode(), 8);
+        assertEquals(state.getBucketSize(), 32);
+        assertEquals(state.getPlacement(), BucketPlacement.MODULO);
+        assertNull(state.getParent());
+        assertEquals(state.getThrottledBroadcastTimeoutMillis(), BroadcasterState.DEFAULT_THROTTLED_BROADCAST_TIMEOUT_MILLIS);
+        assertEquals(state.getThrottledBroadcastTimeoutPolicy(), ThrottledBroadcastTimeoutPolicy.DELIVER_PARTIAL);
+        assertEquals(state.getMaxThrottledBroadcastSessions(), BroadcasterState.DEFAULT_MAX_THROTTLED_BROADCAST_SESSIONS);
+        assertEquals(state.getTrackedBroadcastTimeoutMillis(), BroadcasterState.DEFAULT_TRACKED_BROADCAST_TIMEOUT_MILLIS);
+        assertEquals(state.getLeafDeliveryChunkSize(), BroadcasterState.DEFAULT_LEAF_DELIVERY_CHUNK_SIZE);
+        assertEquals(state.getSizeReportIntervalMillis(), 0L);
+        // without weighted members, the weight of a node equals its size
+        assertEquals(state.getReportedWeight(), 12);
+        assertTrue(state.getMemberTags().isEmpty());
+        assertTrue(state.getMemberWeights().isEmpty());
+        assertTrue(state.getChildTags().isEmpty());
+        assertTrue(state.getChildWeights().isEmpty());
+        assertTrue(state.getPendingMembers().isEmpty());
+    }
+
+    @Test
+    public void testLegacyConstructorUsesDefaults() {
+        BroadcasterState state = new BroadcasterState(8, 32, new LinkedList<>(), new HashSet<>(), 0, null);
+
+        assertEquals(state.getPlacement(), BucketPlacement.MODULO);
+        assertNull(state.getParent());
+        assertNull(state.getRoot());
+        assertEquals(state.getThrottledBroadcastTimeoutMillis(), BroadcasterState.DEFAULT_THROTTLED_BROADCAST_TIMEOUT_MILLIS);
+        assertEquals(state.getTrackedBroadcastTimeoutMillis(), BroadcasterState.DEFAULT_TRACKED_BROADCAST_TIMEOUT_MILLIS);
+        assertTrue(state.getMemberTags().isEmpty());
+        assertTrue(state.getPendingMembers().isEmpty());
+    }
+
+    @Test
+    public void testRoundTripOfSettings() throws Exception {
+        BroadcasterState state = new BroadcasterState(8, 32, BucketPlacement.JUMP_CONSISTENT_HASH);
+        state.setCoalesceWindowMillis(50L);
+        state.setCoalesceMaxMembers(100);
+        state.setCheckpointIntervalMillis(1000L);
+        state.setCheckpointMaxChanges(10);
+        state.setThrottledBroadcastTimeoutMillis(5000L);
+        state.setThrottledBroadcastTimeoutPolicy(ThrottledBroadcastTimeoutPolicy.RETRY);
+        state.setTrackedBroadcastTimeoutMillis(2000L);
+        state.setLeafDeliveryChunkSize(64);
+        state.setDeadMemberEvictionThreshold(3);
+        state.setShardGroup(4, 1);
+        state.setDeduplicationWindowMillis(60000L);
+        state.setReportedSize(10);
+        state.setReportedWeight(25);
+        state.nextGeneration();
+        state.initChildSizes(Collections.singletonMap("child", 10), Collections.singletonMap("child", 25));
+
+        BroadcasterState read = objectMapper.readValue(objectMapper.writeValueAsBytes(state), BroadcasterState.class);
+
+        assertEquals(read.getPlacement(), BucketPlacement.JUMP_CONSISTENT_HASH);
+        assertEquals(read.getCoalesceWindowMillis(), 50L);
+        assertEquals(read.getCoalesceMaxMembers(), 100);
+        assertEquals(read.getCheckpointIntervalMillis(), 1000L);
+        assertEquals(read.getCheckpointMaxChanges(), 10);
+        assertEquals(read.getThrottledBroadcastTimeoutMillis(), 5000L);
+        assertEquals(read.getThrottledBroadcastTimeoutPolicy(), ThrottledBroadcastTimeoutPolicy.RETRY);
+        assertEquals(read.getTrackedBroadcastTimeoutMillis(), 2000L);
+        assertEquals(read.getLeafDeliveryChunkSize(), 64);
+        assertEquals(read.getDeadMemberEvictionThreshold(), 3);
+        assertEquals(read.getShardModulus(), 4);
+        assertEquals(read.getShardResidue(), 1);
+        assertEquals(read.getDeduplicationWindowMillis(), 60000L);
+        assertEquals(read.getReportedSize(), 10);
+        assertEquals(read.getReportedWeight(), 25);
+        assertEquals(read.getGeneration(), 1);
+        assertEquals(read.getChildSizes(), Collections.singletonMap("child", 10));
+        assertEquals(read.getChildWeights(), Collections.singletonMap("child", 25));
+    }
+
+    @Test
+    public void testChildStateInheritsSettings() {
+        ActorRef parent = mock(ActorRef.class);
+        BroadcasterState state = new BroadcasterState(8, 32);
+        state.setCheckpointIntervalMillis(1000L);
+        state.setLeafDeliveryChunkSize(64);
+        state.setDeduplicationWindowMillis(60000L);
+
+        BroadcasterState childState = state.newChildState(parent, Collections.emptySet());
+
+        assertEquals(childState.getParent(), parent);
+        assertEquals(childState.getRoot(), parent);
+        assertEquals(childState.getCheckpointIntervalMillis(), 1000L);
+        assertEquals(childState.getLeafDeliveryChunkSize(), 64);
+        assertEquals(childState.getDeduplicationWindowMillis(), 60000L);
+        assertEquals(childState.getSizeReportIntervalMillis(), BroadcasterState.DEFAULT_SIZE_REPORT_INTERVAL_MILLIS);
+        assertTrue(childState.getMemberTags().isEmpty());
+    }
+}
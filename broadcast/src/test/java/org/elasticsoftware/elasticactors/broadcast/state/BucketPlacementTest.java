@@ -0,0 +1,49 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class BucketPlacementTest {
+
+    @Test
+    public void testJumpConsistentHashOnlyMovesToNewBuckets() {
+        Random random = new Random(42);
+        int moved = 0;
+        int total = 10000;
+        for (int i = 0; i < total; i++) {
+            int hash = random.nextInt();
+            int previous = BucketPlacement.JUMP_CONSISTENT_HASH.bucket(hash, 8);
+            int current = BucketPlacement.JUMP_CONSISTENT_HASH.bucket(hash, 12);
+            if (previous != current) {
+                // members only ever move to one of the added buckets
+                assertTrue(current >= 8);
+                moved++;
+            }
+        }
+        // roughly a third of the members should have moved
+        assertTrue(moved > total / 4 && moved < total * 5 / 12);
+    }
+
+    @Test
+    public void testJumpConsistentHashShrinkOnlyMovesRemovedBuckets() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            int hash = random.nextInt();
+            int previous = BucketPlacement.JUMP_CONSISTENT_HASH.bucket(hash, 12);
+            int current = BucketPlacement.JUMP_CONSISTENT_HASH.bucket(hash, 8);
+            if (previous < 8) {
+                assertEquals(current, previous);
+            }
+        }
+    }
+
+    @Test
+    public void testModuloIsStable() {
+        assertEquals(BucketPlacement.MODULO.bucket(-17, 8), 1);
+        assertEquals(BucketPlacement.MODULO.bucket(17, 8), 1);
+    }
+}
@@ -0,0 +1,20 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class DeduplicationFilterTest {
+
+    @Test
+    public void testRemembersIdsWithinWindow() {
+        DeduplicationFilter filter = new DeduplicationFilter(1000L, DeduplicationFilter.DEFAULT_CAPACITY, 0L);
+        assertTrue(filter.add("broadcast-1", 0L));
+        assertFalse(filter.add("broadcast-1", 500L));
+        // rotated once, the previous filter still has the id
+        assertFalse(filter.add("broadcast-1", 1500L));
+        // rotated twice, the id has been forgotten
+        assertTrue(filter.add("broadcast-1", 2500L));
+    }
+}
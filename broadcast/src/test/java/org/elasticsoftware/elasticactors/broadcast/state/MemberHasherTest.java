@@ -0,0 +1,38 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import com.google.common.hash.Hashing;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.testng.Assert.assertEquals;
+
+import static java.lang.String.format;
+
+public class MemberHasherTest {
+
+    @Test
+    public void testSameHashAsFormattedString() {
+        String[] nodeIds = {"sessionList", "sessionList/3", "sessionList/3/7", "a", "ab", "abc"};
+        for (String nodeId : nodeIds) {
+            MemberHasher hasher = MemberHasher.forNode(nodeId);
+            for (int i = 0; i < 1000; i++) {
+                String member = format("actor://broadcast-cluster/broadcast/shards/%d/session-%d", i % 64, i);
+                int expected = Hashing.murmur3_32()
+                        .hashString(format("%s:%s", nodeId, member), StandardCharsets.UTF_8)
+                        .asInt();
+                assertEquals(hasher.hash(member), expected);
+            }
+        }
+    }
+
+    @Test
+    public void testSameHashForMultiByteCharacters() {
+        MemberHasher hasher = MemberHasher.forNode("séssionList");
+        String member = "actor://cluster/broadcast/shards/1/üser-€";
+        int expected = Hashing.murmur3_32()
+                .hashString("séssionList:" + member, StandardCharsets.UTF_8)
+                .asInt();
+        assertEquals(hasher.hash(member), expected);
+    }
+}
@@ -0,0 +1,62 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.broadcast.messages.Add;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class MemberWeightsTest {
+
+    private final ActorRef light = mock(ActorRef.class);
+    private final ActorRef heavy = mock(ActorRef.class);
+
+    @Test
+    public void testGroupsByWeight() {
+        Map<Integer, Set<ActorRef>> index = new HashMap<>();
+        MemberWeights.set(index, Collections.singleton(heavy), 5);
+
+        Map<Integer, Set<ActorRef>> groups = MemberWeights.groupByWeight(index, Arrays.asList(light, heavy));
+
+        assertEquals(groups.get(1), Collections.singleton(light));
+        assertEquals(groups.get(5), Collections.singleton(heavy));
+        assertEquals(MemberWeights.total(2, index), 6);
+    }
+
+    @Test
+    public void testRemoveRestoresDefaultWeight() {
+        Map<Integer, Set<ActorRef>> index = new HashMap<>();
+        MemberWeights.set(index, Collections.singleton(heavy), 5);
+
+        MemberWeights.remove(index, Collections.singleton(heavy));
+
+        assertEquals(index.size(), 0);
+        assertEquals(MemberWeights.groupByWeight(index, Collections.singleton(heavy)).get(1), Collections.singleton(heavy));
+    }
+
+    @Test
+    public void testAddsKeepWeights() {
+        Map<Integer, Set<ActorRef>> index = new HashMap<>();
+        MemberWeights.set(index, Collections.singleton(heavy), 5);
+
+        List<Add> adds = MemberWeights.toAdds(Arrays.asList(light, heavy), new HashMap<>(), index);
+
+        assertEquals(adds.size(), 2);
+        for (Add add : adds) {
+            if (add.getMembers().contains(heavy)) {
+                assertEquals(add.getWeight(), Integer.valueOf(5));
+            } else {
+                assertNull(add.getWeight());
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.broadcast.messages.Add;
+import org.elasticsoftware.elasticactors.broadcast.messages.Remove;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class PendingMembersTest {
+
+    @Test
+    public void testCollapsesChangesIntoMessages() {
+        ActorRef member1 = mock(ActorRef.class);
+        ActorRef member2 = mock(ActorRef.class);
+        ActorRef member3 = mock(ActorRef.class);
+        PendingMembers pending = new PendingMembers(mock(ActorRef.class));
+
+        pending.add(Arrays.asList(member1, member2), null, null);
+        pending.remove(Arrays.asList(member2, member3));
+
+        List<Object> messages = pending.toMessages();
+        assertEquals(messages.size(), 2);
+        // removes are sent before adds
+        assertTrue(messages.get(0) instanceof Remove);
+        assertEquals(new HashSet<>(((Remove) messages.get(0)).getMembers()), new HashSet<>(Arrays.asList(member2, member3)));
+        assertTrue(messages.get(1) instanceof Add);
+        assertEquals(new HashSet<>(((Add) messages.get(1)).getMembers()), Collections.singleton(member1));
+    }
+
+    @Test
+    public void testDrainRemovesPendingMembers() {
+        ActorRef node = mock(ActorRef.class);
+        BroadcasterState state = new BroadcasterState(8, 32);
+        state.pendingMembersFor(node).add(Collections.singleton(mock(ActorRef.class)), null, null);
+
+        List<PendingMembers> drained = state.drainPendingMembers();
+
+        assertEquals(drained.size(), 1);
+        assertEquals(drained.get(0).getNode(), node);
+        assertTrue(state.getPendingMembers().isEmpty());
+    }
+}
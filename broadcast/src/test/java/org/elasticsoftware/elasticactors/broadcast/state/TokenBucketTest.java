@@ -0,0 +1,69 @@
+package org.elasticsoftware.elasticactors.broadcast.state;
+
+import org.elasticsoftware.elasticactors.broadcast.messages.BroadcastPriority;
+import org.testng.annotations.Test;
+
+import java.util.LinkedList;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    private static final long TICK_MILLIS = 100L;
+
+    @Test
+    public void testFirstRefillFillsBucket() {
+        TokenBucket bucket = new TokenBucket(100, BroadcastPriority.NORMAL, 0L);
+        bucket.getQueue().add(new PendingThrottledBroadcast(null, 5, new LinkedList<>()));
+        bucket.refill(0L, TICK_MILLIS);
+        // the cost of the head plus one tick worth of tokens
+        assertEquals(bucket.getTokens(), 15.0d);
+        assertTrue(bucket.tryAcquire(5));
+        assertTrue(bucket.tryAcquire(10));
+        assertFalse(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void testRefillIsCappedAtCapacity() {
+        TokenBucket bucket = new TokenBucket(100, BroadcastPriority.NORMAL, 0L);
+        bucket.refill(0L, TICK_MILLIS);
+        assertTrue(bucket.tryAcquire(10));
+        assertEquals(bucket.getTokens(), 0.0d);
+
+        bucket.refill(50L, TICK_MILLIS);
+        assertEquals(bucket.getTokens(), 5.0d);
+
+        // an idle bucket doesn't build up a burst
+        bucket.refill(60_000L, TICK_MILLIS);
+        assertEquals(bucket.getTokens(), 10.0d);
+
+        // the capacity grows with the cost of the head
+        bucket.getQueue().add(new PendingThrottledBroadcast(null, 20, new LinkedList<>()));
+        bucket.refill(120_000L, TICK_MILLIS);
+        assertEquals(bucket.getTokens(), 30.0d);
+    }
+
+    @Test
+    public void testCostGreaterThanRatePerSecond() {
+        TokenBucket bucket = new TokenBucket(100, BroadcastPriority.NORMAL, 0L);
+        bucket.getQueue().add(new PendingThrottledBroadcast(null, 500, new LinkedList<>()));
+        bucket.refill(0L, TICK_MILLIS);
+        assertTrue(bucket.tryAcquire(500));
+
+        // the next delivery waits until the tokens for the whole cost have been added
+        bucket.refill(4_000L, TICK_MILLIS);
+        assertFalse(bucket.tryAcquire(500));
+        bucket.refill(5_000L, TICK_MILLIS);
+        assertTrue(bucket.tryAcquire(500));
+    }
+
+    @Test
+    public void testFailedAcquireKeepsTokens() {
+        TokenBucket bucket = new TokenBucket(100, BroadcastPriority.NORMAL, 0L);
+        bucket.refill(0L, TICK_MILLIS);
+        assertFalse(bucket.tryAcquire(11));
+        assertEquals(bucket.getTokens(), 10.0d);
+    }
+}